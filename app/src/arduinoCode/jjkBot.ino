@@ -43,6 +43,19 @@
  *                 Added feet parameter array and handling (for DC motors)
  * 2017-02-18 JJK  Added duration and separate Left and Right feet commands
  * 2017-02-19 JJK  Reset the checkpoints on STOP
+ * 2026-10-16 AGENT Added the binary command frames (sync, opcode, length,
+ *                  varint parameters, CRC-8) and the version handshake
+ *                  (V command) - ASCII commands are still accepted
+ *                  Added the sequence number to the binary frames, with an
+ *                  ack (K) or nak (N) back to the phone and the receive window
+ *                  in the handshake reply (so the phone does not send more
+ *                  than the serial buffer can hold).  Read up to 8 bytes per
+ *                  loop, and discard commands too long for the buffers
+ *                  instead of writing past the end of them
+ *                  STOP comes as a control frame (sync 0xA6), executed as soon
+ *                  as it arrives even if an earlier frame was lost, and acked
+ *                  with C - the phone goes on from the sequence number in it
+ *                  (version 4)
  *============================================================================*/
 
 #include <Servo.h>
@@ -61,6 +74,25 @@
 #define LIGHT_OFF 0
 #define BUF_MAX 30
 
+// Binary command frames (must match BinaryProtocol.java)
+#define PROTOCOL_VERSION 4
+#define BIN_SYNC 0xA5
+// Starts a control frame (STOP) - executed right away, not in sequence order
+#define BIN_CONTROL_SYNC 0xA6
+#define BIN_PAYLOAD_MAX 255
+#define BIN_IDLE 0
+#define BIN_OPCODE 1
+#define BIN_SEQ 2
+#define BIN_LENGTH 3
+#define BIN_PAYLOAD 4
+#define BIN_CRC 5
+// Give up on a binary frame if the rest of it does not arrive in this time
+#define BIN_TIMEOUT_MS 50
+// Bytes the phone can send without an ack (the Serial3 receive buffer is 64 bytes)
+#define RX_WINDOW 56
+// Maximum bytes to read from Serial3 in one loop
+#define SERIAL_BYTES_PER_LOOP 8
+
 #define MOVE_BACKWARD 0
 #define MOVE_FORWARD 1
 #define TURN_LEFT 2
@@ -147,6 +179,21 @@ boolean firstParam = true;
 int paramsCnt = -1;
 const int paramMax = 50;
 unsigned long paramsList[paramMax];
+// Set when a command has more characters or parameters than the buffers can hold
+boolean cmdTooLong = false;
+
+// Variables for the binary command frames
+byte binState = BIN_IDLE;
+unsigned long binStartMs;
+boolean binControl;
+byte binOpcode;
+byte binSeq;
+byte binLen;
+byte binPos;
+byte binPayload[BIN_PAYLOAD_MAX];
+// Sequence number of the next binary frame to execute
+byte expectedSeq = 0;
+boolean nakSent = false;
 
 uint8_t i;
 
@@ -434,23 +481,38 @@ void resetEyes() {
 // 36 = $
 // 44 = ,
 void serialEvent() {
-  // Don't loop here, it will throw off the main loop timing and incremental execution
-  //while (Serial3.available()) {
-  if (Serial3.available()) {
+  // Give up on a binary frame that stopped part way (bytes were lost)
+  if (binState != BIN_IDLE && currMs - binStartMs > BIN_TIMEOUT_MS) {
+    binState = BIN_IDLE;
+    sendNak();
+  }
+
+  // Don't read everything available here, it will throw off the main loop timing and
+  // incremental execution (but read enough bytes to keep up with the window)
+  for (byte n = 0; n < SERIAL_BYTES_PER_LOOP && Serial3.available(); n++) {
     inByte = Serial3.read();
 
+    // Bytes of a binary frame (started by the sync byte, which is never in an ASCII command)
+    if (binState != BIN_IDLE || inByte == BIN_SYNC || inByte == BIN_CONTROL_SYNC) {
+      binaryEvent((byte)inByte);
+      continue;
+    }
+
     switch (inByte) {
       case 59: // Semi-colon (command stop)
         if (firstParam) {
           command = charBuffer[0];
         } else {
-          bufPos++;
-          charBuffer[bufPos] = '\0';
-          paramsCnt++;
-          paramsList[paramsCnt] = atoi(charBuffer);
+          addParam();
+        }
+        if (cmdTooLong) {
+          // Don't execute a command that was cut short
+          serialPrintln(0,"Command too long");
+          resetCommand();
+        } else {
+          // Execute the command
+          executeCommand(command);
         }
-        // Execute the command
-        executeCommand(command);
         break;
         
       case 44: // Comma (separator) 
@@ -458,22 +520,171 @@ void serialEvent() {
           command = charBuffer[0];
           firstParam = false;
         } else {
-          bufPos++;
-          charBuffer[bufPos] = '\0';
-          paramsCnt++;
-          paramsList[paramsCnt] = atoi(charBuffer);
+          addParam();
         }
         bufPos = -1;
         break;
 
       default:
-        bufPos++;
-        charBuffer[bufPos] = (char)inByte;
+        // Leave room for the string terminator
+        if (bufPos < BUF_MAX-2) {
+          bufPos++;
+          charBuffer[bufPos] = (char)inByte;
+        } else {
+          cmdTooLong = true;
+        }
     } // End of switch (inByte)
     
-  } // End of while (Serial.available())
+  } // End of for (Serial3.available())
 } // End of serialEvent
 
+// Convert the characters in the buffer to the next parameter (if there is room for it)
+void addParam() {
+  bufPos++;
+  charBuffer[bufPos] = '\0';
+  if (paramsCnt < paramMax-1) {
+    paramsCnt++;
+    paramsList[paramsCnt] = atol(charBuffer);
+  } else {
+    cmdTooLong = true;
+  }
+}
+
+// Add a byte to the binary frame, and execute the command when the frame is complete
+// Frame: sync, opcode, sequence, payload length, payload (varint parameters),
+// CRC-8 of opcode..payload.  Frames are executed in sequence order and acked
+// A control frame (STOP) is executed as soon as it arrives, and its sequence number is the
+// next frame to execute (the phone drops the frames it had not got an ack for)
+void binaryEvent(byte b) {
+  switch (binState) {
+    case BIN_IDLE:
+      binState = BIN_OPCODE;
+      binStartMs = currMs;
+      binControl = (b == BIN_CONTROL_SYNC);
+      break;
+    case BIN_OPCODE:
+      binOpcode = b;
+      binState = BIN_SEQ;
+      break;
+    case BIN_SEQ:
+      binSeq = b;
+      binState = BIN_LENGTH;
+      break;
+    case BIN_LENGTH:
+      binLen = b;
+      binPos = 0;
+      binState = (binLen > 0) ? BIN_PAYLOAD : BIN_CRC;
+      break;
+    case BIN_PAYLOAD:
+      binPayload[binPos++] = b;
+      if (binPos >= binLen) {
+        binState = BIN_CRC;
+      }
+      break;
+    case BIN_CRC:
+      binState = BIN_IDLE;
+      if (b != binaryCrc()) {
+        serialPrintln(0,"Binary frame CRC error");
+        sendNak();
+        return;
+      }
+      if (binControl) {
+        if (binSeq != expectedSeq && (byte)(expectedSeq - binSeq) < 128) {
+          // Already executed, and frames after it too (the ack was lost) - ack it again
+          sendControlAck(binSeq);
+          return;
+        }
+        // Execute it now, and go on from its sequence number
+        expectedSeq = binSeq;
+        nakSent = false;
+        sendControlAck(binSeq);
+      } else {
+        if (binSeq != expectedSeq) {
+          if ((byte)(expectedSeq - binSeq) < 128) {
+            // Already executed (the ack was lost) - ack it again
+            sendAck((byte)(expectedSeq - 1));
+          } else {
+            // A frame before this one was lost
+            sendNak();
+          }
+          return;
+        }
+        expectedSeq++;
+        nakSent = false;
+        sendAck(binSeq);
+      }
+
+      // Decode the varint parameters
+      paramsCnt = -1;
+      i = 0;
+      while (i < binLen) {
+        unsigned long value = 0;
+        byte shift = 0;
+        byte v;
+        do {
+          v = binPayload[i++];
+          value |= (unsigned long)(v & 0x7F) << shift;
+          shift += 7;
+        } while ((v & 0x80) && i < binLen);
+        if (paramsCnt >= paramMax-1) {
+          serialPrintln(0,"Command too long");
+          resetCommand();
+          return;
+        }
+        paramsCnt++;
+        paramsList[paramsCnt] = value;
+      }
+      executeCommand((char)binOpcode);
+      break;
+  }
+} // void binaryEvent(byte b) {
+
+// CRC-8 (polynomial 0x07) of the opcode, length, and payload of the binary frame
+byte binaryCrc() {
+  byte crc = 0;
+  crc = crc8Byte(crc, binOpcode);
+  crc = crc8Byte(crc, binSeq);
+  crc = crc8Byte(crc, binLen);
+  for (i = 0; i < binLen; i++) {
+    crc = crc8Byte(crc, binPayload[i]);
+  }
+  return crc;
+}
+
+// Tell the phone the frame was received, and how many bytes it can send without an ack
+void sendAck(byte seq) {
+  sprintf(statusStr,"K,%u,%u;",seq,RX_WINDOW);
+  Serial3.print(statusStr);
+}
+
+// Tell the phone the control frame was received (and executed)
+void sendControlAck(byte seq) {
+  sprintf(statusStr,"C,%u;",seq);
+  Serial3.print(statusStr);
+}
+
+// Ask the phone to send the frames again from the expected sequence number (once, until
+// that frame arrives)
+void sendNak() {
+  if (!nakSent) {
+    nakSent = true;
+    sprintf(statusStr,"N,%u;",expectedSeq);
+    Serial3.print(statusStr);
+  }
+}
+
+byte crc8Byte(byte crc, byte data) {
+  crc ^= data;
+  for (byte bit = 0; bit < 8; bit++) {
+    if (crc & 0x80) {
+      crc = (crc << 1) ^ 0x07;
+    } else {
+      crc <<= 1;
+    }
+  }
+  return crc;
+}
+
 // Copy the parameters and execute the command
 void executeCommand(char cmd) {
 
@@ -485,8 +696,16 @@ void executeCommand(char cmd) {
       serialPrintln(0,String(currMs));
       */
       
+  // Version handshake - answer with the protocol version supported and the receive window
+  // (the phone starts the binary frames over at sequence 0)
+  if (cmd == 'V') {
+    expectedSeq = 0;
+    nakSent = false;
+    sprintf(statusStr,"V,%u,%u;",PROTOCOL_VERSION,RX_WINDOW);
+    Serial3.print(statusStr);
+
   // Eyes
-  if (cmd == 'E') {
+  } else if (cmd == 'E') {
     // If start a new command when one is executing, delay before starting ???
     if (eyesOn) {
       eyesStart = currMs + 15;
@@ -565,12 +784,17 @@ void executeCommand(char cmd) {
   }
 
   // Reset for next command
+  resetCommand();
+
+} // void executeCommand(char cmd) {
+
+void resetCommand() {
   firstParam = true;
   command = ' ';
   bufPos = -1;
   paramsCnt = -1;
-
-} // void executeCommand(char cmd) {
+  cmdTooLong = false;
+}
 
 // Figure out a more generic print using sprintf
 // long unsigned %lu
@@ -0,0 +1,180 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Compact binary framing for the commands sent to the Arduino
+ *              robot (used when the robot answers the version handshake).
+ *              An ASCII command like "E,260,40,260;" is sent as:
+ *                SYNC (0xA5), opcode (command letter), sequence number,
+ *                payload length, parameters as unsigned varints,
+ *                CRC-8 of opcode..payload
+ *              The robot acknowledges each frame with "K,seq,window;" and
+ *              asks for a retransmit with "N,seq;" (see DeliveryWindow)
+ *              A STOP is sent as a control frame (CONTROL_SYNC), which the
+ *              robot executes as soon as it arrives, outside the sequence.
+ *              Its sequence number is the one the phone goes on from (the
+ *              frames not acked before it are obsolete), and the robot
+ *              acknowledges it with "C,seq;"
+ *              Must match the binary frame handling in jjkBot.ino
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *                  Added the sequence number, and the ack/nak replies
+ *                  (version 3)
+ *                  STOP as an unsequenced control frame (version 4)
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+
+public class BinaryProtocol {
+    // Version sent in the handshake ("V,4;") - the robot replies with the version it supports
+    // and its receive window in bytes ("V,4,56;")
+    public static final int PROTOCOL_VERSION = 4;
+    public static final char VERSION_COMMAND = 'V';
+    // Replies from the robot - frame received ("K,seq,window;"), or resend from seq ("N,seq;")
+    public static final char ACK_COMMAND = 'K';
+    public static final char NAK_COMMAND = 'N';
+    // Reply from the robot - control frame received ("C,seq;")
+    public static final char CONTROL_ACK_COMMAND = 'C';
+
+    public static final int SYNC = 0xA5;
+    // Starts a control frame (executed right away by the robot, not in sequence order)
+    public static final int CONTROL_SYNC = 0xA6;
+    // Most bytes a frame can add (sync, opcode, sequence, length, CRC)
+    public static final int FRAME_OVERHEAD = 5;
+    public static final int MAX_PAYLOAD = 255;
+    // Size of the parameter arrays in the robot code (paramMax)
+    public static final int MAX_PARAMS = 50;
+
+    //---------------------------------------------------------------------------------------------
+    // Return the most bytes the binary frame for an ASCII command frame can take
+    //---------------------------------------------------------------------------------------------
+    public static int maxEncodedLength(String asciiFrame) {
+        // Every parameter takes at least 2 characters (",9") and at most 5 varint bytes
+        return FRAME_OVERHEAD + (asciiFrame.length() / 2 + 1) * 5;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Encode an ASCII command frame (like "H,110,20,85;") with a sequence number (0-255) into
+    // the buffer at the offset.  Returns the number of bytes written, or -1 if the frame can't
+    // be sent as binary
+    //---------------------------------------------------------------------------------------------
+    public static int encode(String asciiFrame, int seq, byte[] buffer, int offset) {
+        return encodeFrame(SYNC, asciiFrame, seq, buffer, offset);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Encode an ASCII command frame (like "S;") as a control frame, with the sequence number of
+    // the next frame the robot should execute after it.  Returns the number of bytes written, or
+    // -1 if the frame can't be sent as binary
+    //---------------------------------------------------------------------------------------------
+    public static int encodeControl(String asciiFrame, int nextSeq, byte[] buffer, int offset) {
+        return encodeFrame(CONTROL_SYNC, asciiFrame, nextSeq, buffer, offset);
+    }
+
+    private static int encodeFrame(int sync, String asciiFrame, int seq, byte[] buffer, int offset) {
+        int len = asciiFrame.length();
+        if (len > 0 && asciiFrame.charAt(len - 1) == FrameParser.FRAME_END) {
+            len--;
+        }
+        if (len == 0) {
+            return -1;
+        }
+
+        int pos = offset;
+        buffer[pos++] = (byte) sync;
+        buffer[pos++] = (byte) asciiFrame.charAt(0);
+        buffer[pos++] = (byte) seq;
+        int lenPos = pos++;
+        int payloadStart = pos;
+
+        // Parse the comma separated parameters and write each one as a varint
+        int paramCnt = 0;
+        int i = 1;
+        while (i < len) {
+            if (asciiFrame.charAt(i) != ',' || ++paramCnt > MAX_PARAMS) {
+                return -1;
+            }
+            i++;
+            long value = 0;
+            int digits = 0;
+            while (i < len && asciiFrame.charAt(i) != ',') {
+                char c = asciiFrame.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+                digits++;
+                i++;
+            }
+            if (digits == 0 || value > 0xFFFFFFFFL) {
+                return -1;
+            }
+            pos = writeVarint(value, buffer, pos);
+        }
+
+        int payloadLen = pos - payloadStart;
+        if (payloadLen > MAX_PAYLOAD) {
+            return -1;
+        }
+        buffer[lenPos] = (byte) payloadLen;
+        buffer[pos] = crc8(buffer, offset + 1, pos - offset - 1);
+        pos++;
+        return pos - offset;
+    }
+
+    // Write an unsigned value 7 bits at a time (high bit set if more bytes follow)
+    private static int writeVarint(long value, byte[] buffer, int pos) {
+        while (value >= 0x80) {
+            buffer[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // CRC-8 (polynomial 0x07, initial value 0)
+    //---------------------------------------------------------------------------------------------
+    public static byte crc8(byte[] buffer, int offset, int len) {
+        int crc = 0;
+        for (int i = offset; i < offset + len; i++) {
+            crc ^= buffer[i] & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                if ((crc & 0x80) != 0) {
+                    crc = ((crc << 1) ^ 0x07) & 0xFF;
+                } else {
+                    crc = (crc << 1) & 0xFF;
+                }
+            }
+        }
+        return (byte) crc;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the parameters of a reply from the robot (like "K,12,56"), or null if the frame
+    // is not that reply command
+    //---------------------------------------------------------------------------------------------
+    public static int[] parseReply(String frame, char replyCommand) {
+        if (frame.length() < 3 || frame.charAt(0) != replyCommand || frame.charAt(1) != ',') {
+            return null;
+        }
+        String[] fields = frame.substring(2).split(",");
+        int[] params = new int[fields.length];
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                params[i] = Integer.parseInt(fields[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return params;
+    }
+
+    // Return the protocol version in the robot's reply to the handshake, or 0 if the frame is
+    // not a version reply
+    public static int parseVersionReply(String frame) {
+        int[] params = parseReply(frame, VERSION_COMMAND);
+        return (params == null) ? 0 : params[0];
+    }
+
+} // public class BinaryProtocol {
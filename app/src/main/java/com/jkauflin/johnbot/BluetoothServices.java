@@ -11,6 +11,25 @@
  *                  command line communications working
  * 2017-02-11 JJK   Removed the context parameter on create becuase this
  *                  services class should not do any UI work
+ * 2026-10-16 AGENT Changed ConnectedThread to read blocks of bytes into a
+ *                  ring buffer (FrameParser) instead of one byte at a time
+ *                  and concatenating a String for every byte
+ *                  Changed the receive loop to block on the read instead of
+ *                  spinning on available(), and log the thread CPU usage
+ *                  Added a writer thread fed by the OutboundQueue, so write
+ *                  never blocks the caller (pending commands are combined
+ *                  into one socket write)
+ *                  Log the STOP latency (STOP now goes ahead of the queue)
+ *                  Added the version handshake to switch to the binary
+ *                  command protocol when the robot supports it
+ *                  Pass the acks and naks from the robot to the outbound
+ *                  queue (binary frames wait for an ack, and are sent again
+ *                  if lost)
+ *                  Send a MESSAGE_STATE_CHANGE to the handler when the
+ *                  connection state changes
+ *                  Pass the control frame acks (STOP) to the outbound queue
+ *                  Each writer thread has its own batch buffer (a reconnect
+ *                  doesn't share it with the old writer)
  *============================================================================*/
 package com.jkauflin.johnbot;
 
@@ -22,6 +41,7 @@ import android.content.Intent;
 import android.os.Handler;
 import android.os.Message;
 import android.os.Parcelable;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.util.Log;
 
@@ -46,12 +66,25 @@ public class BluetoothServices {
     public static final int STATE_CONNECTING = 2; // now initiating an outgoing connection
     public static final int STATE_CONNECTED = 3;  // now connected to a remote device
 
+    // Message types sent to the handler (message frames from the robot are MESSAGE_READ)
+    public static final int MESSAGE_READ = 0;
+    public static final int MESSAGE_STATE_CHANGE = 1;  // arg1 is the new state
+
+    // Size of the ring buffer for messages received from the robot
+    private static final int READ_BUFFER_SIZE = 1024;
+    // Maximum number of commands waiting to be sent to the robot
+    private static final int OUTBOUND_QUEUE_SIZE = 64;
+
     private BluetoothAdapter btAdapter = null;
     private BluetoothDevice btDevice = null;
     private Handler mHandler = null;  // handler that gets info from Bluetooth service
     private ConnectThread connectThread = null;
     private ConnectedThread connectedThread = null;
-    private int mState;
+    private WriterThread writerThread = null;
+    // Queue of commands for the writer thread to send
+    private final OutboundQueue outboundQueue = new OutboundQueue(OUTBOUND_QUEUE_SIZE);
+    // volatile because the receive thread checks it on every loop
+    private volatile int mState;
 
     // Return Intent extra
     public static String EXTRA_DEVICE_ADDRESS = "device_address";
@@ -109,7 +142,18 @@ public class BluetoothServices {
 
 
     private synchronized void setState(int state) {
+        if (state == mState) {
+            return;
+        }
         mState = state;
+        // Tell the UI Activity about the new state
+        if (mHandler != null) {
+            Message msg = Message.obtain();
+            msg.what = MESSAGE_STATE_CHANGE;
+            msg.arg1 = state;
+            msg.setTarget(mHandler);
+            msg.sendToTarget();
+        }
     }
     public synchronized int getState() {
         return mState;
@@ -124,10 +168,7 @@ public class BluetoothServices {
         }
 
         // Cancel any thread currently running a connection
-        if (connectedThread != null) {
-            connectedThread.cancel();
-            connectedThread = null;
-        }
+        cancelConnected();
 
         connectThread = new ConnectThread();
         connectThread.start();
@@ -136,10 +177,7 @@ public class BluetoothServices {
     } // public void connect() {
 
     public synchronized void close() {
-        if (connectedThread != null) {
-            connectedThread.cancel();
-            connectedThread = null;
-        }
+        cancelConnected();
         if (connectThread != null) {
             connectThread.cancel();
             connectThread = null;
@@ -219,38 +257,60 @@ public class BluetoothServices {
         }
 
         // Cancel any thread currently running a connection
-        if (connectedThread != null) {
-            connectedThread.cancel();
-            connectedThread = null;
-        }
+        cancelConnected();
 
         // The connection attempt succeeded. Perform work associated with
         // the connection in a separate thread.
+        // (set the state first, the thread runs until the state changes)
+        setState(STATE_CONNECTED);
         connectedThread = new ConnectedThread(socket);
         connectedThread.start();
+        // Start the thread to write the queued commands to the connection
+        writerThread = new WriterThread(connectedThread.mmOutStream);
+        writerThread.start();
+
+        // Ask the robot which protocol it supports (commands stay ASCII until it answers,
+        // older robot code without the handshake never answers)
+        outboundQueue.offer(BinaryProtocol.VERSION_COMMAND+","+BinaryProtocol.PROTOCOL_VERSION+";");
 
-        setState(STATE_CONNECTED);
         Log.i(TAG, "connected");
     }
 
     /**
-     * Write to the ConnectedThread in an unsynchronized manner
+     * Queue a command message for the writer thread (never blocks the caller)
      *
      */
     public void write(String message) {
-        // Create temporary object
-        ConnectedThread r;
-        // Synchronize a copy of the ConnectedThread
-        synchronized (this) {
-            if (mState != STATE_CONNECTED) return;
-            r = connectedThread;
+        if (mState != STATE_CONNECTED) return;
+        if (!outboundQueue.offer(message)) {
+            Log.e(TAG, "Outbound queue full, dropped message = "+message);
         }
-        // Perform the write unsynchronized
-        // *** check for errors ***
-        try {
-            r.write(message);
-        } catch (Exception e) {
-            Log.e(TAG,"Error on write",e);
+    }
+
+    // Return the outbound queue (for the queue depth and write latency statistics)
+    public OutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
+    // Cancel the threads for the current connection (and drop any commands not sent yet)
+    private synchronized void cancelConnected() {
+        if (writerThread != null) {
+            writerThread.cancel();
+            writerThread = null;
+        }
+        if (connectedThread != null) {
+            connectedThread.cancel();
+            connectedThread = null;
+        }
+        outboundQueue.clear();
+        outboundQueue.setBinaryMode(false, 0);
+    }
+
+    // Reset the state when the read on a connection ends (but only if it is still the current
+    // connection, a cancelled thread wakes up with an exception after a new one has started)
+    private synchronized void connectionLost(ConnectedThread thread) {
+        if (connectedThread == thread) {
+            setState(STATE_NONE);
         }
     }
 
@@ -259,7 +319,8 @@ public class BluetoothServices {
         private final BluetoothSocket mmSocket;
         private final InputStream inSerial3;
         private final OutputStream mmOutStream;
-        private byte[] mmBuffer; // mmBuffer store for the stream
+        // Ring buffer to receive blocks of bytes and extract the message frames
+        private final FrameParser frameParser = new FrameParser(READ_BUFFER_SIZE);
 
         public ConnectedThread(BluetoothSocket socket) {
             mmSocket = socket;
@@ -284,141 +345,76 @@ public class BluetoothServices {
         }
 
         public void run() {
-            mmBuffer = new byte[1024];
-            int numBytes; // bytes returned from read()
-
-            int inByte;
-            String inStr = "";
-            String command = "";
+            String inStr;
+            long startWallMs = SystemClock.elapsedRealtime();
+            long startCpuMs = SystemClock.currentThreadTimeMillis();
 
             // Keep listening to the InputStream until an exception occurs.
+            // The read blocks until bytes arrive (no polling of available), and cancel() closes
+            // the socket to wake it up with an IOException
             while (mState == STATE_CONNECTED) {
 
                 try {
-                    if (inSerial3.available() > 0) {
-                        inByte = inSerial3.read();
-
-                        switch (inByte) {
-                            /*
-                            case 36: // Dollar sign (command start)
-                                //commandStart = true;
-                                //commandStop = false;
-                                command = "";
-                                inStr = "";
-                                break;
-                            */
-                            case 59: // Semi-colon (command stop)
-                                /*
-                                if (commandStart) {
-                                    command = inStr;
-                                    //Serial.println("Command = "+inStr);
-                                } else {
-                                    //Serial.println("param = "+inStr);
-                                    addCommandParam(command,inStr);
-                                }
-                                commandStart = false;
-                                commandStop = true;
-                                */
-                                //Log.d(TAG,"inStr = "+inStr);
-
-                                // Send the obtained bytes to the UI Activity
-
-                                Message msg = Message.obtain(); // Creates an new Message instance
-                                msg.obj = inStr; // Put the string into Message, into "obj" field.
-                                msg.setTarget(mHandler); // Set the Handler
-                                msg.sendToTarget(); //Send the message
-                                /*
-                                mHandler.obtainMessage(1, bytes, -1, buffer)
-                                        .sendToTarget();
-
-                                Message readMsg = mHandler.obtainMessage(
-                                        MessageConstants.MESSAGE_READ, numBytes, -1,
-                                        mmBuffer);
-                                readMsg.sendToTarget();
-
-
-                                final Message msg = new Message();
-                                final Bundle b = new Bundle();
-                                b.putInt("KEY", value);
-                                msg.setData(b);
-                                handler.sendMessage(msg);
-                                */
-
-                                command = "";
-                                inStr = "";
-                                break;
-                            /*
-                            case 44: // Comma (separator)
-                                if (commandStart) {
-                                    command = inStr;
-                                    //Serial.println("Command = "+inStr);
-                                    commandStart = false;
-                                } else {
-                                    //Serial.println("param = "+inStr);
-                                    addCommandParam(command,inStr);
-                                }
-                                inStr = "";
-                                break;
-                             */
-                            default:
-                                inStr += Character.toString((char)inByte);
-
-                        } // End of switch (inByte)
-
-                    } // End of while (Serial.available())
-
-                    /*
-                    if (inSerial3.available() > 0) {
-                        // Read from the InputStream.
-                        numBytes = inSerial3.read(mmBuffer);
-
-                        //String decodedData = new String(mmBuffer);  // Create new String Object and assign byte[] to it
-                        //Log.d(TAG,"Text Decryted : " + decodedData);
-                        decodedDataUsingUTF8 = new String(mmBuffer, "UTF-8");  // Best way to decode using "UTF-8"
-                        Log.d(TAG,"Text Decryted using UTF-8 : " + decodedDataUsingUTF8);
+                    // Read a block of bytes into the ring buffer
+                    if (frameParser.readFrom(inSerial3) < 0) {
+                        connectionLost(this);
+                        break;
                     }
-                    */
-
-                    // Send the obtained bytes to the UI activity.
-                    /*
-                    Message readMsg = mHandler.obtainMessage(
-                            MessageConstants.MESSAGE_READ, numBytes, -1,
-                            mmBuffer);
-                    readMsg.sendToTarget();
-                    */
 
+                    // Send each complete frame (terminated by a semi-colon) to the UI Activity
+                    while ((inStr = frameParser.nextFrame()) != null) {
+                        // Switch to the binary protocol when the robot answers the handshake
+                        // (with the version and its receive window)
+                        int[] params = BinaryProtocol.parseReply(inStr, BinaryProtocol.VERSION_COMMAND);
+                        if (params != null) {
+                            int windowBytes = (params.length > 1) ? params[1] : 0;
+                            outboundQueue.setBinaryMode(params[0] >= BinaryProtocol.PROTOCOL_VERSION, windowBytes);
+                            Log.i(TAG, "Robot protocol version = "+params[0]+", window = "+windowBytes);
+                            continue;
+                        }
+                        // Frame received by the robot (sequence number and window)
+                        params = BinaryProtocol.parseReply(inStr, BinaryProtocol.ACK_COMMAND);
+                        if (params != null) {
+                            outboundQueue.ack(params[0], (params.length > 1) ? params[1] : 0);
+                            continue;
+                        }
+                        // Control frame (STOP) executed by the robot
+                        params = BinaryProtocol.parseReply(inStr, BinaryProtocol.CONTROL_ACK_COMMAND);
+                        if (params != null) {
+                            outboundQueue.ackControl(params[0]);
+                            continue;
+                        }
+                        // Frame lost or received with a bad CRC (send again from this sequence number)
+                        params = BinaryProtocol.parseReply(inStr, BinaryProtocol.NAK_COMMAND);
+                        if (params != null) {
+                            outboundQueue.nak(params[0]);
+                            Log.w(TAG, "Robot nak seq = "+params[0]);
+                            continue;
+                        }
+
+                        Message msg = Message.obtain(); // Creates an new Message instance
+                        msg.what = MESSAGE_READ;
+                        msg.obj = inStr; // Put the string into Message, into "obj" field.
+                        msg.setTarget(mHandler); // Set the Handler
+                        msg.sendToTarget(); //Send the message
+                    }
 
                 } catch (Exception e) {
                     //Log.e(TAG, "*** Input stream was disconnected ***");
                     //connectionLost();  *** send a message if needed ***
 
-                    setState(STATE_NONE);
+                    connectionLost(this);
                     break;
                 }
 
-
             } // while (true)
-        } // public void run() {
-
-        // Call this from the main activity to send data to the remote device.
-        //public void write(byte[] bytes) {
-        public void write(String command) {
-            try {
-                byte[] msgBuffer = command.getBytes();
-                Log.d(TAG, "send Command: " + command);
-                mmOutStream.write(msgBuffer);
-
-            } catch (IOException e) {
-                Log.e(TAG, "*** Error occurred when sending data ***");
-                //connectionLost();  *** send a message if needed ***
-                // Start the service over to restart listening mode
 
-                setState(STATE_NONE);
-
-                Log.e(TAG, "Re-connecting bluetooth services");
-                BluetoothServices.this.connect();
-            }
-        } // public void write(String message)
+            // Log the CPU used by the receive thread over the connected session
+            long wallMs = SystemClock.elapsedRealtime() - startWallMs;
+            long cpuMs = SystemClock.currentThreadTimeMillis() - startCpuMs;
+            Log.i(TAG, "Receive thread ended, cpu ms = "+cpuMs+", wall ms = "+wallMs+
+                    ", cpu % = "+(wallMs > 0 ? (cpuMs * 100 / wallMs) : 0));
+        } // public void run() {
 
         // Call this method from the main activity to shut down the connection.
         public void cancel() {
@@ -430,4 +426,63 @@ public class BluetoothServices {
         }
     } // private class ConnectedThread extends Thread
 
+
+    //---------------------------------------------------------------------------------------------
+    // Thread to take the queued commands and write them to the connection.  All the commands
+    // pending at the same time are sent in one write
+    //---------------------------------------------------------------------------------------------
+    private class WriterThread extends Thread {
+        private final OutputStream mmOutStream;
+        // This writer's batch buffer (not shared with the writer of a later connection)
+        private final OutboundQueue.Batch batch = new OutboundQueue.Batch();
+
+        public WriterThread(OutputStream outStream) {
+            mmOutStream = outStream;
+        }
+
+        public void run() {
+            while (!isInterrupted()) {
+                int batchLen;
+                try {
+                    batchLen = outboundQueue.takeBatch(batch);
+                } catch (InterruptedException e) {
+                    break;
+                }
+
+                try {
+                    mmOutStream.write(batch.getBuffer(), 0, batchLen);
+                    long stopCnt = outboundQueue.getStopCnt();
+                    outboundQueue.writeDone(batch);
+                    Log.d(TAG, "send Command bytes = "+batchLen+
+                            ", queue depth = "+outboundQueue.getQueueDepth()+
+                            ", unacked = "+outboundQueue.getUnackedCnt()+
+                            ", latency ms = "+outboundQueue.getLastWriteLatencyMs()+
+                            ", retransmits = "+outboundQueue.getRetransmitCnt());
+                    if (outboundQueue.getStopCnt() != stopCnt) {
+                        Log.i(TAG, "STOP latency ms = "+outboundQueue.getLastStopLatencyMs()+
+                                ", max ms = "+outboundQueue.getMaxStopLatencyMs());
+                    }
+
+                } catch (IOException e) {
+                    Log.e(TAG, "*** Error occurred when sending data ***");
+                    // Start the service over (if this is still the current connection)
+                    synchronized (BluetoothServices.this) {
+                        if (writerThread != this) {
+                            break;
+                        }
+                        setState(STATE_NONE);
+                    }
+
+                    Log.e(TAG, "Re-connecting bluetooth services");
+                    BluetoothServices.this.connect();
+                    break;
+                }
+            }
+        } // public void run() {
+
+        public void cancel() {
+            interrupt();
+        }
+    } // private class WriterThread extends Thread
+
 } // public class BluetoothServices
@@ -0,0 +1,112 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Conditional, compressed HTTP GET of the content data.  Sends
+ *              the validators from the last download (ETag and Last-Modified)
+ *              so the server can answer 304 Not Modified when nothing has
+ *              changed, and accepts gzip (the body is un-compressed here, so
+ *              the caller always reads plain JSON).
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+
+public class ContentFetcher {
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+
+    // Result of a fetch - the body to read (if it was modified), and the new validators
+    public static class Result {
+        public final int status;
+        public final String etag;
+        public final String lastModified;
+        private final InputStream body;
+        private final HttpURLConnection conn;
+
+        private Result(int status, String etag, String lastModified, InputStream body, HttpURLConnection conn) {
+            this.status = status;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+            this.conn = conn;
+        }
+
+        public boolean isNotModified() {
+            return status == HttpURLConnection.HTTP_NOT_MODIFIED;
+        }
+
+        // Un-compressed body (null if not modified)
+        public InputStream getBody() {
+            return body;
+        }
+
+        public void close() {
+            if (body != null) {
+                try {
+                    body.close();
+                } catch (IOException e) {
+                    // Nothing more to do with it
+                }
+            }
+            conn.disconnect();
+        }
+    }
+
+    public ContentFetcher(int connectTimeoutMs, int readTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // GET the url with the validators from the last download (either can be null).  Returns the
+    // result for a 200 or 304 (close it when done), and throws an IOException for anything else
+    //---------------------------------------------------------------------------------------------
+    public Result fetch(String url, String etag, String lastModified) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            conn.setConnectTimeout(connectTimeoutMs);
+            conn.setReadTimeout(readTimeoutMs);
+            conn.setUseCaches(false);
+            conn.setRequestProperty("Accept-Encoding", "gzip");
+            if (etag != null && !etag.isEmpty()) {
+                conn.setRequestProperty("If-None-Match", etag);
+            }
+            if (lastModified != null && !lastModified.isEmpty()) {
+                conn.setRequestProperty("If-Modified-Since", lastModified);
+            }
+
+            int status = conn.getResponseCode();
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                // Keep the validators we have if the server doesn't send them again
+                return new Result(status, firstNonEmpty(conn.getHeaderField("ETag"), etag),
+                        firstNonEmpty(conn.getHeaderField("Last-Modified"), lastModified), null, conn);
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP status = "+status);
+            }
+
+            InputStream body = new BufferedInputStream(conn.getInputStream());
+            if ("gzip".equalsIgnoreCase(conn.getContentEncoding())) {
+                body = new GZIPInputStream(body);
+            }
+            return new Result(status, conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified"), body, conn);
+        } catch (IOException e) {
+            conn.disconnect();
+            throw e;
+        }
+    }
+
+    private static String firstNonEmpty(String value, String defaultValue) {
+        return (value != null && !value.isEmpty()) ? value : defaultValue;
+    }
+
+} // public class ContentFetcher {
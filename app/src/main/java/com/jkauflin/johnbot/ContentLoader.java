@@ -0,0 +1,170 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Thread to download the content data (jokes and responses)
+ *              and stream it into the database as it is read, so memory use
+ *              stays the same whatever the size of the data (instead of
+ *              building the whole JSONObject in a Volley request).
+ *              The listener is called on the main thread when it is done.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *                  Conditional, gzip fetch with ContentFetcher - if the data
+ *                  is not modified (304) nothing is parsed or written
+ *                  Open the local database first (offline-first startup)
+ *                  The sync is built in a new database file and swapped in
+ *                  Any exception from a bad payload is reported with onError
+ *                  (instead of ending the thread and the app)
+ *                  Added cancel, for when the activity is destroyed
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.JsonReader;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+
+public class ContentLoader extends Thread {
+    private static final String TAG = "contentLoader";
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    // Validators of the last data applied (and the url they are for)
+    private static final String PREF_URL = "contentUrl";
+    private static final String PREF_ETAG = "contentEtag";
+    private static final String PREF_LAST_MODIFIED = "contentLastModified";
+
+    // Interface for the end of the load (called on the main thread)
+    public interface Listener {
+        // The local database is open (before the sync), and has content to answer from or not
+        void onLocalReady(boolean hasContent);
+        void onLoaded(int changeCnt);
+        // Nothing has changed since the last load (the database is used as it is)
+        void onNotModified();
+        void onError(String message);
+    }
+
+    private final String baseUrl;
+    private final DatabaseHandler db;
+    private final SharedPreferences prefs;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Set on the main thread when the activity is destroyed (the listener is not called after)
+    private volatile boolean cancelled = false;
+
+    public ContentLoader(String baseUrl, DatabaseHandler db, SharedPreferences prefs, Listener listener) {
+        super("contentLoader");
+        this.baseUrl = baseUrl;
+        this.db = db;
+        this.prefs = prefs;
+        this.listener = listener;
+    }
+
+    @Override
+    public void run() {
+        long startMs = System.currentTimeMillis();
+        // Open the database first, so the bot can answer from the last synced content while
+        // the sync is done (or without a network)
+        final boolean hasContent = db.openContent();
+        Log.d(TAG,"Local database open, has content = "+hasContent+", ms = "+(System.currentTimeMillis()-startMs));
+        post(new Runnable() {
+            public void run() {
+                listener.onLocalReady(hasContent);
+            }
+        });
+
+        // Ask only for the rows changed since the table versions already synced
+        String url = baseUrl+db.getSyncQuery();
+        // The validators only apply to the same request (the sync versions are in the url)
+        String etag = null;
+        String lastModified = null;
+        if (url.equals(prefs.getString(PREF_URL, ""))) {
+            etag = prefs.getString(PREF_ETAG, null);
+            lastModified = prefs.getString(PREF_LAST_MODIFIED, null);
+        }
+
+        ContentFetcher.Result result = null;
+        JsonReader reader = null;
+        try {
+            result = new ContentFetcher(CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS).fetch(url, etag, lastModified);
+            if (result.isNotModified()) {
+                Log.d(TAG,"Content not modified, ms = "+(System.currentTimeMillis()-startMs));
+                post(new Runnable() {
+                    public void run() {
+                        listener.onNotModified();
+                    }
+                });
+                return;
+            }
+
+            reader = new JsonReader(new InputStreamReader(result.getBody(), "UTF-8"));
+            final int changeCnt = db.applySync(reader);
+            // Save the validators after the data is applied (so a failed load is tried again), for
+            // the request with the new sync versions (the next one made if nothing changes)
+            prefs.edit()
+                    .putString(PREF_URL, baseUrl+db.getSyncQuery())
+                    .putString(PREF_ETAG, result.etag)
+                    .putString(PREF_LAST_MODIFIED, result.lastModified)
+                    .apply();
+            Log.d(TAG,"Content loaded, rows changed = "+changeCnt+", rejected = "+db.getRejectedRowCnt()+
+                    ", ms = "+(System.currentTimeMillis()-startMs));
+            post(new Runnable() {
+                public void run() {
+                    listener.onLoaded(changeCnt);
+                }
+            });
+        } catch (IOException e) {
+            postError(e.getMessage());
+        } catch (RuntimeException e) {
+            // JSON that doesn't have the expected structure (IllegalStateException), a bad number
+            // (NumberFormatException), or rows the database won't take (SQLiteException) - the
+            // sync is not applied, and the bot goes on answering from the current content
+            postError(e.toString());
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Log.e(TAG,"Error closing reader, e = "+e.getMessage());
+                }
+            }
+            if (result != null) {
+                result.close();
+            }
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Stop calling the listener (call on the main thread, before closing the database - a sync
+    // in progress is not applied by the closed DatabaseHandler)
+    //---------------------------------------------------------------------------------------------
+    public void cancel() {
+        cancelled = true;
+        interrupt();
+    }
+
+    // Call the listener on the main thread (unless the load was cancelled by then)
+    private void post(final Runnable call) {
+        mainHandler.post(new Runnable() {
+            public void run() {
+                if (!cancelled) {
+                    call.run();
+                }
+            }
+        });
+    }
+
+    private void postError(final String message) {
+        Log.e(TAG,"Error loading content, e = "+message);
+        post(new Runnable() {
+            public void run() {
+                listener.onError(message);
+            }
+        });
+    }
+
+} // public class ContentLoader extends Thread {
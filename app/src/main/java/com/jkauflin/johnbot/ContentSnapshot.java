@@ -0,0 +1,344 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: One version of the content database file, opened read-only,
+ *              with the indexes built from it (the mapped ResponseStore of
+ *              the keyword automaton, responses, and jokes, and the deck of
+ *              joke ids).  Everything is built
+ *              before it is made current in the ContentStore, and only the
+ *              deal of the joke deck changes after that (or the store and its
+ *              deck, if the store failed to load and is loaded on a retry).
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version (moved the index loads from
+ *                  DatabaseHandler)
+ *                  Cache the compiled statements of the one value queries
+ *                  Load the jokes into a JokeDeck (instead of a list of ids)
+ *                  Keywords, responses, and jokes are in a mapped ResponseStore
+ *                  (written with the generation) instead of on the heap
+ *                  Approximate keyword match with a FuzzyMatcher
+ *                  Keywords normalized like the commands, and no answer from
+ *                  a fuzzy search the budget cut short
+ *                  A response store that failed to load is tried again (after
+ *                  a back-off) when it is next needed, instead of leaving the
+ *                  generation without keyword responses and jokes
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+
+public class ContentSnapshot {
+    private static final String TAG = "contentSnapshot";
+
+    // Time to wait before trying again to load a response store that failed (like a full disk)
+    private static final long STORE_RETRY_MS = 30000;
+
+    private final File file;
+    private final long generation;
+    private final SQLiteDatabase db;
+    private final boolean hasContent;
+
+    // Keyword automaton, responses, and jokes, in a mapped file (null without content, or until
+    // a load that failed is tried again at the retry time)
+    private ResponseStore store;
+    private long storeRetryMs = 0;
+    // Approximate keyword matcher (built the first time it is needed, not at startup)
+    private FuzzyMatcher fuzzyMatcher = null;
+    private boolean fuzzyLoaded = false;
+    // All the jokes (dealt on the DB executor - replaced only when the store is loaded late)
+    private JokeDeck jokeDeck;
+
+    // Compiled statements by query, for the one value queries run for each command (closed
+    // with the database)
+    private final HashMap<String, SQLiteStatement> statementCache = new HashMap<String, SQLiteStatement>();
+
+    // Set when newer content replaces this (the file is deleted when it is retired)
+    private volatile boolean obsolete = false;
+
+    //---------------------------------------------------------------------------------------------
+    // Open a content database file read-only and build its indexes
+    //---------------------------------------------------------------------------------------------
+    public ContentSnapshot(File file, long generation, String[] contentTableList) {
+        long startMs = System.currentTimeMillis();
+        this.file = file;
+        this.generation = generation;
+        db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        hasContent = checkTables(contentTableList);
+        store = hasContent ? openStore() : null;
+        if (hasContent && store == null) {
+            storeRetryMs = System.currentTimeMillis() + STORE_RETRY_MS;
+        }
+        jokeDeck = new JokeDeck((store != null) ? store.getJokeIdList() : new int[0], new Random().nextLong());
+        Log.d(TAG,"Opened content generation = "+generation+", has content = "+hasContent+
+                ", jokes = "+jokeDeck.size()+", ms = "+(System.currentTimeMillis()-startMs));
+    }
+
+    public SQLiteDatabase getDb() {
+        return db;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public boolean hasContent() {
+        return hasContent;
+    }
+
+    // True if the response store is loaded (without it the keywords aren't searched, so a miss
+    // isn't sure)
+    public synchronized boolean hasStore() {
+        return store != null;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the response store, loading it again if it failed before and the retry time has
+    // come (with a new joke deck from it).  Null if it isn't loaded
+    //---------------------------------------------------------------------------------------------
+    private synchronized ResponseStore getStore() {
+        if (store != null || !hasContent || System.currentTimeMillis() < storeRetryMs) {
+            return store;
+        }
+        store = openStore();
+        if (store == null) {
+            storeRetryMs = System.currentTimeMillis() + STORE_RETRY_MS;
+            return null;
+        }
+        jokeDeck = new JokeDeck(store.getJokeIdList(), new Random().nextLong());
+        Log.d(TAG,"Loaded the response store for generation = "+generation+", jokes = "+jokeDeck.size());
+        return store;
+    }
+
+    // Return the response for the first keyword found in the command (empty if none)
+    public String findKeywordResponse(String command) {
+        ResponseStore responseStore = getStore();
+        if (responseStore == null) {
+            return "";
+        }
+        int index = responseStore.findKeyword(command);
+        return (index != ResponseStore.NO_MATCH) ? responseStore.getResponse(index) : "";
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the response for a keyword found in the command with a few errors (like a word the
+    // recognizer got a little wrong), within the time budget (empty if none, or null if the
+    // budget ran out before a keyword was found, so it isn't sure there is none)
+    //---------------------------------------------------------------------------------------------
+    public String findFuzzyResponse(String command, long budgetNanos) {
+        FuzzyMatcher matcher = getFuzzyMatcher();
+        if (matcher == null) {
+            return "";
+        }
+        long startNs = System.nanoTime();
+        int index = matcher.find(command, budgetNanos);
+        Log.d(TAG,"Fuzzy keyword index = "+index+", candidates = "+matcher.getLastCandidateCnt()+
+                ", complete = "+matcher.isLastSearchComplete()+", us = "+(System.nanoTime()-startNs)/1000);
+        if (index != FuzzyMatcher.NO_MATCH) {
+            return getStore().getResponse(index);
+        }
+        return matcher.isLastSearchComplete() ? "" : null;
+    }
+
+    // Build the fuzzy matcher from the keywords (in the same order as the response store)
+    private synchronized FuzzyMatcher getFuzzyMatcher() {
+        ResponseStore responseStore = getStore();
+        if (fuzzyLoaded || responseStore == null) {
+            return fuzzyMatcher;
+        }
+        fuzzyLoaded = true;
+        ArrayList<String> keywordList = new ArrayList<String>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT keywords FROM verbalresponse ORDER BY rowid", null);
+            while (cursor.moveToNext()) {
+                keywordList.add(normalizeKeyword(cursor.getString(0)));
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG,"Error reading the keywords, e = "+e.getMessage());
+            return null;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        if (keywordList.size() != responseStore.getResponseCnt()) {
+            Log.e(TAG,"Keywords = "+keywordList.size()+", responses = "+responseStore.getResponseCnt());
+            return null;
+        }
+        fuzzyMatcher = new FuzzyMatcher(keywordList.toArray(new String[keywordList.size()]));
+        return fuzzyMatcher;
+    }
+
+    // Return the question and answer of a joke by its index in the deck
+    public synchronized String getJokeQuestion(int index) {
+        return store.getJokeQuestion(index);
+    }
+
+    public synchronized String getJokeAnswer(int index) {
+        return store.getJokeAnswer(index);
+    }
+
+    // File of the response store for a content database file
+    public static File getStoreFile(File dbFile) {
+        return new File(dbFile.getPath()+".store");
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the text from a query for one row by integer id (or the default if it isn't there),
+    // with the statement compiled the first time the query is run
+    //---------------------------------------------------------------------------------------------
+    public synchronized String queryText(String sql, long id, String defaultText) {
+        SQLiteStatement stmt = statementCache.get(sql);
+        try {
+            if (stmt == null) {
+                stmt = db.compileStatement(sql);
+                statementCache.put(sql, stmt);
+            }
+            stmt.bindLong(1, id);
+            return stmt.simpleQueryForString();
+        } catch (SQLiteException e) {
+            // Includes SQLiteDoneException if the row is not there
+            Log.e(TAG,"Error in query = "+sql+", id = "+id+", e = "+e.getMessage());
+            return defaultText;
+        } finally {
+            if (stmt != null) {
+                stmt.clearBindings();
+            }
+        }
+    }
+
+    // Return the joke deck (empty until the response store is loaded)
+    public synchronized JokeDeck getJokeDeck() {
+        getStore();
+        return jokeDeck;
+    }
+
+    public void setObsolete() {
+        obsolete = true;
+    }
+
+    // Close the database (when no longer in use), and delete the file if it has been replaced
+    public synchronized void retire() {
+        for (SQLiteStatement stmt : statementCache.values()) {
+            stmt.close();
+        }
+        statementCache.clear();
+        db.close();
+        if (obsolete) {
+            DatabaseHandler.deleteDatabaseFile(file);
+            Log.d(TAG,"Retired content generation = "+generation);
+        }
+    }
+
+    // Check that the content tables are in the database
+    private boolean checkTables(String[] contentTableList) {
+        Cursor cursor = null;
+        try {
+            StringBuilder sb = new StringBuilder("SELECT COUNT(*) FROM sqlite_master WHERE type = 'table' AND name IN (");
+            for (int i = 0; i < contentTableList.length; i++) {
+                sb.append((i > 0) ? ", ?" : "?");
+            }
+            sb.append(")");
+            cursor = db.rawQuery(sb.toString(), contentTableList);
+            return cursor.moveToFirst() && cursor.getInt(0) == contentTableList.length;
+        } catch (SQLiteException e) {
+            Log.e(TAG,"Error checking the content tables, e = "+e.getMessage());
+            return false;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Map the response store of this generation, or write it from the database first (the
+    // sync of a new generation, or a database from an older version).  Null if it can't be
+    //---------------------------------------------------------------------------------------------
+    private ResponseStore openStore() {
+        File storeFile = getStoreFile(file);
+        if (storeFile.exists()) {
+            try {
+                return ResponseStore.open(storeFile);
+            } catch (IOException e) {
+                Log.e(TAG,"Error opening the response store, e = "+e.getMessage());
+            }
+        }
+        File tempFile = new File(storeFile.getPath()+".tmp");
+        try {
+            writeStore(tempFile);
+            if (!tempFile.renameTo(storeFile)) {
+                throw new IOException("Rename failed for "+storeFile.getName());
+            }
+            Log.d(TAG,"Wrote the response store, bytes = "+storeFile.length());
+            return ResponseStore.open(storeFile);
+        } catch (IOException e) {
+            Log.e(TAG,"Error writing the response store, e = "+e.getMessage());
+        } catch (SQLiteException e) {
+            Log.e(TAG,"Error reading the content for the response store, e = "+e.getMessage());
+        } finally {
+            tempFile.delete();
+        }
+        return null;
+    }
+
+    // Read the verbalresponse keywords and responses (in rowid order, so the first row found still
+    // wins like the old scan), and the jokes (in id order), and write them to a store file
+    private void writeStore(File storeFile) throws IOException {
+        ArrayList<String> keywordList = new ArrayList<String>();
+        ArrayList<String> responseList = new ArrayList<String>();
+        ArrayList<Integer> jokeIdList = new ArrayList<Integer>();
+        ArrayList<String> questionList = new ArrayList<String>();
+        ArrayList<String> answerList = new ArrayList<String>();
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT keywords, verbalResponse FROM verbalresponse ORDER BY rowid", null);
+            while (cursor.moveToNext()) {
+                keywordList.add(normalizeKeyword(cursor.getString(0)));
+                responseList.add(cursor.getString(1));
+            }
+            cursor.close();
+            cursor = db.rawQuery("SELECT id, question, answer FROM joke ORDER BY id", null);
+            while (cursor.moveToNext()) {
+                jokeIdList.add(cursor.getInt(0));
+                questionList.add(cursor.getString(1));
+                answerList.add(cursor.getString(2));
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        int[] jokeIds = new int[jokeIdList.size()];
+        for (int i = 0; i < jokeIds.length; i++) {
+            jokeIds[i] = jokeIdList.get(i);
+        }
+        ResponseStore.write(storeFile, keywordList.toArray(new String[keywordList.size()]),
+                responseList.toArray(new String[responseList.size()]), jokeIds,
+                questionList.toArray(new String[questionList.size()]),
+                answerList.toArray(new String[answerList.size()]));
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Normalize a keyword the same as the commands are (see ResponseCache.normalize), so "who
+    // are you?" is found in "who are you".  Null if nothing is left (an empty keyword would be
+    // found in every command)
+    //---------------------------------------------------------------------------------------------
+    private static String normalizeKeyword(String keyword) {
+        String normalKeyword = ResponseCache.normalize(keyword);
+        return normalKeyword.isEmpty() ? null : normalKeyword;
+    }
+
+} // public class ContentSnapshot {
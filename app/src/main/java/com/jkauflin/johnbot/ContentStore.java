@@ -0,0 +1,136 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Holder for the current content (like the open content
+ *              database), which can be swapped for new content while it is
+ *              being used.  A reader acquires a lease on the current content
+ *              and releases it when done, so it never sees half of a swap.
+ *              Content that has been swapped out is retired (closed) once
+ *              the last lease on it is released.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+
+public class ContentStore<T> {
+
+    // Interface to retire content that is no longer current, once it is not in use
+    public interface Retirer<T> {
+        void retire(T content);
+    }
+
+    // A use of the content (release it when done)
+    public static class Lease<T> {
+        private final ContentStore<T> store;
+        private final Entry<T> entry;
+        private boolean released = false;
+
+        private Lease(ContentStore<T> store, Entry<T> entry) {
+            this.store = store;
+            this.entry = entry;
+        }
+
+        public T get() {
+            return entry.content;
+        }
+
+        public void release() {
+            store.release(this);
+        }
+    }
+
+    // Content and the count of its uses (the store holds one use on the current content)
+    private static class Entry<T> {
+        final T content;
+        int useCnt = 1;
+
+        Entry(T content) {
+            this.content = content;
+        }
+    }
+
+    private final Retirer<T> retirer;
+    private Entry<T> current = null;
+
+    // Statistics
+    private long swapCnt = 0;
+    private long retiredCnt = 0;
+
+    public ContentStore(Retirer<T> retirer) {
+        this.retirer = retirer;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Acquire a lease on the current content (null if there is none yet)
+    //---------------------------------------------------------------------------------------------
+    public synchronized Lease<T> acquire() {
+        if (current == null) {
+            return null;
+        }
+        current.useCnt++;
+        return new Lease<T>(this, current);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Make new content current.  The old content is retired now if it is not in use, or else
+    // when the last lease on it is released
+    //---------------------------------------------------------------------------------------------
+    public void swap(T content) {
+        Entry<T> retireEntry;
+        synchronized (this) {
+            Entry<T> oldEntry = current;
+            current = (content != null) ? new Entry<T>(content) : null;
+            swapCnt++;
+            retireEntry = dropUse(oldEntry);
+        }
+        retire(retireEntry);
+    }
+
+    // Remove the current content (retired when it is not in use)
+    public void close() {
+        swap(null);
+    }
+
+    public synchronized boolean hasContent() {
+        return current != null;
+    }
+
+    public synchronized long getSwapCnt() {
+        return swapCnt;
+    }
+
+    public synchronized long getRetiredCnt() {
+        return retiredCnt;
+    }
+
+    private void release(Lease<T> lease) {
+        Entry<T> retireEntry;
+        synchronized (this) {
+            if (lease.released) {
+                return;
+            }
+            lease.released = true;
+            retireEntry = dropUse(lease.entry);
+        }
+        retire(retireEntry);
+    }
+
+    // Drop a use of the content, and return it if it is no longer used (to retire)
+    private Entry<T> dropUse(Entry<T> entry) {
+        if (entry == null || --entry.useCnt > 0) {
+            return null;
+        }
+        retiredCnt++;
+        return entry;
+    }
+
+    // Retire outside of the lock (it can take a while, like closing a database)
+    private void retire(Entry<T> entry) {
+        if (entry != null) {
+            retirer.retire(entry.content);
+        }
+    }
+
+} // public class ContentStore<T> {
@@ -14,20 +14,85 @@
  *                  re-create/re-load from JSON data
  * 2017-03-25 JJK   Modified onCreate to use new dynamic JSON structure to
  *                  get info for tables, columns, and values
+ * 2026-10-16 AGENT Replaced the verbalresponse table scan in getResponse
+ *                  with a keyword automaton built once after the data load
+ *                  Added getSpeechTextList (phrases to pre-synthesize)
+ *                  Replaced the drop and re-load of all tables on a version
+ *                  change with a delta sync (per-table versions, upserts,
+ *                  and deletes) in applySync
+ *                  Stream the data into the tables with a JsonReader (rows are
+ *                  inserted as they are read, instead of from a JSONObject)
+ *                  Bulk load each table in one transaction with a compiled
+ *                  insert, and create the indexes after the rows are in
+ *                  Map the MySQL column types to SQLite storage classes (with
+ *                  an integer primary key as the rowid), bind values by type,
+ *                  and look up the jokes by integer id
+ *                  Added FTS4 search tables for the responses and jokes (kept
+ *                  in sync by applySync), with a ranked response fallback
+ *                  and jokes by topic
+ *                  Copy a seed database from the assets on the first run, and
+ *                  added hasContent (to answer before the sync is done)
+ *                  Build each sync in a new database file (the next generation)
+ *                  and swap it in with the ContentStore, instead of changing
+ *                  the live database - no longer a SQLiteOpenHelper
+ *                  Run the bot queries on a DB executor thread, with the
+ *                  results in a Future and a main thread callback
+ *                  Tell the jokes from the in-memory JokeDeck, with the deal
+ *                  saved in the preferences
+ *                  Write the mapped ResponseStore with each synced generation
+ *                  Approximate keyword match (FuzzyMatcher) before the search
+ *                  Cache the responses to recent commands (ResponseCache)
+ *                  Skip (and count) a row the database rejects, instead of
+ *                  failing the whole sync
+ *                  Open and build the generations under a process-wide lock,
+ *                  a closed handler no longer syncs, and no copy is made when
+ *                  no table changed
+ *                  A searched response needs most of the command's terms,
+ *                  one of them in the keywords
+ *                  Every response search is on the normalized command, and
+ *                  no cached miss when the fuzzy search ran out of time
+ *                  A table with a composite primary key is rejected (the
+ *                  deletes find a row by one key column)
+ *                  The legacy database is copied if it can't be renamed, and
+ *                  only deleted once the first generation is there
+ *                  The legacy database (and its journal) is deleted whenever
+ *                  a generation exists, not only when it was just moved
+ *                  No cached response while the response store isn't loaded
  *============================================================================*/
 package com.jkauflin.johnbot;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.JsonReader;
+import android.util.JsonToken;
 import android.util.Log;
 
 import com.android.volley.Cache;
@@ -44,324 +109,1096 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 
-public class DatabaseHandler extends SQLiteOpenHelper {
+
+public class DatabaseHandler {
     private static final String TAG = "databasehandler";
-    private static final String DATABASE_NAME = "JohnBot.db";
-    private static int dbVersion = 1;
+    // Content database files are named by generation (JohnBot-<generation>.db), and a sync builds
+    // the next generation in a new file
+    private static final String DATABASE_PREFIX = "JohnBot-";
+    private static final String DATABASE_EXT = ".db";
+    // Database of the versions before the generations (used as the first generation)
+    private static final String LEGACY_DATABASE_NAME = "JohnBot.db";
+    // Version of the local schema (the content tables are versioned separately, by table,
+    // in the syncversion table)
+    private static final int DATABASE_VERSION = 4;
+    private static final String SYNC_TABLE = "syncversion";
+    // Database packaged in the APK assets, to use before the first sync (if there is one)
+    private static final String SEED_ASSET = "JohnBot.db";
+    // Tables needed to answer (without them, wait for a sync)
+    private static final String[] CONTENT_TABLE_LIST = {"joke", "verbalresponse"};
+    private static final String DEFAULT_KEY_COLUMN = "id";
+    private static final String PREF_JOKE_SIGNATURE = "jokeDeckSignature";
+    private static final String PREF_JOKE_SEED = "jokeDeckSeed";
+    private static final String PREF_JOKE_POSITION = "jokeDeckPosition";
+
+    // Full-text search tables (FTS4), kept in sync with their content tables (docid = id)
+    //    content table, search table, columns
+    private static final String[][] SEARCH_TABLE_LIST = {
+            {"verbalresponse", "responsesearch", "keywords, verbalResponse"},
+            {"joke", "jokesearch", "question, answer"}
+    };
+    // Weight of each search column in the ranking
+    private static final double[] RESPONSE_WEIGHTS = {1.0, 0.25};
+    private static final double[] JOKE_WEIGHTS = {1.0, 0.5};
+    // Lowest score (per search term) for a search result to be used as the response, and the
+    // fraction of the search terms that must be in it
+    private static final double MIN_RESPONSE_SCORE = 1.0;
+    private static final double MIN_RESPONSE_COVERAGE = 0.6;
+    // Time for the approximate keyword match of a command
+    private static final long FUZZY_BUDGET_NS = 5000000L;
+    // Most commands to keep the response for
+    private static final int RESPONSE_CACHE_SIZE = 200;
 
     private Context context;
-    private JSONObject jsonData;
+    private final File dbDir;
+    // Version of the content from the last sync
+    private String contentVersion = "";
+    // Rows of the last sync the database would not take (skipped, the rest is applied)
+    private int rejectedRowCnt = 0;
 
     // example
     private ArrayList<HashMap<String, String>> contactList;
 
-    private ArrayList<Integer> jokeIdList = new ArrayList<Integer>();
-    private static int jokeCnt = 0;
-    private static int jokeId = -1;
+    // The current content (swapped when a sync builds a new generation, and an old one is
+    // closed and deleted when the last query using it is done)
+    private final ContentStore<ContentSnapshot> contentStore = new ContentStore<ContentSnapshot>(
+            new ContentStore.Retirer<ContentSnapshot>() {
+                public void retire(ContentSnapshot content) {
+                    content.retire();
+                }
+            });
+    // Content made current last (only used by the thread that opens and syncs)
+    private ContentSnapshot currentSnapshot = null;
+    // The generation files are shared by every handler in the process (an activity that is
+    // recreated opens a new handler while the old loader may still be syncing), so they are
+    // opened and built one handler at a time
+    private static final Object GENERATION_LOCK = new Object();
+
+    // Queries run one at a time on this thread, so callers (like the recognizer callbacks) never
+    // wait on SQLite
+    private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "dbExecutor");
+        }
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile boolean closed = false;
 
-    // Constructor to accept variables and check if upgrade/create is needed to reload data
-    // (This will call onUpgrade if the databaseVersion is greater then the value stored with database)
-    public DatabaseHandler(Context appContext, int databaseVersion, JSONObject inJsonData){
-        super(appContext, DATABASE_NAME, null, databaseVersion);
-        Log.d(TAG,"DB constructor, version = "+databaseVersion);
-        dbVersion = databaseVersion;
-        context = appContext;
-        jsonData = inJsonData;
+    // Interface for the result of a query (called on the main thread)
+    public interface QueryCallback<T> {
+        void onResult(T result);
     }
 
-    // Method called from Constructor when a lower database version is detected
-    // It will do nothing
-    @Override
-    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        Log.d(TAG, "DB onDowngrade, oldVersion = " + oldVersion + ", newVerion = " + newVersion);
+    // Responses to recent commands (and the ones with no response)
+    private final ResponseCache responseCache = new ResponseCache(RESPONSE_CACHE_SIZE);
+
+    // Joke deck being dealt, and the answer of the joke being told (only used on the DB executor)
+    private JokeDeck jokeDeck = null;
+    private String jokeAnswer = null;
+    // The deal of the joke deck is saved here, so jokes don't repeat after a restart
+    private final SharedPreferences prefs;
+
+    // Constructor for the local database (open it with openContent, off the main thread, and
+    // bring it up to date with applySync)
+    public DatabaseHandler(Context appContext){
+        context = appContext;
+        prefs = appContext.getSharedPreferences(MainActivity.PREFS_NAME, Context.MODE_PRIVATE);
+        dbDir = appContext.getDatabasePath(LEGACY_DATABASE_NAME).getParentFile();
     }
 
-        // Method called from Constructor when a new database version is detected
-    // It will drop tables and call onCreate to re-create and re-load
-    @Override
-    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        Log.d(TAG,"DB onUpgrade, oldVersion = "+oldVersion+", newVerion = "+newVersion);
+    //---------------------------------------------------------------------------------------------
+    // Open the newest content database (from the last sync, an older version, or the seed in the
+    // assets), and build its indexes.  Returns true if it has the content to answer from
+    //---------------------------------------------------------------------------------------------
+    public boolean openContent() {
+        synchronized (GENERATION_LOCK) {
+            return !closed && openNewestGeneration();
+        }
+    }
 
+    private boolean openNewestGeneration() {
+        dbDir.mkdirs();
+        long generation = findNewestGeneration();
+        File legacyFile = new File(dbDir, LEGACY_DATABASE_NAME);
+        if (generation == 0) {
+            // No generations yet - start with the database of the older versions, or the seed
+            // (if the old file can't be moved, it is kept and tried again on the next start)
+            File firstFile = generationFile(1);
+            if (legacyFile.exists() ? moveLegacyDatabase(legacyFile, firstFile) : copySeedDatabase(firstFile)) {
+                generation = 1;
+            }
+        }
+        if (generation == 0) {
+            return false;
+        }
+        // Once there is a generation the database of the older versions isn't needed (it is
+        // still there if it couldn't be moved and a sync made the first generation since)
+        deleteDatabaseFile(legacyFile);
         try {
-            JSONArray tableList = jsonData.getJSONArray("tableList");
-            JSONObject tableRec;
-            String tableName = "";
-            // looping through tableList
-            for (int i = 0; i < tableList.length(); i++) {
-                tableRec = tableList.getJSONObject(i);
-                tableName = tableRec.getString("tableName");
-                Log.i(TAG, "DROP TABLE IF EXISTS "+tableName);
-                db.execSQL("DROP TABLE IF EXISTS "+tableName);
-            }
-        } catch (Exception e)  {
-            Log.e(TAG,"Error parsing JSON data, e = "+e.getMessage());
-        }
-
-        // Re-create tables and re-load data
-        onCreate(db);
-    } // public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-
-    @Override
-    public void onCreate(SQLiteDatabase db) {
-        Log.d(TAG,"DB onCreate");
-        ContentValues values = new ContentValues();
+            makeCurrent(new ContentSnapshot(generationFile(generation), generation, CONTENT_TABLE_LIST));
+        } catch (SQLiteException e) {
+            // Can't be used - start over with the next sync
+            Log.e(TAG,"Error opening content generation = "+generation+", e = "+e.getMessage());
+            deleteDatabaseFile(generationFile(generation));
+            return false;
+        }
+        return currentSnapshot != null && currentSnapshot.hasContent();
+    }
+
+    public boolean hasContent() {
+        ContentStore.Lease<ContentSnapshot> lease = contentStore.acquire();
+        if (lease == null) {
+            return false;
+        }
         try {
-            JSONArray tableList = jsonData.getJSONArray("tableList");
-            JSONObject tableRec;
-            JSONArray columnList;
-            JSONObject columnRec;
-            JSONArray valuesList;
-            JSONObject valuesRec;
-            String sqlStr = "";
-            String tableName = "";
+            return lease.get().hasContent();
+        } finally {
+            lease.release();
+        }
+    }
 
-            String columnName = "";
-            String columnType = "";
-            String columnNull = "";
-            String columnKey = "";
-            String columnDefault = "";
-            String columnExtra = "";
-            String key = "";
-
-            // looping through the JSON data structures
-            for (int i = 0; i < tableList.length(); i++) {
-                tableRec = tableList.getJSONObject(i);
-                tableName = tableRec.getString("tableName");
-                sqlStr = "CREATE TABLE "+tableName+" (";
-                columnList = tableRec.getJSONArray("columnList");
-
-                for (int j = 0; j < columnList.length(); j++) {
-                    columnRec = columnList.getJSONObject(j);
-                    /*
-        [{"Field":"id","Type":"int(7)","Null":"NO","Key":"PRI","Default":null,"Extra":"auto_increment"},
-         {"Field":"question","Type":"varchar(1000)","Null":"NO","Key":"","Default":null,"Extra":""},
-         {"Field":"answer","Type":"varchar(1000)","Null":"NO","Key":"","Default":null,"Extra":""}],
-                    */
-                    columnName = columnRec.getString("Field");
-                    columnType = columnRec.getString("Type");
-                    columnNull = columnRec.getString("Null");
-                    columnKey = columnRec.getString("Key");
-                    columnDefault = columnRec.getString("Default");
-                    columnExtra = columnRec.getString("Extra");
-
-                    if (j > 0) {
-                        sqlStr += ", ";
-                    }
-                    sqlStr += columnName + " " + columnType;
-                    if (columnKey.equals("PRI")) {
-                        sqlStr += " PRIMARY KEY";
-                    }
-                }
-                sqlStr += ")";
-                Log.d(TAG,"SQL = "+sqlStr);
-                // Create the database table
-                db.execSQL(sqlStr);
-
-                valuesList = tableRec.getJSONArray("valuesList");
-                for (int k = 0; k < valuesList.length(); k++) {
-                    valuesRec = valuesList.getJSONObject(k);
-                    // Insert values into the database table
-/*
-          "valuesList":
-            [{"id":"1","keywords":"who are you","verbalResponse":"I am the John Bot. Pleased to meet you."},
-             {"id":"2","keywords":"shut up","verbalResponse":"No, you shut up."},{"id":"3","keywords":"you up","verbalResponse":"I am indeed, up. Why don't you come over?"},{"id":"4","keywords":"you do","verbalResponse":"I can walk and run, raise my arm up and down, turn my head left and right, and flash my eyes. I can also tell jokes."},{"id":"5","keywords":"you alive","verbalResponse":"What is your definition of life? I am not alive in the traditional sense, but I am certainly animated."},{"id":"6","keywords":"philosophical","verbalResponse":"Philosophy is the systematic and critical study of fundamental questions that arise both in everyday life and through the practice of other disciplines."},{"id":"7","keywords":"philosophy","verbalResponse":"The aim in Philosophy is not to master a body of facts, so much as think clearly and sharply through any set of facts."},{"id":"8","keywords":"love me","verbalResponse":"Of course I love you. How could you ask me that?"},{"id":"9","keywords":"meems","verbalResponse":"Would you like to buy some John's meme oil. It will make your memes dank."},{"id":"10","keywords":"means","verbalResponse":"Would you like to buy some John's meme oil. It will make your memes dank."},{"id":"11","keywords":"rum gone","verbalResponse":"Yes, the rum is gone."},{"id":"12","keywords":"think you're funny","verbalResponse":"I don't think, I know."},{"id":"13","keywords":"nice to meet","verbalResponse":"Thank you."}]}]}
+    // Stop the queries, and release the content (it is closed when the last query using it is done)
+    public synchronized void close() {
+        closed = true;
+        dbExecutor.shutdown();
+        contentStore.close();
+    }
 
-*/
-                    values.clear();
-                    for(Iterator<String> iter = valuesRec.keys(); iter.hasNext();) {
-                        key = iter.next();
-                        try {
-                            //Log.d(TAG,"Key = "+key+", Value = "+valuesRec.get(key).toString());
-                            values.put(key,valuesRec.get(key).toString());
-                        } catch (JSONException e) {
-                            Log.e(TAG,"Error getting JSON object key value",e);
-                        }
-                    }
-                    db.insert(tableName, null, values);
-                }
+    // Make new content current (readers switch to it on their next query).  If this handler was
+    // closed in the meantime, the content is just closed (the file is kept for the next handler)
+    private synchronized void makeCurrent(ContentSnapshot snapshot) {
+        if (closed) {
+            snapshot.retire();
+            return;
+        }
+        if (currentSnapshot != null) {
+            currentSnapshot.setObsolete();
+        }
+        currentSnapshot = snapshot;
+        contentStore.swap(snapshot);
+    }
+
+    private File generationFile(long generation) {
+        return new File(dbDir, DATABASE_PREFIX+generation+DATABASE_EXT);
+    }
+
+    // Find the newest generation file (and delete any older ones left behind)
+    private long findNewestGeneration() {
+        long newest = 0;
+        File[] fileList = dbDir.listFiles();
+        if (fileList == null) {
+            return 0;
+        }
+        for (File file : fileList) {
+            long generation = getGeneration(file);
+            if (generation > newest) {
+                newest = generation;
+            }
+        }
+        for (File file : fileList) {
+            long generation = getGeneration(file);
+            if (generation > 0 && generation < newest) {
+                deleteDatabaseFile(file);
             }
-        } catch (Exception e)  {
-            Log.e(TAG,"Error parsing JSON data, e = "+e.getMessage());
         }
+        return newest;
+    }
 
-    } // public void onCreate(SQLiteDatabase db) {
+    // Return the generation of a content database file (0 if it isn't one)
+    private static long getGeneration(File file) {
+        String name = file.getName();
+        if (!name.startsWith(DATABASE_PREFIX) || !name.endsWith(DATABASE_EXT)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(name.substring(DATABASE_PREFIX.length(), name.length() - DATABASE_EXT.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
 
+    // Delete a database file, its journal and WAL files, and its response store
+    public static void deleteDatabaseFile(File file) {
+        SQLiteDatabase.deleteDatabase(file);
+        ContentSnapshot.getStoreFile(file).delete();
+    }
 
-    public String getResponse(String command) {
-        String query = "SELECT * FROM verbalresponse";
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(query, null);
-        boolean found = false;
-        String response = "";
-        while(cursor.moveToNext() && !found) {
-            if (command.contains(cursor.getString(1))) {
-                found = true;
-                response = cursor.getString(2);
+    // Move the database of the older versions to the first generation file (copied if it can't be
+    // renamed).  Returns false if the first generation file isn't there
+    private static boolean moveLegacyDatabase(File legacyFile, File firstFile) {
+        if (legacyFile.renameTo(firstFile)) {
+            return true;
+        }
+        File tempFile = new File(firstFile.getPath()+".tmp");
+        try {
+            copyFile(new FileInputStream(legacyFile), tempFile);
+            if (tempFile.renameTo(firstFile)) {
+                Log.d(TAG,"Copied the legacy database, bytes = "+firstFile.length());
+                return true;
             }
+            Log.e(TAG,"Error moving the legacy database to "+firstFile.getName());
+        } catch (IOException e) {
+            Log.e(TAG,"Error copying the legacy database, e = "+e.getMessage());
+        } finally {
+            tempFile.delete();
         }
+        return false;
+    }
 
-        return response;
+    //---------------------------------------------------------------------------------------------
+    // Copy the seed database from the APK assets (first run), so there is content to answer with
+    // before the first sync (or without a network).  Returns false if there isn't one
+    //---------------------------------------------------------------------------------------------
+    private boolean copySeedDatabase(File dbFile) {
+        File tempFile = new File(dbFile.getPath()+".tmp");
+        try {
+            copyFile(context.getAssets().open(SEED_ASSET), tempFile);
+            if (tempFile.renameTo(dbFile)) {
+                Log.d(TAG,"Copied the seed database, bytes = "+dbFile.length());
+                return true;
+            }
+        } catch (IOException e) {
+            // No seed database in this build - the content comes from the first sync
+            Log.d(TAG,"No seed database, e = "+e.getMessage());
+        } finally {
+            tempFile.delete();
+        }
+        return false;
     }
 
-    public String getJokeQuestion() {
-        String question = "I don't know any jokes";
-        if (dbVersion > 1 && jokeCnt > 0) {
-            jokeId++;
-            if (jokeId >= jokeCnt) {
-                jokeId = 0;
-            }
-
-            SQLiteDatabase db = this.getReadableDatabase();
-            String selection = "id = ?" ;
-            String[] selectionArgs = {jokeIdList.get(jokeId).toString()};
-            String[] projection = {"question"};
-
-            Cursor cursor = db.query(
-                    "joke",                     // The table to query
-                    projection,                               // The columns to return
-                    selection,                                // The columns for the WHERE clause
-                    selectionArgs,                            // The values for the WHERE clause
-                    null,                                     // don't group the rows
-                    null,                                     // don't filter by row groups
-                    null                                 // The sort order
-            );
+    // Copy a stream to a file (closing the stream)
+    private static void copyFile(InputStream in, File toFile) throws IOException {
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(toFile);
+            byte[] buffer = new byte[8192];
+            int len;
+            while ((len = in.read(buffer)) > 0) {
+                out.write(buffer, 0, len);
+            }
+            out.close();
+            out = null;
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing more to do with it
+            }
+        }
+    }
 
+    //---------------------------------------------------------------------------------------------
+    // Set up the schema of a content database being synced.  If it is from an older schema
+    // version, the sync versions are cleared, so the sync re-loads the content tables (with the
+    // current schema mapping)
+    //---------------------------------------------------------------------------------------------
+    private void prepareSchema(SQLiteDatabase db) {
+        int oldVersion = db.getVersion();
+        db.execSQL("CREATE TABLE IF NOT EXISTS "+SYNC_TABLE+" (tableName TEXT PRIMARY KEY, tableVersion INTEGER)");
+        for (String[] search : SEARCH_TABLE_LIST) {
+            db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS "+search[1]+" USING fts4("+search[2]+", tokenize=porter)");
+        }
+        if (oldVersion != DATABASE_VERSION) {
+            Log.d(TAG,"DB schema oldVersion = "+oldVersion+", newVersion = "+DATABASE_VERSION);
+            db.execSQL("DELETE FROM "+SYNC_TABLE);
+            db.setVersion(DATABASE_VERSION);
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the query string for the data request, with the version of each table already
+    // synced (e.g. "?since[joke]=12&since[verbalresponse]=7"), so only rows changed since then
+    // are sent back.  Empty if nothing has been synced yet (the full data is sent)
+    //---------------------------------------------------------------------------------------------
+    public String getSyncQuery() {
+        StringBuilder sb = new StringBuilder();
+        ContentStore.Lease<ContentSnapshot> lease = contentStore.acquire();
+        if (lease == null) {
+            return "";
+        }
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = lease.get().getDb();
+            // Nothing is kept from an older schema (see prepareSchema)
+            if (db.getVersion() != DATABASE_VERSION) {
+                return "";
+            }
+            cursor = db.rawQuery("SELECT tableName, tableVersion FROM "+SYNC_TABLE, null);
+            while (cursor.moveToNext()) {
+                sb.append((sb.length() == 0) ? "?" : "&");
+                sb.append("since%5B").append(Uri.encode(cursor.getString(0))).append("%5D=");
+                sb.append(cursor.getLong(1));
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG,"Error reading sync versions, e = "+e.getMessage());
+        } finally {
             if (cursor != null) {
-                cursor.moveToFirst();
-                question = cursor.getString(0);
+                cursor.close();
             }
-            cursor.close();
+            lease.release();
         }
+        return sb.toString();
+    }
 
-        return question;
+    //---------------------------------------------------------------------------------------------
+    // Apply the data from the server, reading it from a stream so each row is inserted as it is
+    // read (the whole payload is never held in memory).  Each table in the tableList is either a
+    // delta (rows changed since the version we asked for, as upserts in valuesList, and keys of
+    // rows removed in deleteList), or the full table (when "full" is true, there is no
+    // tableVersion, or the table hasn't been synced yet), which is dropped and re-created from
+    // the columnList.  The tableName, tableVersion, full, and columnList of a table must come
+    // before its valuesList (the order they are written by the server).
+    // The data is applied to a copy of the current database (the next generation), which is
+    // made current when it is all in (with its indexes built), so queries never wait for the
+    // sync or see part of it.  If no table changed, no copy is made.  Call off the main thread.
+    // Returns the number of rows changed
+    //---------------------------------------------------------------------------------------------
+    public int applySync(JsonReader reader) throws IOException {
+        synchronized (GENERATION_LOCK) {
+            if (closed) {
+                // A newer handler (activity) has the content now
+                throw new IOException("Database handler is closed");
+            }
+            long startMs = System.currentTimeMillis();
+            int changeCnt = 0;
+            rejectedRowCnt = 0;
+            long generation = (currentSnapshot != null) ? currentSnapshot.getGeneration() + 1 : 1;
+            File nextFile = generationFile(generation);
+
+            boolean applied = false;
+            SQLiteDatabase db = null;
+            try {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String name = reader.nextName();
+                    if (name.equals("version")) {
+                        contentVersion = readString(reader);
+                    } else if (name.equals("tableList")) {
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            // The tableList only has the tables changed since the versions asked
+                            // for, so the copy is only made when there is one
+                            if (db == null) {
+                                db = openNextGeneration(nextFile);
+                            }
+                            changeCnt += syncTable(db, reader);
+                        }
+                        reader.endArray();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                if (db == null) {
+                    // Nothing changed - keep the current generation
+                    applied = true;
+                    return 0;
+                }
+                db.close();
+
+                // Open the new generation and build its indexes before readers switch to it
+                makeCurrent(new ContentSnapshot(nextFile, generation, CONTENT_TABLE_LIST));
+                applied = true;
+            } finally {
+                if (!applied && db != null) {
+                    db.close();
+                    deleteDatabaseFile(nextFile);
+                }
+                Log.d(TAG,"Sync rows changed = "+changeCnt+", rejected = "+rejectedRowCnt+", generation = "+
+                        ((db != null) ? String.valueOf(generation) : "unchanged")+", applied = "+applied+
+                        ", ms = "+(System.currentTimeMillis()-startMs));
+            }
+            return changeCnt;
+        }
+    } // public int applySync(JsonReader reader) {
+
+    // Start the next generation as a copy of the current database (the current file is only
+    // read, so it can be copied while it is in use)
+    private SQLiteDatabase openNextGeneration(File nextFile) throws IOException {
+        deleteDatabaseFile(nextFile);
+        if (currentSnapshot != null) {
+            copyFile(new FileInputStream(generationFile(currentSnapshot.getGeneration())), nextFile);
+        }
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(nextFile.getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE | SQLiteDatabase.CREATE_IF_NECESSARY);
+        try {
+            prepareSchema(db);
+        } catch (SQLiteException e) {
+            db.close();
+            deleteDatabaseFile(nextFile);
+            throw e;
+        }
+        return db;
     }
 
-    public String getJokeAnswer() {
-        String answer = "Sorry";
+    public String getContentVersion() {
+        return contentVersion;
+    }
 
-        if (dbVersion > 1 && jokeCnt > 0) {
-            SQLiteDatabase db = this.getReadableDatabase();
-            String selection = "id = ?" ;
-            String[] selectionArgs = {jokeIdList.get(jokeId).toString()};
-            String[] projection = {"answer"};
+    public int getRejectedRowCnt() {
+        return rejectedRowCnt;
+    }
 
-            Cursor cursor = db.query(
-                    "joke",                     // The table to query
-                    projection,                               // The columns to return
-                    selection,                                // The columns for the WHERE clause
-                    selectionArgs,                            // The values for the WHERE clause
-                    null,                                     // don't group the rows
-                    null,                                     // don't filter by row groups
-                    null                                 // The sort order
-            );
+    // Cache of the responses to recent commands (for the hit and miss counts)
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
 
-            if (cursor != null) {
-                cursor.moveToFirst();
-                answer = cursor.getString(0);
+    // Columns of a table (from the columnList, or from the local table for a delta)
+    private static class TableSchema {
+        String createSql = null;
+        String keyColumn = DEFAULT_KEY_COLUMN;
+        ArrayList<String> columnList = new ArrayList<String>();
+        // Storage class of each column (SqlTypeMapper types)
+        ArrayList<Integer> typeList = new ArrayList<Integer>();
+        // Indexes are created after the rows are loaded
+        ArrayList<String> indexSqlList = new ArrayList<String>();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Read one table from the tableList and apply it (with its new version) all or nothing, in
+    // a single transaction
+    //---------------------------------------------------------------------------------------------
+    private int syncTable(SQLiteDatabase db, JsonReader reader) throws IOException {
+        long startMs = System.currentTimeMillis();
+        String tableName = null;
+        long tableVersion = 0;
+        boolean full = false;
+        String keyColumn = null;
+        TableSchema schema = null;
+        boolean created = false;
+        int changeCnt = 0;
+        // Keys of the rows changed by a delta (to update the search table)
+        ArrayList<String> changedKeyList = new ArrayList<String>();
+
+        db.beginTransaction();
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("tableName")) {
+                    tableName = readString(reader);
+                } else if (name.equals("tableVersion")) {
+                    tableVersion = reader.nextLong();
+                } else if (name.equals("full")) {
+                    full = reader.nextBoolean();
+                } else if (name.equals("keyColumn")) {
+                    keyColumn = readString(reader);
+                } else if (name.equals("columnList")) {
+                    checkTableName(tableName);
+                    schema = readSchema(reader, tableName);
+                } else if (name.equals("valuesList")) {
+                    checkTableName(tableName);
+                    if (!created && isFullSync(db, tableName, tableVersion, full)) {
+                        createTable(db, tableName, schema);
+                        created = true;
+                    }
+                    if (schema == null) {
+                        schema = getLocalSchema(db, tableName);
+                    }
+                    changeCnt += upsertRows(db, tableName, schema, reader, created ? null : changedKeyList);
+                } else if (name.equals("deleteList")) {
+                    checkTableName(tableName);
+                    if (schema == null) {
+                        schema = getLocalSchema(db, tableName);
+                    }
+                    if (keyColumn == null) {
+                        keyColumn = schema.keyColumn;
+                    }
+                    int keyPos = schema.columnList.indexOf(keyColumn);
+                    int keyType = (keyPos >= 0) ? schema.typeList.get(keyPos) : SqlTypeMapper.TYPE_TEXT;
+                    changeCnt += deleteRows(db, tableName, keyColumn, keyType, reader, changedKeyList);
+                } else {
+                    reader.skipValue();
+                }
             }
-            cursor.close();
+            reader.endObject();
+            checkTableName(tableName);
+
+            // A full table with no rows is still re-created (empty)
+            if (!created && schema != null && schema.createSql != null &&
+                    isFullSync(db, tableName, tableVersion, full)) {
+                createTable(db, tableName, schema);
+                created = true;
+            }
+            // Create the indexes now that the rows are in (faster than updating them for each row)
+            if (created) {
+                for (String indexSql : schema.indexSqlList) {
+                    Log.d(TAG,"SQL = "+indexSql);
+                    db.execSQL(indexSql);
+                }
+            }
+            // Keep the full-text search table in sync with the rows
+            String[] search = getSearchTable(tableName);
+            if (search != null) {
+                if (created) {
+                    rebuildSearch(db, search);
+                } else {
+                    updateSearch(db, search, changedKeyList);
+                }
+            }
+
+            ContentValues values = new ContentValues();
+            values.put("tableName", tableName);
+            values.put("tableVersion", tableVersion);
+            db.insertWithOnConflict(SYNC_TABLE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
         }
 
-        return answer;
+        long loadMs = System.currentTimeMillis() - startMs;
+        Log.d(TAG,"Synced table = "+tableName+", version = "+tableVersion+", full = "+created+
+                ", rows changed = "+changeCnt+", ms = "+loadMs+
+                ", rows/sec = "+((loadMs > 0) ? (changeCnt * 1000L / loadMs) : changeCnt));
+        return changeCnt;
+    } // private int syncTable(SQLiteDatabase db, JsonReader reader) {
+
+    private boolean isFullSync(SQLiteDatabase db, String tableName, long tableVersion, boolean full) {
+        return full || tableVersion == 0 || getTableVersion(db, tableName) == 0;
     }
 
-    public void loadJokeIdList() {
-        String query = "SELECT * FROM joke";
-        SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(query, null);
-        while(cursor.moveToNext()) {
-            jokeCnt++;
-            jokeIdList.add(cursor.getInt(0));
+    private void checkTableName(String tableName) throws IOException {
+        if (tableName == null) {
+            throw new IOException("tableName must come first in a tableList entry");
         }
+    }
 
-        Collections.shuffle(jokeIdList);
-        /*
-        System.out.println("Results after shuffle operation:");
-        for (Integer id: jokeIdList) {
-            Log.i(TAG,"id = "+id);
+    private long getTableVersion(SQLiteDatabase db, String tableName) {
+        Cursor cursor = db.rawQuery("SELECT tableVersion FROM "+SYNC_TABLE+" WHERE tableName = ?",
+                new String[]{tableName});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
         }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Read the columnList of a table, for the SQL to create it and its indexes
+    //---------------------------------------------------------------------------------------------
+    private TableSchema readSchema(JsonReader reader, String tableName) throws IOException {
+        /*
+        [{"Field":"id","Type":"int(7)","Null":"NO","Key":"PRI","Default":null,"Extra":"auto_increment"},
+         {"Field":"question","Type":"varchar(1000)","Null":"NO","Key":"","Default":null,"Extra":""},
+         {"Field":"answer","Type":"varchar(1000)","Null":"NO","Key":"","Default":null,"Extra":""}],
         */
+        TableSchema schema = new TableSchema();
+        ArrayList<String> columnDefList = new ArrayList<String>();
+        ArrayList<String> primaryKeyList = new ArrayList<String>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String columnName = "";
+            String columnType = "";
+            String columnKey = "";
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("Field")) {
+                    columnName = readString(reader);
+                } else if (name.equals("Type")) {
+                    columnType = readString(reader);
+                } else if (name.equals("Key")) {
+                    columnKey = readString(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            // Map the MySQL type to the SQLite storage class
+            int type = SqlTypeMapper.getType(columnType);
+            schema.columnList.add(columnName);
+            schema.typeList.add(type);
+            columnDefList.add(columnName+" "+SqlTypeMapper.getSqlType(type));
+            if ("PRI".equals(columnKey)) {
+                primaryKeyList.add(columnName);
+            } else if ("UNI".equals(columnKey)) {
+                schema.indexSqlList.add("CREATE UNIQUE INDEX "+tableName+"_"+columnName+" ON "+tableName+" ("+columnName+")");
+            } else if ("MUL".equals(columnKey)) {
+                schema.indexSqlList.add("CREATE INDEX "+tableName+"_"+columnName+" ON "+tableName+" ("+columnName+")");
+            }
+        }
+        reader.endArray();
+
+        schema.keyColumn = SqlTypeMapper.getKeyColumn(tableName, primaryKeyList, DEFAULT_KEY_COLUMN);
+        StringBuilder sb = new StringBuilder("CREATE TABLE "+tableName+" (");
+        for (int i = 0; i < columnDefList.size(); i++) {
+            sb.append((i > 0) ? ", " : "").append(columnDefList.get(i));
+            // The primary key column (an INTEGER one is the rowid, with no separate index for the key)
+            if (!primaryKeyList.isEmpty() && schema.columnList.get(i).equals(schema.keyColumn)) {
+                sb.append(" PRIMARY KEY");
+            }
+        }
+        sb.append(")");
+        schema.createSql = sb.toString();
+        return schema;
     }
 
+    // Get the columns of a table already in the database (for a delta without a columnList)
+    private TableSchema getLocalSchema(SQLiteDatabase db, String tableName) throws IOException {
+        TableSchema schema = new TableSchema();
+        ArrayList<String> primaryKeyList = new ArrayList<String>();
+        Cursor cursor = db.rawQuery("PRAGMA table_info("+tableName+")", null);
+        try {
+            while (cursor.moveToNext()) {
+                // cid, name, type, notnull, dflt_value, pk
+                schema.columnList.add(cursor.getString(1));
+                schema.typeList.add(SqlTypeMapper.getType(cursor.getString(2)));
+                if (cursor.getInt(5) > 0) {
+                    primaryKeyList.add(cursor.getString(1));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        schema.keyColumn = SqlTypeMapper.getKeyColumn(tableName, primaryKeyList, DEFAULT_KEY_COLUMN);
+        return schema;
+    }
 
-    public String getResponseOLD(String command) {
-        SQLiteDatabase db = this.getReadableDatabase();
-        Log.d(TAG,"db version = "+db.getVersion());
+    // Drop and re-create a table that is loaded in full
+    private void createTable(SQLiteDatabase db, String tableName, TableSchema schema) throws IOException {
+        if (schema == null || schema.createSql == null) {
+            throw new IOException("columnList must come before valuesList for a full load of "+tableName);
+        }
+        Log.i(TAG, "DROP TABLE IF EXISTS "+tableName);
+        db.execSQL("DROP TABLE IF EXISTS "+tableName);
+        Log.d(TAG,"SQL = "+schema.createSql);
+        db.execSQL(schema.createSql);
+    }
 
-        // Define a projection that specifies which columns from the database
-        // you will actually use after this query.
-        String[] projection = {"id","verbalResponse"};
+    //---------------------------------------------------------------------------------------------
+    // Insert the rows as they are read, replacing any row with the same primary key.  The insert
+    // is compiled once for the table, and the values of each row are bound to it by the position
+    // of the column (values for columns the table doesn't have are skipped)
+    //---------------------------------------------------------------------------------------------
+    private int upsertRows(SQLiteDatabase db, String tableName, TableSchema schema, JsonReader reader,
+                           List<String> keyList) throws IOException {
+/*
+          "valuesList":
+            [{"id":"1","keywords":"who are you","verbalResponse":"I am the John Bot. Pleased to meet you."},
+             {"id":"2","keywords":"shut up","verbalResponse":"No, you shut up."}, ... ]
+*/
+        int columnCnt = schema.columnList.size();
+        if (columnCnt == 0) {
+            throw new IOException("No columns for table "+tableName);
+        }
+        HashMap<String, Integer> columnIndexMap = new HashMap<String, Integer>();
+        StringBuilder sb = new StringBuilder("INSERT OR REPLACE INTO "+tableName+" (");
+        for (int i = 0; i < columnCnt; i++) {
+            columnIndexMap.put(schema.columnList.get(i), i);
+            sb.append((i > 0) ? ", " : "").append(schema.columnList.get(i));
+        }
+        sb.append(") VALUES (");
+        for (int i = 0; i < columnCnt; i++) {
+            sb.append((i > 0) ? ", ?" : "?");
+        }
+        sb.append(")");
 
-        int id = 0;
-        int comType = 0;
-        String verbalResponse = "";
+        String[] rowValues = new String[columnCnt];
+        int keyPos = schema.columnList.indexOf(schema.keyColumn);
+        int rowCnt = 0;
+        SQLiteStatement insertStmt = db.compileStatement(sb.toString());
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Arrays.fill(rowValues, null);
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    Integer columnIndex = columnIndexMap.get(reader.nextName());
+                    if (columnIndex == null) {
+                        reader.skipValue();
+                    } else {
+                        rowValues[columnIndex] = readString(reader);
+                    }
+                }
+                reader.endObject();
 
-        // "owner=\'"+owner+"\'"
-//        String []selectionArgs = {name + "%"});
-//        SELECT * FROM table WHERE title LIKE '%' || ? || '%';
+                for (int i = 0; i < columnCnt; i++) {
+                    bindValue(insertStmt, i + 1, schema.typeList.get(i), rowValues[i]);
+                }
+                // A bad row (like a NOT NULL column with no value) is skipped, not the whole sync
+                try {
+                    insertStmt.executeInsert();
+                } catch (SQLiteConstraintException e) {
+                    Log.e(TAG,"Row rejected, table = "+tableName+", key = "+((keyPos >= 0) ? rowValues[keyPos] : "")+
+                            ", e = "+e.getMessage());
+                    rejectedRowCnt++;
+                    continue;
+                }
+                rowCnt++;
+                if (keyList != null && keyPos >= 0) {
+                    keyList.add(rowValues[keyPos]);
+                }
+            }
+            reader.endArray();
+        } finally {
+            insertStmt.close();
+        }
+        return rowCnt;
+    }
 
-        /*
+    // Delete the rows with the keys in the deleteList
+    private int deleteRows(SQLiteDatabase db, String tableName, String keyColumn, int keyType,
+                           JsonReader reader, List<String> keyList) throws IOException {
+        int rowCnt = 0;
+        SQLiteStatement deleteStmt = db.compileStatement("DELETE FROM "+tableName+" WHERE "+keyColumn+" = ?");
+        try {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                String key = readString(reader);
+                if (key != null) {
+                    bindValue(deleteStmt, 1, keyType, key);
+                    rowCnt += deleteStmt.executeUpdateDelete();
+                    keyList.add(key);
+                }
+            }
+            reader.endArray();
+        } finally {
+            deleteStmt.close();
+        }
+        return rowCnt;
+    }
 
-        %
-        _  (underscore single char)
+    // Return the search table entry for a content table (null if it isn't searched)
+    private static String[] getSearchTable(String tableName) {
+        for (String[] search : SEARCH_TABLE_LIST) {
+            if (search[0].equals(tableName)) {
+                return search;
+            }
+        }
+        return null;
+    }
 
-        mDb.query(true, DATABASE_NAMES_TABLE, new String[] { KEY_ROWID,
-                        KEY_NAME }, KEY_NAME + " LIKE ?",
-                new String[] {"%"+ filter+ "%" }, null, null, null,
-                null);
+    // Re-load all the rows of a search table from its content table
+    private void rebuildSearch(SQLiteDatabase db, String[] search) {
+        db.execSQL("DELETE FROM "+search[1]);
+        db.execSQL("INSERT INTO "+search[1]+" (docid, "+search[2]+") SELECT "+DEFAULT_KEY_COLUMN+", "+
+                search[2]+" FROM "+search[0]);
+    }
 
-if (name.length() != 0) {
+    // Update the search rows for the keys changed (upserted or deleted) by a delta
+    private void updateSearch(SQLiteDatabase db, String[] search, List<String> keyList) {
+        if (keyList.isEmpty()) {
+            return;
+        }
+        SQLiteStatement deleteStmt = db.compileStatement("DELETE FROM "+search[1]+" WHERE docid = ?");
+        SQLiteStatement insertStmt = db.compileStatement("INSERT INTO "+search[1]+" (docid, "+search[2]+
+                ") SELECT "+DEFAULT_KEY_COLUMN+", "+search[2]+" FROM "+search[0]+" WHERE "+DEFAULT_KEY_COLUMN+" = ?");
+        try {
+            for (String key : keyList) {
+                if (key == null) {
+                    continue;
+                }
+                bindValue(deleteStmt, 1, SqlTypeMapper.TYPE_INTEGER, key);
+                deleteStmt.executeUpdateDelete();
+                bindValue(insertStmt, 1, SqlTypeMapper.TYPE_INTEGER, key);
+                try {
+                    insertStmt.executeInsert();
+                } catch (SQLiteConstraintException e) {
+                    Log.e(TAG,"Search row rejected, table = "+search[1]+", key = "+key+", e = "+e.getMessage());
+                }
+            }
+        } finally {
+            deleteStmt.close();
+            insertStmt.close();
+        }
+    }
 
-        name = "%" + name + "%";
+    //---------------------------------------------------------------------------------------------
+    // Search a full-text table for what was said, and return the id of the best ranked row (or
+    // -1 if nothing scores at least the minimum).  With a minCoverage, rows are scored with
+    // SearchRanker.scoreRelevant (most of the terms must be in the row)
+    //---------------------------------------------------------------------------------------------
+    private long searchBest(SQLiteDatabase db, String searchTable, String text, double[] columnWeights,
+                            double minScore, double minCoverage) {
+        String matchQuery = SearchRanker.buildMatchQuery(text);
+        if (matchQuery.isEmpty()) {
+            return -1;
+        }
+        long bestId = -1;
+        double bestScore = minScore;
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery("SELECT docid, matchinfo("+searchTable+", '"+SearchRanker.MATCHINFO_FORMAT+"') FROM "+
+                    searchTable+" WHERE "+searchTable+" MATCH ?", new String[]{matchQuery});
+            while (cursor.moveToNext()) {
+                int[] matchinfo = SearchRanker.toInts(cursor.getBlob(1));
+                double score = (minCoverage > 0.0)
+                        ? SearchRanker.scoreRelevant(matchinfo, columnWeights, minCoverage)
+                        : SearchRanker.score(matchinfo, columnWeights);
+                if (score >= bestScore) {
+                    bestScore = score;
+                    bestId = cursor.getLong(0);
+                }
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG,"Error searching "+searchTable+", e = "+e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return bestId;
     }
-    if (email.length() != 0) {
-        email = "%" + email + "%";
+
+    //---------------------------------------------------------------------------------------------
+    // Return the best ranked verbal response for what was said (from the full-text search of the
+    // keywords and responses), or an empty string if nothing is close enough
+    //---------------------------------------------------------------------------------------------
+    private String findResponse(ContentSnapshot content, String utterance) {
+        long responseId = searchBest(content.getDb(), "responsesearch", utterance, RESPONSE_WEIGHTS,
+                MIN_RESPONSE_SCORE, MIN_RESPONSE_COVERAGE);
+        if (responseId < 0) {
+            return "";
+        }
+        return content.queryText("SELECT verbalResponse FROM verbalresponse WHERE id = ?", responseId, "");
     }
-    if (Phone.length() != 0) {
-        Phone = "%" + Phone + "%";
+
+    //---------------------------------------------------------------------------------------------
+    // Bind a value read from the JSON (as a string) with the storage class of its column, so
+    // numbers are stored as numbers (a value that isn't a number is stored as it is)
+    //---------------------------------------------------------------------------------------------
+    private static void bindValue(SQLiteStatement stmt, int index, int type, String value) {
+        if (value == null) {
+            stmt.bindNull(index);
+            return;
+        }
+        try {
+            if (type == SqlTypeMapper.TYPE_INTEGER) {
+                stmt.bindLong(index, Long.parseLong(value.trim()));
+                return;
+            } else if (type == SqlTypeMapper.TYPE_REAL) {
+                stmt.bindDouble(index, Double.parseDouble(value.trim()));
+                return;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to bind it as text
+        }
+        stmt.bindString(index, value);
     }
-    String selectQuery = " select * from tbl_Customer where Customer_Name like  '"
-            + name
-            + "' or Customer_Email like '"
-            + email
-            + "' or Customer_Phone like '"
-            + Phone
-            + "' ORDER BY Customer_Id DESC";
 
-    Cursor cursor = mDb.rawQuery(selectQuery, null);`
+    // Read a string, number, or boolean value as a string (null for a JSON null)
+    private static String readString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        } else if (token == JsonToken.BOOLEAN) {
+            return String.valueOf(reader.nextBoolean());
+        }
+        return reader.nextString();
+    }
 
 
+    //---------------------------------------------------------------------------------------------
+    // Queries for the bot (run on the DB executor - the result is returned in the Future, and
+    // passed to the callback on the main thread, if there is one)
+    //---------------------------------------------------------------------------------------------
+    // Response for a command (empty if none)
+    public Future<String> getResponse(final String command, QueryCallback<String> callback) {
+        return submit(new Callable<String>() {
+            public String call() {
+                return queryResponse(command);
+            }
+        }, callback);
+    }
 
-Cursor tableListContracttableList = resolver.query(
-    tableListContract.tableList.CONTENT_URI, projection,
-    tableListContract.tableList.DISPLAY_NAME + " like ?",
-    new String[]{"%" + filterStr + "%"},
-    tableListContract.tableList.DISPLAY_NAME + " ASC");
+    // Question of the next joke, or of the best joke about a topic
+    public Future<String> getJokeQuestion(final String topic, QueryCallback<String> callback) {
+        return submit(new Callable<String>() {
+            public String call() {
+                return queryJokeQuestion(topic);
+            }
+        }, callback);
+    }
 
-        */
+    // Answer of the joke being told (queries run in order, so this is for the last question)
+    public Future<String> getJokeAnswer(QueryCallback<String> callback) {
+        return submit(new Callable<String>() {
+            public String call() {
+                return queryJokeAnswer();
+            }
+        }, callback);
+    }
 
-        // Filter results WHERE "title" = 'My Title'
-        String selection = "commandType = 0 AND command = ?" ;
-        String[] selectionArgs = {command };
+    // All the phrases the bot can say from the database
+    public Future<List<String>> getSpeechTextList(QueryCallback<List<String>> callback) {
+        return submit(new Callable<List<String>>() {
+            public List<String> call() {
+                return querySpeechTextList();
+            }
+        }, callback);
+    }
 
-        Cursor cursor = db.query(
-                "response",                     // The table to query
-                projection,                               // The columns to return
-                selection,                                // The columns for the WHERE clause
-                selectionArgs,                            // The values for the WHERE clause
-                null,                                     // don't group the rows
-                null,                                     // don't filter by row groups
-                null                                 // The sort order
-        );
+    // Run a query on the DB executor, and pass the result to the callback on the main thread
+    // (not after the handler is closed)
+    private <T> Future<T> submit(final Callable<T> query, final QueryCallback<T> callback) {
+        try {
+            return dbExecutor.submit(new Callable<T>() {
+                public T call() throws Exception {
+                    final T result = query.call();
+                    if (callback != null) {
+                        mainHandler.post(new Runnable() {
+                            public void run() {
+                                if (!closed) {
+                                    callback.onResult(result);
+                                }
+                            }
+                        });
+                    }
+                    return result;
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.e(TAG,"Query after close, e = "+e.getMessage());
+            return null;
+        }
+    }
 
-        if(cursor!=null){
-            cursor.moveToFirst();
-            id = cursor.getInt(0);
-            verbalResponse = cursor.getString(1);
+    //---------------------------------------------------------------------------------------------
+    // Return the response for a command - the first keyword found, or else a keyword found with a
+    // few errors (misrecognized), or else the best ranked search result (empty if none)
+    //---------------------------------------------------------------------------------------------
+    private String queryResponse(String command) {
+        ContentStore.Lease<ContentSnapshot> lease = contentStore.acquire();
+        if (lease == null) {
+            return "";
         }
-        cursor.close();
+        try {
+            ContentSnapshot content = lease.get();
+            // Every search is on the normalized command (the cache key), so the commands that
+            // are the same key get the same response
+            String normalCommand = ResponseCache.normalize(command);
+            // A repeated command (the cache is dropped when a sync makes a new generation)
+            String response = responseCache.get(content.getGeneration(), normalCommand);
+            if (response != null) {
+                return response;
+            }
+
+            // Without the response store (a load that failed is tried again later) the keywords
+            // aren't searched, so the response isn't cached
+            boolean complete = true;
+            response = content.findKeywordResponse(normalCommand);
+            if (!content.hasStore()) {
+                complete = false;
+            }
+            if (response.isEmpty()) {
+                response = content.findFuzzyResponse(normalCommand, FUZZY_BUDGET_NS);
+                if (response == null) {
+                    // The budget ran out - with more time a keyword might be found
+                    complete = false;
+                    response = "";
+                }
+            }
+            if (response.isEmpty() && content.hasContent()) {
+                // No keyword in the command - use the best ranked search result (if any)
+                response = findResponse(content, normalCommand);
+            }
+            if (complete) {
+                responseCache.put(content.getGeneration(), normalCommand, response);
+            }
+            Log.d(TAG,"Response cache hits = "+responseCache.getHitCnt()+", no response hits = "+
+                    responseCache.getNegativeHitCnt()+", misses = "+responseCache.getMissCnt());
+            return response;
+        } finally {
+            lease.release();
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return all the phrases the bot can say from the database (joke questions and answers, and
+    // the verbal responses), to render to audio files ahead of time
+    //---------------------------------------------------------------------------------------------
+    private List<String> querySpeechTextList() {
+        ArrayList<String> textList = new ArrayList<String>();
+        ContentStore.Lease<ContentSnapshot> lease = contentStore.acquire();
+        if (lease == null || !lease.get().hasContent()) {
+            if (lease != null) {
+                lease.release();
+            }
+            return textList;
+        }
+        Cursor cursor = null;
+        try {
+            SQLiteDatabase db = lease.get().getDb();
+            cursor = db.rawQuery("SELECT question, answer FROM joke", null);
+            while (cursor.moveToNext()) {
+                textList.add(cursor.getString(0));
+                textList.add(cursor.getString(1));
+            }
+            cursor.close();
+            cursor = db.rawQuery("SELECT verbalResponse FROM verbalresponse", null);
+            while (cursor.moveToNext()) {
+                textList.add(cursor.getString(0));
+            }
+        } catch (SQLiteException e) {
+            Log.e(TAG,"Error reading the speech text, e = "+e.getMessage());
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+            lease.release();
+        }
+        return textList;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the question of the next joke in the deck, or of the best joke about a topic (if
+    // there is one - it doesn't change the deal)
+    //---------------------------------------------------------------------------------------------
+    private String queryJokeQuestion(String topic) {
+        String question = "I don't know any jokes";
+        ContentStore.Lease<ContentSnapshot> lease = contentStore.acquire();
+        if (lease == null) {
+            return question;
+        }
+        try {
+            ContentSnapshot content = lease.get();
+            JokeDeck deck = content.getJokeDeck();
+            if (deck.size() == 0) {
+                return question;
+            }
+            // Pick up the deal where it left off (before a restart), if it is the same jokes
+            if (deck != jokeDeck) {
+                boolean restored = deck.restore(prefs.getLong(PREF_JOKE_SIGNATURE, 0),
+                        prefs.getLong(PREF_JOKE_SEED, 0), prefs.getInt(PREF_JOKE_POSITION, 0));
+                Log.d(TAG,"Joke deck size = "+deck.size()+", restored = "+restored+", position = "+deck.getPosition());
+                jokeDeck = deck;
+            }
+
+            int index = JokeDeck.NO_JOKE;
+            if (topic != null && !topic.isEmpty()) {
+                long topicJokeId = searchBest(content.getDb(), "jokesearch", topic, JOKE_WEIGHTS, 0.0, 0.0);
+                index = (topicJokeId < 0) ? JokeDeck.NO_JOKE : deck.indexOf((int) topicJokeId);
+                Log.d(TAG,"Joke topic = "+topic+", id = "+topicJokeId);
+            }
+            if (index == JokeDeck.NO_JOKE) {
+                index = deck.next();
+                prefs.edit()
+                        .putLong(PREF_JOKE_SIGNATURE, deck.getSignature())
+                        .putLong(PREF_JOKE_SEED, deck.getSeed())
+                        .putInt(PREF_JOKE_POSITION, deck.getPosition())
+                        .apply();
+            }
+            // Keep the answer (the store of this content is released when it is swapped)
+            jokeAnswer = content.getJokeAnswer(index);
+            return content.getJokeQuestion(index);
+        } finally {
+            lease.release();
+        }
+    }
 
-        return verbalResponse;
+    // Return the answer of the joke being told
+    private String queryJokeAnswer() {
+        return (jokeAnswer != null) ? jokeAnswer : "Sorry";
     }
 
 
@@ -656,4 +1493,4 @@ cursor.close();
         AppSingleton.getInstance(context).getRequestQueue().getCache().clear();
     }
 
-} // public class DatabaseHandler extends SQLiteOpenHelper {
+} // public class DatabaseHandler {
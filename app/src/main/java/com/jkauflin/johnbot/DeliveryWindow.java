@@ -0,0 +1,253 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Keeps the binary frames sent to the Arduino robot until they
+ *              are acknowledged.  The robot advertises a window (the bytes
+ *              its serial receive buffer can hold), and frames are only sent
+ *              while the unacknowledged bytes fit in that window, so commands
+ *              are pipelined without overrunning the robot.
+ *              The robot only executes frames in sequence order, so when a
+ *              frame is lost (nak from the robot, or no ack before the
+ *              timeout) the frames from the lost one on are sent again.
+ *              A control frame (STOP) is not in the sequence - the robot
+ *              executes it right away, and skips to the sequence number in
+ *              it, so the frames not acked before it are dropped here (they
+ *              are obsolete).  It is kept until the robot acks it, and sent
+ *              again ahead of the other frames.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *                  Control frames for STOP, outside the sequence
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+
+
+public class DeliveryWindow {
+    // Window to use until the robot advertises one (less than its 64 byte serial buffer)
+    public static final int DEFAULT_WINDOW_BYTES = 32;
+    // Re-send the unacknowledged frames if the oldest one has not been acked after this time
+    public static final long RETRANSMIT_TIMEOUT_MS = 300;
+
+    private static class Sent {
+        final int seq;
+        final byte[] bytes;
+
+        Sent(int seq, byte[] bytes) {
+            this.seq = seq;
+            this.bytes = bytes;
+        }
+    }
+
+    private final ArrayDeque<Sent> unackedList = new ArrayDeque<Sent>();
+    private int nextSeq = 0;
+    private int windowBytes = DEFAULT_WINDOW_BYTES;
+    private int inFlightBytes = 0;
+    // Time of the last send (or ack) of the oldest unacked frame
+    private long timerStartNs = 0;
+    private boolean retransmitRequested = false;
+    // Control frame waiting for an ack (only the last one matters), and its sequence number
+    private byte[] unackedControl = null;
+    private int controlSeq = 0;
+
+    // Statistics
+    private long ackCnt = 0;
+    private long nakCnt = 0;
+    private long timeoutCnt = 0;
+    private long retransmitCnt = 0;
+    private long droppedCnt = 0;
+
+    //---------------------------------------------------------------------------------------------
+    // Start over with sequence 0 (when the handshake is sent to the robot)
+    //---------------------------------------------------------------------------------------------
+    public void reset(int windowBytes) {
+        unackedList.clear();
+        unackedControl = null;
+        nextSeq = 0;
+        inFlightBytes = 0;
+        retransmitRequested = false;
+        this.windowBytes = (windowBytes > 0) ? windowBytes : DEFAULT_WINDOW_BYTES;
+    }
+
+    // Return the sequence number for the next frame
+    public int getNextSeq() {
+        return nextSeq;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return true if a frame of this many bytes can be sent now, keeping reserveBytes of the
+    // window free (for a STOP, which is sent as a control frame without checking).  A frame is always allowed when nothing is in flight, so a frame
+    // bigger than the window can still be sent on its own
+    //---------------------------------------------------------------------------------------------
+    public boolean canSend(int len, int reserveBytes) {
+        return unackedList.isEmpty() || inFlightBytes + len <= windowBytes - reserveBytes;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Keep a copy of a frame just put in the batch (encoded with getNextSeq)
+    //---------------------------------------------------------------------------------------------
+    public void sent(byte[] buffer, int offset, int len, long nowNs) {
+        if (unackedList.isEmpty()) {
+            timerStartNs = nowNs;
+        }
+        unackedList.addLast(new Sent(nextSeq, Arrays.copyOfRange(buffer, offset, offset + len)));
+        inFlightBytes += len;
+        nextSeq = (nextSeq + 1) & 0xFF;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Keep a copy of a control frame just put in the batch (encoded with getNextSeq).  The robot
+    // goes on from that sequence number, so the unacked frames are dropped
+    //---------------------------------------------------------------------------------------------
+    public void controlSent(byte[] buffer, int offset, int len, long nowNs) {
+        droppedCnt += unackedList.size();
+        unackedList.clear();
+        inFlightBytes = 0;
+        retransmitRequested = false;
+        unackedControl = Arrays.copyOfRange(buffer, offset, offset + len);
+        controlSeq = nextSeq;
+        timerStartNs = nowNs;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // The robot received the control frame with seq (returns false if it is not the one waiting)
+    //---------------------------------------------------------------------------------------------
+    public boolean ackControl(int seq) {
+        if (unackedControl == null || seq != controlSeq) {
+            return false;
+        }
+        unackedControl = null;
+        return true;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // The robot received all the frames up to and including seq, and advertises its window
+    // Returns the number of frames acknowledged
+    //---------------------------------------------------------------------------------------------
+    public int ack(int seq, int windowBytes, long nowNs) {
+        // A frame after the control frame was acked, so the robot got the control frame too
+        if (unackedControl != null && isAtOrBefore(controlSeq, seq)) {
+            unackedControl = null;
+        }
+        int ackedCnt = 0;
+        while (!unackedList.isEmpty() && isAtOrBefore(unackedList.peekFirst().seq, seq)) {
+            inFlightBytes -= unackedList.removeFirst().bytes.length;
+            ackedCnt++;
+        }
+        if (windowBytes > 0) {
+            this.windowBytes = windowBytes;
+        }
+        if (ackedCnt > 0) {
+            ackCnt += ackedCnt;
+            timerStartNs = nowNs;
+        }
+        return ackedCnt;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // The robot is waiting for frame seq (it lost it, or got it with a bad CRC) - everything
+    // before it was received, and everything from it on must be sent again
+    //---------------------------------------------------------------------------------------------
+    public void nak(int seq, long nowNs) {
+        ack((seq - 1) & 0xFF, 0, nowNs);
+        if (!unackedList.isEmpty() || unackedControl != null) {
+            nakCnt++;
+            retransmitRequested = true;
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return true if the unacked frames should be sent again (nak, or the ack timed out)
+    //---------------------------------------------------------------------------------------------
+    public boolean isRetransmitDue(long nowNs) {
+        if (unackedList.isEmpty() && unackedControl == null) {
+            retransmitRequested = false;
+            return false;
+        }
+        if (!retransmitRequested && nowNs - timerStartNs >= RETRANSMIT_TIMEOUT_MS * 1000000) {
+            timeoutCnt++;
+            retransmitRequested = true;
+        }
+        return retransmitRequested;
+    }
+
+    // Return the milliseconds until the retransmit timeout (0 if nothing is waiting for an ack)
+    public long getMsToTimeout(long nowNs) {
+        if (unackedList.isEmpty() && unackedControl == null) {
+            return 0;
+        }
+        long ms = RETRANSMIT_TIMEOUT_MS - (nowNs - timerStartNs) / 1000000;
+        return Math.max(ms, 1);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Copy the unacked control frame and frames (in sequence order) into the buffer to send them
+    // again, and return the number of bytes (the buffer must hold getRetransmitBytes more bytes)
+    //---------------------------------------------------------------------------------------------
+    public int copyForRetransmit(byte[] buffer, int offset, long nowNs) {
+        int pos = offset;
+        if (unackedControl != null) {
+            System.arraycopy(unackedControl, 0, buffer, pos, unackedControl.length);
+            pos += unackedControl.length;
+            retransmitCnt++;
+        }
+        for (Sent sent : unackedList) {
+            System.arraycopy(sent.bytes, 0, buffer, pos, sent.bytes.length);
+            pos += sent.bytes.length;
+            retransmitCnt++;
+        }
+        retransmitRequested = false;
+        timerStartNs = nowNs;
+        return pos - offset;
+    }
+
+    public int getUnackedCnt() {
+        return unackedList.size();
+    }
+
+    public boolean isControlUnacked() {
+        return unackedControl != null;
+    }
+
+    public int getInFlightBytes() {
+        return inFlightBytes;
+    }
+
+    // Bytes copyForRetransmit puts in the buffer
+    public int getRetransmitBytes() {
+        return inFlightBytes + ((unackedControl != null) ? unackedControl.length : 0);
+    }
+
+    public int getWindowBytes() {
+        return windowBytes;
+    }
+
+    public long getAckCnt() {
+        return ackCnt;
+    }
+
+    public long getNakCnt() {
+        return nakCnt;
+    }
+
+    public long getTimeoutCnt() {
+        return timeoutCnt;
+    }
+
+    public long getRetransmitCnt() {
+        return retransmitCnt;
+    }
+
+    // Unacked frames dropped by a control frame
+    public long getDroppedCnt() {
+        return droppedCnt;
+    }
+
+    // Compare sequence numbers that wrap around at 256 (a is at or before b)
+    private static boolean isAtOrBefore(int a, int b) {
+        return ((b - a) & 0xFF) < 128;
+    }
+
+} // public class DeliveryWindow {
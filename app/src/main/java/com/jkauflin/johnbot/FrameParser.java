@@ -0,0 +1,111 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Ring buffer to receive bytes from the Arduino robot and
+ *              extract the semi-colon terminated message frames.  Bytes are
+ *              read from the stream in blocks, and a frame is only decoded
+ *              into a String once the terminator has been received.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version (to replace the byte at a time read and
+ *                  String concatenation in BluetoothServices.ConnectedThread)
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+
+public class FrameParser {
+    public static final byte FRAME_END = ';';
+
+    private final byte[] ring;
+    private final int mask;
+    // Scratch buffer to put a frame back together when it wraps around the end of the ring
+    private final byte[] frameBuffer;
+
+    // Counts of all bytes since the start (the ring index is the count masked by the size)
+    //   frameStart - first byte of the frame being received
+    //   scanPos    - next byte to check for the frame terminator
+    //   writePos   - next byte to be written from the stream
+    private long frameStart = 0;
+    private long scanPos = 0;
+    private long writePos = 0;
+    private int droppedCnt = 0;
+    // Skip the rest of a dropped frame (up to the next terminator)
+    private boolean skipFrame = false;
+
+    //---------------------------------------------------------------------------------------------
+    // Create the parser with a ring buffer size (rounded up to a power of 2)
+    //---------------------------------------------------------------------------------------------
+    public FrameParser(int size) {
+        int capacity = Integer.highestOneBit(Math.max(size, 16) - 1) << 1;
+        ring = new byte[capacity];
+        mask = capacity - 1;
+        frameBuffer = new byte[capacity];
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Read a block of bytes from the stream into the free space of the ring
+    // (returns the number of bytes read, or -1 at the end of the stream)
+    //---------------------------------------------------------------------------------------------
+    public int readFrom(InputStream in) throws IOException {
+        int free = ring.length - (int) (writePos - frameStart);
+        if (free == 0) {
+            // A frame longer than the whole buffer - drop it and start over at the next frame
+            droppedCnt++;
+            skipFrame = true;
+            frameStart = writePos;
+            scanPos = writePos;
+            free = ring.length;
+        }
+
+        // Read into the contiguous space up to the end of the ring
+        int offset = (int) (writePos & mask);
+        int len = Math.min(free, ring.length - offset);
+        int numBytes = in.read(ring, offset, len);
+        if (numBytes > 0) {
+            writePos += numBytes;
+        }
+        return numBytes;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the next complete frame (without the terminator), or null if there isn't one yet
+    //---------------------------------------------------------------------------------------------
+    public String nextFrame() {
+        while (scanPos < writePos) {
+            if (ring[(int) (scanPos & mask)] == FRAME_END) {
+                long start = frameStart;
+                scanPos++;
+                frameStart = scanPos;
+                if (skipFrame) {
+                    skipFrame = false;
+                } else {
+                    return decode(start, (int) (scanPos - 1 - start));
+                }
+            } else {
+                scanPos++;
+            }
+        }
+        return null;
+    }
+
+    // Return the number of frames dropped because they did not fit in the buffer
+    public int getDroppedCnt() {
+        return droppedCnt;
+    }
+
+    private String decode(long start, int len) {
+        int offset = (int) (start & mask);
+        if (offset + len <= ring.length) {
+            return new String(ring, offset, len, StandardCharsets.US_ASCII);
+        }
+        int firstLen = ring.length - offset;
+        System.arraycopy(ring, offset, frameBuffer, 0, firstLen);
+        System.arraycopy(ring, 0, frameBuffer, firstLen, len - firstLen);
+        return new String(frameBuffer, 0, len, StandardCharsets.US_ASCII);
+    }
+
+} // public class FrameParser {
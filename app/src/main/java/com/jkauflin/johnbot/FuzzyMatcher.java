@@ -0,0 +1,329 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Approximate keyword matcher, for commands where the speech
+ *              recognizer got a keyword a little wrong (like "wether" for
+ *              "weather").  The keywords that share enough bigrams with the
+ *              command are the candidates (from an index built once), and
+ *              each is checked with Myers' bit-parallel edit distance search
+ *              for the keyword within a few errors, starting and ending on
+ *              word boundaries of the command (not inside other words).
+ *              The number of candidates checked is capped, and the search
+ *              stops at a time budget, so the cost for a command stays about
+ *              the same however many keywords there are.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *                  Fewer errors allowed (1 up to 6 chars), matches anchored
+ *                  to words, and the full q-gram count for candidates
+ *                  Added isLastSearchComplete (a miss isn't sure when the
+ *                  budget ran out)
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+
+public class FuzzyMatcher {
+    public static final int NO_MATCH = -1;
+    // Longest keyword for the bit-parallel search (one bit per char in a long)
+    private static final int MAX_KEYWORD_LENGTH = 64;
+    // Shorter keywords are only matched exactly (too many near misses)
+    private static final int MIN_KEYWORD_LENGTH = 4;
+    // Most candidates checked for a command (the ones with the most shared bigrams)
+    private static final int MAX_CANDIDATES = 32;
+    // Bigrams in more keywords than this are too common to narrow the candidates
+    private static final int MAX_POSTINGS = 4096;
+
+    private final int keywordCnt;
+    // Bigram index - sorted bigram codes, and the keywords with each one (bigrams rather than
+    // trigrams, so a short keyword with an error still shares some with the command)
+    //   postings[postStart[t]] .. postings[postStart[t+1]-1] are the keywords of bigramCode[t]
+    private final int[] bigramCode;
+    private final int[] postStart;
+    private final int[] postings;
+    // For each keyword - length, errors allowed, distinct bigrams, and the char masks for the
+    // search (sorted distinct chars and the bits of the positions of each)
+    private final int[] keywordLength;
+    private final int[] maxErrors;
+    private final int[] bigramCnt;
+    private final char[][] patternChars;
+    private final long[][] patternMasks;
+
+    // Work arrays for a search (reused, so find is synchronized)
+    private final int[] sharedCnt;
+    private final int[] touched;
+    private int lastCandidateCnt = 0;
+    private boolean lastSearchComplete = true;
+
+    //---------------------------------------------------------------------------------------------
+    // Build the index for a list of keywords (the index of a keyword is what find returns, and
+    // the lowest index wins a tie, like the KeywordMatcher)
+    //---------------------------------------------------------------------------------------------
+    public FuzzyMatcher(String[] keywords) {
+        keywordCnt = keywords.length;
+        keywordLength = new int[keywordCnt];
+        maxErrors = new int[keywordCnt];
+        bigramCnt = new int[keywordCnt];
+        patternChars = new char[keywordCnt][];
+        patternMasks = new long[keywordCnt][];
+        sharedCnt = new int[keywordCnt];
+        touched = new int[keywordCnt];
+
+        Map<Integer, List<Integer>> postingMap = new HashMap<Integer, List<Integer>>();
+        for (int k = 0; k < keywordCnt; k++) {
+            String keyword = normalize(keywords[k]);
+            int length = keyword.length();
+            if (length < MIN_KEYWORD_LENGTH || length > MAX_KEYWORD_LENGTH) {
+                patternChars[k] = new char[0];
+                patternMasks[k] = new long[0];
+                continue;
+            }
+            keywordLength[k] = length;
+            maxErrors[k] = getMaxErrors(length);
+            int[] codeList = distinctBigrams(keyword);
+            bigramCnt[k] = codeList.length;
+            for (int code : codeList) {
+                List<Integer> keywordList = postingMap.get(code);
+                if (keywordList == null) {
+                    keywordList = new ArrayList<Integer>();
+                    postingMap.put(code, keywordList);
+                }
+                keywordList.add(k);
+            }
+            buildMasks(k, keyword);
+        }
+
+        // Flatten the index into sorted arrays
+        bigramCode = new int[postingMap.size()];
+        int t = 0;
+        for (Integer code : postingMap.keySet()) {
+            bigramCode[t++] = code;
+        }
+        Arrays.sort(bigramCode);
+        postStart = new int[bigramCode.length + 1];
+        int postingCnt = 0;
+        for (t = 0; t < bigramCode.length; t++) {
+            postStart[t] = postingCnt;
+            postingCnt += postingMap.get(bigramCode[t]).size();
+        }
+        postStart[bigramCode.length] = postingCnt;
+        postings = new int[postingCnt];
+        for (t = 0; t < bigramCode.length; t++) {
+            int p = postStart[t];
+            for (Integer k : postingMap.get(bigramCode[t])) {
+                postings[p++] = k;
+            }
+        }
+    } // public FuzzyMatcher(String[] keywords) {
+
+    public int getKeywordCnt() {
+        return keywordCnt;
+    }
+
+    // Number of candidates checked in the last search (never more than MAX_CANDIDATES)
+    public synchronized int getLastCandidateCnt() {
+        return lastCandidateCnt;
+    }
+
+    // False if the budget ran out in the last search before all the candidates were checked (so
+    // a keyword might have been found with more time)
+    public synchronized boolean isLastSearchComplete() {
+        return lastSearchComplete;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the index of the keyword found in the text with the fewest errors (the lowest index
+    // of those), or NO_MATCH.  Stops checking candidates when the budget (nanoseconds) runs out
+    //---------------------------------------------------------------------------------------------
+    public synchronized int find(String text, long budgetNanos) {
+        long deadline = System.nanoTime() + budgetNanos;
+        lastCandidateCnt = 0;
+        lastSearchComplete = true;
+        String normalText = normalize(text);
+        int[] textCodeList = distinctBigrams(normalText);
+
+        // Count the bigrams each keyword shares with the text
+        int touchedCnt = 0;
+        int skippedCnt = 0;
+        for (int code : textCodeList) {
+            int t = Arrays.binarySearch(bigramCode, code);
+            if (t < 0) {
+                continue;
+            }
+            if (postStart[t + 1] - postStart[t] > MAX_POSTINGS) {
+                skippedCnt++;
+                continue;
+            }
+            for (int p = postStart[t]; p < postStart[t + 1]; p++) {
+                int k = postings[p];
+                if (sharedCnt[k]++ == 0) {
+                    touched[touchedCnt++] = k;
+                }
+            }
+        }
+
+        // Candidates have at least the bigrams a match within the errors must share (the q-gram
+        // lemma - each error can change at most 2 bigrams).  If that leaves nothing to require,
+        // the filter can't tell, and the keyword isn't a candidate
+        int candidateCnt = 0;
+        long[] candidateList = new long[Math.min(touchedCnt, MAX_CANDIDATES)];
+        int lowest = 0;
+        for (int i = 0; i < touchedCnt; i++) {
+            int k = touched[i];
+            int need = bigramCnt[k] - 2 * maxErrors[k] - skippedCnt;
+            if (need > 0 && sharedCnt[k] >= need) {
+                // Keep the candidates with the most shared bigrams (then the lowest index)
+                long rank = ((long) sharedCnt[k] << 32) | (Integer.MAX_VALUE - k);
+                if (candidateCnt < candidateList.length) {
+                    if (candidateCnt == 0 || rank < candidateList[lowest]) {
+                        lowest = candidateCnt;
+                    }
+                    candidateList[candidateCnt++] = rank;
+                } else if (rank > candidateList[lowest]) {
+                    // Replace the lowest ranked, and find the new lowest
+                    candidateList[lowest] = rank;
+                    for (int c = 0; c < candidateCnt; c++) {
+                        if (candidateList[c] < candidateList[lowest]) {
+                            lowest = c;
+                        }
+                    }
+                }
+            }
+            sharedCnt[k] = 0;
+        }
+        Arrays.sort(candidateList, 0, candidateCnt);
+
+        // Check the candidates, best ranked first
+        int found = NO_MATCH;
+        int foundErrors = Integer.MAX_VALUE;
+        for (int c = candidateCnt - 1; c >= 0; c--) {
+            if (System.nanoTime() > deadline) {
+                lastSearchComplete = false;
+                break;
+            }
+            lastCandidateCnt++;
+            int k = Integer.MAX_VALUE - (int) candidateList[c];
+            int errors = search(k, normalText);
+            if (errors == Integer.MAX_VALUE) {
+                continue;
+            }
+            if (errors < foundErrors || (errors == foundErrors && k < found)) {
+                found = k;
+                foundErrors = errors;
+            }
+        }
+        return found;
+    } // public synchronized int find(String text, long budgetNanos) {
+
+    //---------------------------------------------------------------------------------------------
+    // Search for a keyword in the text from the start of each word.  Returns the fewest errors
+    // (edit distance) of a match, or MAX_VALUE if there isn't one within the errors allowed
+    //---------------------------------------------------------------------------------------------
+    private int search(int k, String text) {
+        int best = Integer.MAX_VALUE;
+        for (int start = 0; start < text.length(); start++) {
+            if (isWordChar(text.charAt(start)) && (start == 0 || !isWordChar(text.charAt(start - 1)))) {
+                best = Math.min(best, searchFrom(k, text, start));
+            }
+        }
+        return (best <= maxErrors[k]) ? best : Integer.MAX_VALUE;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Myers' bit-parallel edit distance of the keyword to the text from start, ending at the end
+    // of a word.  Returns the fewest errors of those, or MAX_VALUE if no word ends in reach
+    //---------------------------------------------------------------------------------------------
+    private int searchFrom(int k, String text, int start) {
+        int length = keywordLength[k];
+        long highBit = 1L << (length - 1);
+        long pv = -1L;
+        long mv = 0L;
+        int score = length;
+        int best = Integer.MAX_VALUE;
+        int end = Math.min(text.length(), start + length + maxErrors[k]);
+        for (int i = start; i < end; i++) {
+            long eq = getMask(k, text.charAt(i));
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & highBit) != 0) {
+                score++;
+            } else if ((mh & highBit) != 0) {
+                score--;
+            }
+            // The match starts at start (each text char skipped there is an error)
+            ph = (ph << 1) | 1L;
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+            if (score < best && (i + 1 == text.length() || !isWordChar(text.charAt(i + 1)))) {
+                best = score;
+            }
+        }
+        return best;
+    }
+
+    private long getMask(int k, char c) {
+        int index = Arrays.binarySearch(patternChars[k], c);
+        return (index >= 0) ? patternMasks[k][index] : 0L;
+    }
+
+    // Set the bits of the positions of each char in the keyword
+    private void buildMasks(int k, String keyword) {
+        char[] chars = keyword.toCharArray();
+        Arrays.sort(chars);
+        int distinctCnt = 0;
+        for (int i = 0; i < chars.length; i++) {
+            if (i == 0 || chars[i] != chars[i - 1]) {
+                chars[distinctCnt++] = chars[i];
+            }
+        }
+        patternChars[k] = Arrays.copyOf(chars, distinctCnt);
+        patternMasks[k] = new long[distinctCnt];
+        for (int i = 0; i < keyword.length(); i++) {
+            int index = Arrays.binarySearch(patternChars[k], keyword.charAt(i));
+            patternMasks[k][index] |= 1L << i;
+        }
+    }
+
+    // Errors allowed for a keyword length (one up to 6 chars, 2 up to 12, then 3)
+    private static int getMaxErrors(int length) {
+        if (length <= 6) {
+            return 1;
+        }
+        return (length <= 12) ? 2 : 3;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '\'';
+    }
+
+    // Return the distinct bigram codes of a string (2 chars packed in an int), sorted
+    private static int[] distinctBigrams(String text) {
+        int cnt = Math.max(0, text.length() - 1);
+        int[] codeList = new int[cnt];
+        for (int i = 0; i < cnt; i++) {
+            codeList[i] = (text.charAt(i) << 16) | text.charAt(i + 1);
+        }
+        Arrays.sort(codeList);
+        int distinctCnt = 0;
+        for (int i = 0; i < cnt; i++) {
+            if (i == 0 || codeList[i] != codeList[i - 1]) {
+                codeList[distinctCnt++] = codeList[i];
+            }
+        }
+        return Arrays.copyOf(codeList, distinctCnt);
+    }
+
+    private static String normalize(String text) {
+        return (text != null) ? text.toLowerCase(Locale.US).trim() : "";
+    }
+
+} // public class FuzzyMatcher {
@@ -0,0 +1,276 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Class to classify a spoken command into a bot intent (plus
+ *              modifiers like left/right or fast) and dispatch it to the
+ *              handler registered for that intent.  All the command phrases
+ *              are compiled into one keyword automaton, so a command is
+ *              classified with a single pass over the string.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version (to replace the if/else contains() chain
+ *                  in MainActivity.onResults)
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+
+
+public class IntentRouter {
+
+    // The intents the bot understands (RESPONSE if nothing else matches)
+    public enum BotIntent {
+        STOP, PLAY_MUSIC, DISCONNECT, CONNECT, SILENT_ON, SILENT_OFF, SLEEP, WAKE_UP, FUNNY,
+        USER_NAME, REPEAT_START, REPEAT, JOKE_ANSWER, LIGHTS_ON, LIGHTS_OFF, JOKE,
+        ARM, EYES, HEAD, MOVE, RESPONSE
+    }
+
+    // Modes that enable intents which depend on the conversation state
+    public static final int MODE_USER_IDENTIFICATION = 1;
+    public static final int MODE_REPEAT = 2;
+    public static final int MODE_JOKE = 4;
+
+    // Modifiers found in the command
+    public static final int MOD_LEFT = 1;
+    public static final int MOD_RIGHT = 1 << 1;
+    public static final int MOD_UP = 1 << 2;
+    public static final int MOD_DOWN = 1 << 3;
+    public static final int MOD_CENTER = 1 << 4;
+    public static final int MOD_FAST = 1 << 5;
+    public static final int MOD_BACKWARD = 1 << 6;
+    public static final int MOD_TURN = 1 << 7;
+    public static final int MOD_AROUND = 1 << 8;
+    public static final int MOD_WALK = 1 << 9;
+    public static final int MOD_FLASH = 1 << 10;
+    public static final int MOD_SPARTACUS = 1 << 11;
+
+    // Interface for the code that executes an intent
+    public interface IntentHandler {
+        void handle(String command, int modifiers);
+    }
+
+    // Result of classifying a command
+    public static class Result {
+        public final BotIntent intent;
+        public final int modifiers;
+
+        public Result(BotIntent intent, int modifiers) {
+            this.intent = intent;
+            this.modifiers = modifiers;
+        }
+
+        public boolean has(int modifier) {
+            return (modifiers & modifier) != 0;
+        }
+    }
+
+    // A rule is satisfied when all of its required phrases are contained in the command.
+    // Rules are checked in priority order (the order they were added)
+    private static class Rule {
+        final BotIntent intent;
+        final int priority;
+        final int[] required;
+
+        Rule(BotIntent intent, int priority, int[] required) {
+            this.intent = intent;
+            this.priority = priority;
+            this.required = required;
+        }
+    }
+
+    private final List<String> phraseList = new ArrayList<String>();
+    private final HashMap<String, Integer> phraseIdMap = new HashMap<String, Integer>();
+    private final List<List<Rule>> phraseRules = new ArrayList<List<Rule>>();
+    private final List<Integer> phraseModifiers = new ArrayList<Integer>();
+    private final List<BotIntent> priorityIntents = new ArrayList<BotIntent>();
+    private final HashMap<String, Integer> equalsRules = new HashMap<String, Integer>();
+    private final List<int[]> modeRules = new ArrayList<int[]>();
+    private final EnumMap<BotIntent, IntentHandler> handlerMap =
+            new EnumMap<BotIntent, IntentHandler>(BotIntent.class);
+
+    private KeywordMatcher phraseMatcher = null;
+
+    //---------------------------------------------------------------------------------------------
+    // Methods to add the rules.  Each call is one priority level, in the order they are called
+    //---------------------------------------------------------------------------------------------
+    // The command must be exactly equal to one of the phrases
+    public IntentRouter addEquals(BotIntent intent, String... phrases) {
+        int priority = nextPriority(intent);
+        for (String phrase : phrases) {
+            if (!equalsRules.containsKey(phrase)) {
+                equalsRules.put(phrase, priority);
+            }
+        }
+        return this;
+    }
+
+    // The command must contain any one of the phrases
+    public IntentRouter addContainsAny(BotIntent intent, String... phrases) {
+        int priority = nextPriority(intent);
+        for (String phrase : phrases) {
+            addRule(new Rule(intent, priority, new int[]{phraseId(phrase)}));
+        }
+        return this;
+    }
+
+    // The command must contain all of the phrases
+    public IntentRouter addContainsAll(BotIntent intent, String... phrases) {
+        int[] required = new int[phrases.length];
+        for (int i = 0; i < phrases.length; i++) {
+            required[i] = phraseId(phrases[i]);
+        }
+        addRule(new Rule(intent, nextPriority(intent), required));
+        return this;
+    }
+
+    // Any command when the mode is set
+    public IntentRouter addMode(BotIntent intent, int mode) {
+        modeRules.add(new int[]{nextPriority(intent), mode});
+        return this;
+    }
+
+    // Set a modifier flag when the command contains any of the phrases
+    public IntentRouter addModifier(int modifier, String... phrases) {
+        for (String phrase : phrases) {
+            int id = phraseId(phrase);
+            phraseModifiers.set(id, phraseModifiers.get(id) | modifier);
+        }
+        return this;
+    }
+
+    // Register the handler to execute for an intent
+    public IntentRouter register(BotIntent intent, IntentHandler handler) {
+        handlerMap.put(intent, handler);
+        return this;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Classify a command (using the current mode flags) into an intent and modifiers
+    //---------------------------------------------------------------------------------------------
+    public Result route(String command, int modes) {
+        if (phraseMatcher == null) {
+            phraseMatcher = new KeywordMatcher(phraseList.toArray(new String[phraseList.size()]));
+        }
+
+        int best = Integer.MAX_VALUE;
+        Integer equalsPriority = equalsRules.get(command);
+        if (equalsPriority != null) {
+            best = equalsPriority;
+        }
+        for (int[] modeRule : modeRules) {
+            if ((modes & modeRule[1]) != 0 && modeRule[0] < best) {
+                best = modeRule[0];
+            }
+        }
+
+        // One pass to find all the phrases, then only check the rules for phrases that were found
+        BitSet found = new BitSet(phraseList.size());
+        phraseMatcher.findAll(command, found);
+        int modifiers = 0;
+        for (int id = found.nextSetBit(0); id >= 0; id = found.nextSetBit(id + 1)) {
+            modifiers |= phraseModifiers.get(id);
+            for (Rule rule : phraseRules.get(id)) {
+                if (rule.priority < best && containsAll(found, rule.required)) {
+                    best = rule.priority;
+                }
+            }
+        }
+
+        BotIntent intent = (best == Integer.MAX_VALUE) ? BotIntent.RESPONSE : priorityIntents.get(best);
+        return new Result(intent, modifiers);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Classify a command and execute the registered handler (return false if no handler)
+    //---------------------------------------------------------------------------------------------
+    public boolean dispatch(String command, int modes) {
+        Result result = route(command, modes);
+        IntentHandler handler = handlerMap.get(result.intent);
+        if (handler == null) {
+            return false;
+        }
+        handler.handle(command, result.modifiers);
+        return true;
+    }
+
+    private int nextPriority(BotIntent intent) {
+        priorityIntents.add(intent);
+        return priorityIntents.size() - 1;
+    }
+
+    private void addRule(Rule rule) {
+        for (int id : rule.required) {
+            phraseRules.get(id).add(rule);
+        }
+    }
+
+    private int phraseId(String phrase) {
+        Integer id = phraseIdMap.get(phrase);
+        if (id == null) {
+            id = phraseList.size();
+            phraseList.add(phrase);
+            phraseIdMap.put(phrase, id);
+            phraseRules.add(new ArrayList<Rule>());
+            phraseModifiers.add(0);
+            // Re-compile the automaton on the next route
+            phraseMatcher = null;
+        }
+        return id;
+    }
+
+    private static boolean containsAll(BitSet found, int[] required) {
+        for (int id : required) {
+            if (!found.get(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Create a router with the built-in commands of the bot (highest priority first)
+    //---------------------------------------------------------------------------------------------
+    public static IntentRouter createDefault() {
+        IntentRouter router = new IntentRouter();
+        router.addEquals(BotIntent.STOP, "stop")
+                .addContainsAll(BotIntent.PLAY_MUSIC, "music", "play")
+                .addEquals(BotIntent.DISCONNECT, "disconnect")
+                .addEquals(BotIntent.CONNECT, "connect", "reconnect")
+                .addContainsAny(BotIntent.SILENT_ON, "be quiet", "silent mode on")
+                .addContainsAny(BotIntent.SILENT_OFF, "speak", "silent mode off")
+                .addContainsAny(BotIntent.SLEEP, "to sleep", "turn off")
+                .addEquals(BotIntent.WAKE_UP, "wake up")
+                .addContainsAny(BotIntent.WAKE_UP, "wakey", "hey john")
+                .addContainsAny(BotIntent.FUNNY, "that's funny", "that is funny")
+                .addMode(BotIntent.USER_NAME, MODE_USER_IDENTIFICATION)
+                .addContainsAny(BotIntent.REPEAT_START, "repeat")
+                .addMode(BotIntent.REPEAT, MODE_REPEAT)
+                .addMode(BotIntent.JOKE_ANSWER, MODE_JOKE)
+                .addContainsAny(BotIntent.LIGHTS_ON, "light on", "lights on")
+                .addContainsAny(BotIntent.LIGHTS_OFF, "light off", "lights off")
+                .addContainsAny(BotIntent.JOKE, "joke")
+                .addContainsAny(BotIntent.ARM, "arm")
+                .addContainsAny(BotIntent.EYES, "eyes")
+                .addContainsAny(BotIntent.HEAD, "head")
+                .addContainsAny(BotIntent.MOVE, "move", "walk", "run", "turn");
+
+        router.addModifier(MOD_LEFT, "left")
+                .addModifier(MOD_RIGHT, "right")
+                .addModifier(MOD_UP, "up")
+                .addModifier(MOD_DOWN, "down")
+                .addModifier(MOD_CENTER, "center")
+                .addModifier(MOD_FAST, "fast", "run")
+                .addModifier(MOD_BACKWARD, "backward")
+                .addModifier(MOD_TURN, "turn")
+                .addModifier(MOD_AROUND, "around")
+                .addModifier(MOD_WALK, "walk")
+                .addModifier(MOD_FLASH, "flash")
+                .addModifier(MOD_SPARTACUS, "spartacus");
+        return router;
+    }
+
+} // public class IntentRouter {
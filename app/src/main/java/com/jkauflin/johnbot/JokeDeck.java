@@ -0,0 +1,122 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Deck of all the jokes, as an array of the joke ids (the
+ *              questions and answers are in the ResponseStore, by the same
+ *              index), so telling a joke needs no database queries.  The
+ *              jokes are dealt in a shuffled order (an int[] of positions),
+ *              and the order comes from a seed, so the seed and position can
+ *              be saved and the deck picked up where it left off after a
+ *              restart (no jokes repeat until the whole deck is told).
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *                  Only the ids - the text is in the mapped ResponseStore
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+public class JokeDeck {
+    public static final int NO_JOKE = -1;
+
+    // Joke ids by index, in id order
+    private final int[] idList;
+    // Identifies the set of jokes (a saved position is only used for the same jokes)
+    private final long signature;
+
+    // Shuffled order of the positions, the seed it came from, and the next to deal
+    private final int[] order;
+    private long seed;
+    private int position = 0;
+
+    //---------------------------------------------------------------------------------------------
+    // Create a deck from the joke ids (in id order), shuffled with the seed
+    //---------------------------------------------------------------------------------------------
+    public JokeDeck(int[] idList, long seed) {
+        this.idList = idList;
+        signature = computeSignature(idList);
+        order = new int[idList.length];
+        shuffle(seed);
+    }
+
+    public int size() {
+        return idList.length;
+    }
+
+    public long getSignature() {
+        return signature;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Pick up a saved deck - the order from the seed, at the position (only if it is for the
+    // same jokes).  Returns false if it doesn't apply (the deck is left as it is)
+    //---------------------------------------------------------------------------------------------
+    public boolean restore(long savedSignature, long savedSeed, int savedPosition) {
+        if (savedSignature != signature || savedPosition < 0 || savedPosition > idList.length) {
+            return false;
+        }
+        shuffle(savedSeed);
+        position = savedPosition;
+        return true;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Deal the next joke, and return its index (NO_JOKE if the deck is empty).  After the last
+    // one, the deck is shuffled again (from the next seed) and dealt from the top
+    //---------------------------------------------------------------------------------------------
+    public int next() {
+        if (idList.length == 0) {
+            return NO_JOKE;
+        }
+        if (position >= order.length) {
+            shuffle(new Random(seed).nextLong());
+        }
+        return order[position++];
+    }
+
+    // Return the index of a joke id (NO_JOKE if it isn't in the deck)
+    public int indexOf(int id) {
+        int index = Arrays.binarySearch(idList, id);
+        return (index >= 0) ? index : NO_JOKE;
+    }
+
+    public int getId(int index) {
+        return idList[index];
+    }
+
+    // Shuffle the positions (Fisher-Yates) from the seed, and start at the top
+    private void shuffle(long newSeed) {
+        seed = newSeed;
+        position = 0;
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Random random = new Random(newSeed);
+        for (int i = order.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int temp = order[i];
+            order[i] = order[j];
+            order[j] = temp;
+        }
+    }
+
+    private static long computeSignature(int[] idList) {
+        long hash = idList.length;
+        for (int id : idList) {
+            hash = hash * 31 + id;
+        }
+        return hash;
+    }
+
+} // public class JokeDeck {
@@ -0,0 +1,236 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Multi-pattern keyword matcher (Aho-Corasick automaton) used to
+ *              find which keywords are contained in a spoken command with a
+ *              single pass over the command string
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version (to replace the full table scan and
+ *                  contains() check on every verbalresponse row)
+ *                  Added findAll to get every keyword found in a command
+ *                  Added writeTo (for the mapped ResponseStore)
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+public class KeywordMatcher {
+    public static final int NO_MATCH = -1;
+
+    // The automaton is flattened into arrays once it is built
+    //   edgeStart[state] .. edgeStart[state+1]-1 are the edges out of a state (sorted by char)
+    //   fail[state] is the longest proper suffix state
+    //   best[state] is the lowest keyword index that ends at this state (or any suffix of it)
+    //   own[state] is the lowest keyword index that ends at exactly this state
+    //   dictLink[state] is the nearest suffix state that has its own keyword (-1 if none)
+    private final int[] edgeStart;
+    private final char[] edgeChar;
+    private final int[] edgeTarget;
+    private final int[] fail;
+    private final int[] best;
+    private final int[] own;
+    private final int[] dictLink;
+    private final int keywordCnt;
+
+    //---------------------------------------------------------------------------------------------
+    // Build the automaton from a list of keywords.  The position of a keyword in the list is
+    // its priority - when more than one keyword is found in a command the one with the lowest
+    // index wins (same as the first row found in the old table scan)
+    //---------------------------------------------------------------------------------------------
+    public KeywordMatcher(String[] keywords) {
+        keywordCnt = keywords.length;
+
+        // Build the trie using sorted maps for the children
+        List<TreeMap<Character, Integer>> children = new ArrayList<TreeMap<Character, Integer>>();
+        List<Integer> ownBest = new ArrayList<Integer>();
+        children.add(new TreeMap<Character, Integer>());
+        ownBest.add(Integer.MAX_VALUE);
+
+        for (int k = 0; k < keywords.length; k++) {
+            String keyword = keywords[k];
+            if (keyword == null) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < keyword.length(); i++) {
+                Character c = keyword.charAt(i);
+                Integer next = children.get(state).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<Character, Integer>());
+                    ownBest.add(Integer.MAX_VALUE);
+                    children.get(state).put(c, next);
+                }
+                state = next;
+            }
+            if (k < ownBest.get(state)) {
+                ownBest.set(state, k);
+            }
+        }
+
+        // Flatten the trie into the edge arrays
+        int stateCnt = children.size();
+        edgeStart = new int[stateCnt + 1];
+        int edgeCnt = 0;
+        for (int s = 0; s < stateCnt; s++) {
+            edgeStart[s] = edgeCnt;
+            edgeCnt += children.get(s).size();
+        }
+        edgeStart[stateCnt] = edgeCnt;
+        edgeChar = new char[edgeCnt];
+        edgeTarget = new int[edgeCnt];
+        for (int s = 0; s < stateCnt; s++) {
+            int e = edgeStart[s];
+            for (Map.Entry<Character, Integer> entry : children.get(s).entrySet()) {
+                edgeChar[e] = entry.getKey();
+                edgeTarget[e] = entry.getValue();
+                e++;
+            }
+        }
+
+        // Breadth-first pass to set the failure links and carry the best keyword down them
+        fail = new int[stateCnt];
+        best = new int[stateCnt];
+        own = new int[stateCnt];
+        dictLink = new int[stateCnt];
+        for (int s = 0; s < stateCnt; s++) {
+            own[s] = ownBest.get(s);
+        }
+        best[0] = own[0];
+        dictLink[0] = -1;
+        int[] queue = new int[stateCnt];
+        int head = 0;
+        int tail = 0;
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            int child = edgeTarget[e];
+            fail[child] = 0;
+            best[child] = Math.min(own[child], best[0]);
+            dictLink[child] = (own[0] != Integer.MAX_VALUE) ? 0 : -1;
+            queue[tail++] = child;
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            for (int e = edgeStart[state]; e < edgeStart[state + 1]; e++) {
+                int child = edgeTarget[e];
+                int f = fail[state];
+                int target;
+                while ((target = transition(f, edgeChar[e])) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                if (target < 0) {
+                    target = 0;
+                }
+                fail[child] = target;
+                best[child] = Math.min(own[child], best[target]);
+                dictLink[child] = (own[target] != Integer.MAX_VALUE) ? target : dictLink[target];
+                queue[tail++] = child;
+            }
+        }
+    } // public KeywordMatcher(String[] keywords) {
+
+    // Return the number of keywords the automaton was built from
+    public int getKeywordCnt() {
+        return keywordCnt;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the index of the highest priority keyword contained in the text (or NO_MATCH)
+    //---------------------------------------------------------------------------------------------
+    public int find(String text) {
+        int state = 0;
+        int found = best[0];
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = transition(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = (next < 0) ? 0 : next;
+            if (best[state] < found) {
+                found = best[state];
+            }
+        }
+        return (found == Integer.MAX_VALUE) ? NO_MATCH : found;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Set the bit for every keyword contained in the text (lowest index if keywords are repeated)
+    //---------------------------------------------------------------------------------------------
+    public void findAll(String text, BitSet found) {
+        if (own[0] != Integer.MAX_VALUE) {
+            found.set(own[0]);
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = transition(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = (next < 0) ? 0 : next;
+            for (int s = state; s > 0; s = dictLink[s]) {
+                if (own[s] != Integer.MAX_VALUE) {
+                    found.set(own[s]);
+                }
+            }
+        }
+    }
+
+    public int getStateCnt() {
+        return fail.length;
+    }
+
+    public int getEdgeCnt() {
+        return edgeChar.length;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Write the automaton arrays (for the ResponseStore to search it in a mapped file) - the int
+    // arrays edgeStart, edgeTarget, fail, and best, then edgeChar, padded to a multiple of 4 bytes
+    //---------------------------------------------------------------------------------------------
+    public void writeTo(DataOutputStream out) throws IOException {
+        writeInts(out, edgeStart);
+        writeInts(out, edgeTarget);
+        writeInts(out, fail);
+        writeInts(out, best);
+        for (char c : edgeChar) {
+            out.writeChar(c);
+        }
+        if (edgeChar.length % 2 != 0) {
+            out.writeChar(0);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    // Binary search for the edge out of a state for a character (-1 if there isn't one)
+    private int transition(int state, char c) {
+        int lo = edgeStart[state];
+        int hi = edgeStart[state + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char midChar = edgeChar[mid];
+            if (midChar < c) {
+                lo = mid + 1;
+            } else if (midChar > c) {
+                hi = mid - 1;
+            } else {
+                return edgeTarget[mid];
+            }
+        }
+        return -1;
+    }
+
+} // public class KeywordMatcher {
@@ -68,6 +68,39 @@
  * 2017-07-27 JJK   Working on playing music on a bluetooth device
  * 2017-09-05 JJK   Final edits before moving away from Android/smartphone as
  *                  controller (moving to Raspberry Pi)
+ * 2026-10-16 AGENT Build the response keyword automaton after the data load
+ *                  Replaced the if/else contains() chain in onResults with
+ *                  the IntentRouter and a table of intent handlers
+ *                  Animate the speech with the SpeechAnimator (a frame for
+ *                  each word as it is spoken, from the TTS progress events)
+ *                  instead of sending all the motions at the start
+ *                  Play known phrases from audio files rendered in the
+ *                  background (SpeechRenderer, SpeechCache, SpeechPlayer),
+ *                  and prepare the joke answer while the question is spoken
+ *                  Keep one SpeechRecognizer warm and re-arm it for each turn
+ *                  (RecognizerManager) instead of destroy and create
+ *                  Replaced the 4 second healthCheck polling and the fixed
+ *                  hello delay with Watchdog deadlines armed by the
+ *                  recognizer, TTS, and Bluetooth events
+ *                  Request only the data changed since the last sync (per-table
+ *                  versions), and apply it in place with DatabaseHandler.applySync
+ *                  Stream the data into the database (ContentLoader) instead
+ *                  of parsing it all into a JSONObject with Volley
+ *                  Tell a joke about a topic if one is asked for
+ *                  Use the existing database right away if the data is not
+ *                  modified (conditional fetch in ContentLoader)
+ *                  Offline-first startup - answer from the last synced (or
+ *                  seed) database right away, with the sync behind it, and
+ *                  log the time to first response
+ *                  Indexes are built with each content snapshot, not here
+ *                  Database queries are asynchronous (answered in callbacks)
+ *                  Restart the listening after a query's reply is spoken
+ *                  (ReplyTracker), not when the handler returns
+ *                  Cancel the content loader when the activity is destroyed
+ *                  The dispatch and the restart when the speech is done are
+ *                  in the ReplyTracker
+ *                  STOP (and the proximity stop) ends the speech animation
+ *                  first, so no head, arm, or eyes frames follow it
  *============================================================================*/
 package com.jkauflin.johnbot;
 
@@ -104,13 +137,13 @@ import android.widget.Toast;
 // Volley library classes to handle HTTP interaction
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
-import com.android.volley.toolbox.JsonObjectRequest;
 import com.android.volley.toolbox.StringRequest;
-import org.json.JSONObject;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.Future;
 
 
 public class MainActivity extends Activity implements RecognitionListener,TextToSpeech.OnInitListener {
@@ -118,6 +151,7 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
     // Website from which to get configuration data
     //private static final String DATA_URL = "http://<web site>/getData.php";
     private static final String DATA_URL = "http://johnkauflin.com/getJohnBotDataProxy.php";
+    static final String PREFS_NAME = "JohnBot";
     // IFTTT web service request commands
     private static final String IFTTT_JJKWEMO_ON_URL = "https://maker.ifttt.com/trigger/<user key>";
     private static final String IFTTT_JJKWEMO_OFF_URL = "https://maker.ifttt.com/trigger/<user key>";
@@ -126,8 +160,9 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
     private static final float SPEECH_RATE_NORMAL = 1.0f;
     private static final float SPEECH_RATE_FAST = 1.1f;
     private static final int WAIT_CNT_MAX = 20;
-    private static final String HEAD_CENTER = ",20,85;";
-    private static final String ARM_CENTER = ",20,75;";
+    private static final String HELLO_MESSAGE = "Hello, I am the john bot.  What is your name?";
+    // Maximum size of the audio files for phrases rendered ahead of time
+    private static final long SPEECH_CACHE_MAX_BYTES = 20 * 1024 * 1024;
 
     private static final int LEFT_FOOT = 0;
     private static final int RIGHT_FOOT = 1;
@@ -162,25 +197,56 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
     public static AudioManager audioManager = null;
     public static int originalVolume = 0;
 
-    private static SpeechRecognizer speech = null;
+    // Keeps the SpeechRecognizer warm between turns
+    private static RecognizerManager recognizerManager = null;
     private static Intent recognizerIntent;
-    private static boolean isSpeechRecognizerAlive = false;
     private static boolean isPaused = false;
 
     private static final Handler helloStartHandler = new Handler();
-    private static final Handler healthCheckHandler = new Handler();
-    private static final int HEALTH_CHECK_INTERVAL_MS = 4000;  // Every 4 seconds
+    // Timer for the speech animation (when the TTS doesn't give word progress events)
+    private static final Handler animationHandler = new Handler();
+    private static final SpeechAnimator speechAnimator = new SpeechAnimator(new SpeechAnimator.FrameSender() {
+        public void send(String frames) {
+            sendCommand(frames);
+        }
+    });
+    private static int utteranceCnt = 0;
+    // Audio files of known phrases (rendered in the background, and played instead of the TTS)
+    private static SpeechCache speechCache = null;
+    private static SpeechRenderer speechRenderer = null;
+    private static SpeechPlayer speechPlayer = null;
+    // Watchdog deadlines (recovery only runs if a deadline passes without an event to re-arm
+    // or disarm it)
+    private static final int WATCH_RECOGNIZER = 0;
+    private static final int WATCH_TTS = 1;
+    private static final int WATCH_BLUETOOTH = 2;
+    private static final int WATCH_CNT = 3;
+    private static final int RECOGNIZER_READY_TIMEOUT_MS = 5000;   // restart to onReadyForSpeech
+    private static final int RECOGNIZER_TURN_TIMEOUT_MS = 15000;   // ready to results or error
+    private static final int ERROR_RESTART_MS = 500;               // wait after an error
+    private static final int REPLY_TIMEOUT_MS = 5000;              // query to its reply
+    private static final int TTS_MS_PER_WORD = 600;                // (plus the margin)
+    private static final int TTS_TIMEOUT_MARGIN_MS = 5000;
+    private static final int CONNECT_TIMEOUT_MS = 4000;            // hello waits for the connect
+    private static Watchdog watchdog = null;
+    // Watchdog recovery to restart the speech listening (on the main thread)
+    private static Runnable restartRecovery = null;
 
     private static TextToSpeech tts;
     private static BluetoothServices btServices = null;
     private DatabaseHandler db = null;
-    private static JsonObjectRequest jsonObjectReq = null;
-    private static int databaseVersion = 0;
+    // Background open and sync of the content (cancelled when the activity is destroyed)
+    private ContentLoader contentLoader = null;
+    // Time of the start (to measure the time until there is content to respond with)
+    private long startupMs = 0;
+    private boolean contentReady = false;
+    private IntentRouter router = null;
 
     private MediaPlayerService player;
     boolean serviceBound = false;
 
-    private static boolean textToSpeech = false;
+    // When to restart the listening after a command (when the reply is done)
+    private static ReplyTracker replyTracker = null;
     private static boolean repeatSpeech = false;
     private static boolean jokeStarted = false;
     private static boolean sleeping = false;
@@ -205,6 +271,7 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        startupMs = SystemClock.elapsedRealtime();
         Log.d(TAG,"onCreate - MainActivity");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
@@ -220,8 +287,32 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
         this.tvZ = (TextView) this.findViewById(R.id.textViewZ);
         */
 
+        // Cache of audio files for known phrases, and the player for them
+        speechCache = new SpeechCache(new File(getCacheDir(), "speech"), SPEECH_CACHE_MAX_BYTES);
+        speechPlayer = new SpeechPlayer(new SpeechPlayer.Listener() {
+            public void onStart(String utteranceId) {
+                startAnimationTimer(utteranceId, speechAnimator.onStart(utteranceId));
+            }
+            public void onDone(String utteranceId) {
+                speechAnimator.onDone(utteranceId);
+                watchdog.disarm(WATCH_TTS);
+                // Restart the speech listening (same as the TTS onDone)
+                replyTracker.speechDone();
+            }
+        });
+
+        // Watchdog for the recognizer, TTS, and Bluetooth deadlines
+        createWatchdog();
+        replyTracker = new ReplyTracker(new Runnable() {
+            public void run() {
+                restartListening();
+            }
+        });
+
         // Add listeners for the buttons
         addListenerOnButton();
+        // Create the command router and register the intent handlers
+        addIntentHandlers();
 
         // Creat an Intent to tell the SpeechRecognizer what to do
         recognizerIntent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
@@ -232,6 +323,8 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
         recognizerIntent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_PREFERENCE, "en-US");
         recognizerIntent.putExtra(RecognizerIntent.EXTRA_PREFER_OFFLINE,true);
         recognizerIntent.putExtra(RecognizerIntent.EXTRA_MAX_RESULTS, 1);
+        // Manager for the SpeechRecognizer (the listener methods are in this same class)
+        recognizerManager = new RecognizerManager(this, this, recognizerIntent);
 
         // Create sensor objects
         /*
@@ -287,15 +380,22 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
         Log.d(TAG, "...In onPause()...");
         isPaused = true;
         try {
-            if (speech != null) {
-                speech.destroy();
-                speech = null;
+            if (recognizerManager != null) {
+                recognizerManager.destroy();
             }
+            watchdog.disarmAll();
             if (tts != null) {
                 tts.stop();
                 tts.shutdown();
                 tts = null;
             }
+            if (speechRenderer != null) {
+                speechRenderer.shutdown();
+                speechRenderer = null;
+            }
+            if (speechPlayer != null) {
+                speechPlayer.release();
+            }
             if (btServices != null) {
                 btServices.close();
             }
@@ -313,19 +413,33 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
     @Override
     public void onDestroy() {
         super.onDestroy();
-        if (speech != null) {
-            speech.destroy();
-            speech = null;
+        if (recognizerManager != null) {
+            recognizerManager.destroy();
+            recognizerManager = null;
         }
+        watchdog.shutdown();
         if (tts != null) {
             tts.stop();
             tts.shutdown();
             tts = null;
         }
+        if (speechRenderer != null) {
+            speechRenderer.shutdown();
+            speechRenderer = null;
+        }
+        if (speechPlayer != null) {
+            speechPlayer.release();
+        }
         if (btServices != null) {
             btServices.close();
             btServices = null;
         }
+        // Stop the loader before closing the database, so a sync still running is not applied
+        // (the database files are used by the next activity's handler)
+        if (contentLoader != null) {
+            contentLoader.cancel();
+            contentLoader = null;
+        }
         if (db != null) {
             db.close();
             db = null;
@@ -345,75 +459,94 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
         Toast.makeText(getBaseContext(), title + " - " + message, Toast.LENGTH_LONG).show();
     }
 
-    // This runnable will schedule itself to run at 1 second intervals
-    // if mShouldRun is set true.
-    private final Runnable healthCheck = new Runnable() {
-        public void run() {
-            if (!isPaused) {
-                Log.d(TAG,"HEALTH CHECK - isSpeechRecognizerAlive = "+isSpeechRecognizerAlive);
-                if (!isSpeechRecognizerAlive) {
-                    runOnUiThread(new Runnable() {
-                        public void run() {
-                            // Restart the speech listening on the main thread
+    // Create the watchdog and the recovery for when a deadline passes
+    private void createWatchdog() {
+        if (watchdog != null) {
+            watchdog.shutdown();
+        }
+        watchdog = new Watchdog("watchdog", WATCH_CNT);
+        restartRecovery = new Runnable() {
+            public void run() {
+                runOnUiThread(new Runnable() {
+                    public void run() {
+                        if (!isPaused) {
+                            Log.d(TAG,"Watchdog deadline passed - restart listening");
                             restartListening();
                         }
-                    });
-                }
-
-                // Is there some other condition or timing I could check ???
+                    }
+                });
+            }
+        };
+    }
 
-            } // if (!isPaused) {
-            healthCheckHandler.postDelayed(healthCheck,HEALTH_CHECK_INTERVAL_MS);
+    // The robot did not connect in time - say HELLO anyway
+    private final Runnable connectRecovery = new Runnable() {
+        public void run() {
+            Log.d(TAG,"Watchdog deadline passed - not connected, say HELLO");
+            helloStartHandler.post(helloStart);
         }
     };
 
     public void loadData(String url){
-        String REQUEST_TAG = "com.jkauflin.johnbot.volleyJsonObjectRequest";
-
         // Create database objects for existing database
         Log.d(TAG,"Loading data (PRE-LOAD)");
-        db = new DatabaseHandler(getApplicationContext(),1,null);
-
-        jsonObjectReq = new JsonObjectRequest(url, null,
-                new Response.Listener<JSONObject>() {
-                    @Override
-                    public void onResponse(JSONObject jsonData) {
-                        if (jsonData == null) {
-                            errorLog("JsonObjectRequest", "Returned NULL");
-                        } else {
-                            try {
-                                // Instantiate the object to handle the database interaction
-                                String versionStr = jsonData.getString("version");
-                                if (versionStr == null || versionStr.isEmpty()) {
-                                    errorLog("Get database version","DB version is not set");
-                                } else {
-                                    tv.append("*** Loading data ***\n");
-                                    Log.d(TAG,"Loading data");
-                                    databaseVersion = Integer.parseInt(versionStr);
-                                    db = new DatabaseHandler(getApplicationContext(),databaseVersion,jsonData);
-                                    // Load the joke list array now
-                                    db.loadJokeIdList();
-                                }
-                            } catch (final Exception e) {
-                                errorLog("Json parsing error",e.getMessage());
-                            }
-                        }
-
-                    } // public void onResponse(JSONObject response) {
-                }, new Response.ErrorListener() {
-            @Override
-            public void onErrorResponse(VolleyError e) {
-                errorLog("Error in Volley HttpRequest for loadData",e.getMessage());
+        db = new DatabaseHandler(getApplicationContext());
+        contentReady = false;
+
+        // Answer from the existing database right away, and sync in the background - ask only
+        // for the rows changed since the last sync (or nothing if it's not modified), and stream
+        // them into the database
+        tv.append("*** Syncing data ***\n");
+        contentLoader = new ContentLoader(url, db, getSharedPreferences(PREFS_NAME, MODE_PRIVATE), new ContentLoader.Listener() {
+            public void onLocalReady(boolean hasContent) {
+                if (hasContent) {
+                    dataLoaded("local database");
+                } else {
+                    Log.d(TAG,"No local data, waiting for the sync");
+                }
+            }
+            public void onLoaded(int changeCnt) {
+                Log.d(TAG,"Data synced, version = "+db.getContentVersion()+", rows changed = "+changeCnt+
+                        ", ms = "+(SystemClock.elapsedRealtime()-startupMs));
+                if (changeCnt > 0 || !contentReady) {
+                    dataLoaded("network sync");
+                }
+            }
+            public void onNotModified() {
+                Log.d(TAG,"Data not modified, using the existing database");
+                if (!contentReady) {
+                    dataLoaded("network sync");
+                }
+            }
+            public void onError(String message) {
+                errorLog("Error loading data",message);
+                Log.d(TAG,"Data sync failed (no network?), answering from the local database = "+contentReady);
             }
         });
-        // Adding JsonObject request to request queue
-        AppSingleton.getInstance(this).addToRequestQueue(jsonObjectReq,REQUEST_TAG);
+        contentLoader.start();
+    }
+
+    // The content is ready to answer from (when the database is first opened, and after a sync
+    // changes it - the indexes are already built with each new content snapshot)
+    private void dataLoaded(String source) {
+        if (!contentReady) {
+            contentReady = true;
+            Log.i(TAG,"Time to first response ms = "+(SystemClock.elapsedRealtime()-startupMs)+", from = "+source);
+        }
+        // Render the jokes and responses to audio files in the background
+        renderSpeech();
     }
 
     // Restart the Text-To-Speech
     public void restartTTS() {
         //TextToSpeech(Context context, TextToSpeech.OnInitListener listener)
         tts = new TextToSpeech(this, this);
+        // Separate TTS to render the known phrases to audio files
+        if (speechRenderer != null) {
+            speechRenderer.shutdown();
+        }
+        speechRenderer = new SpeechRenderer(this, speechCache, SPEECH_RATE_FAST);
+        renderSpeech();
         //tts.setPitch(0.6);
         tts.setSpeechRate(SPEECH_RATE_FAST);
         // Listen for when it is done with an utterance
@@ -422,6 +555,8 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
             public void onStart(String utteranceId) {
                 // Speaking started.
                 //Log.d(TAG,"onStart, utteranceId = "+utteranceId);
+                // Start the animation with the audio (and the timer if there are no word events)
+                startAnimationTimer(utteranceId, speechAnimator.onStart(utteranceId));
 
                 // Should I check the audio level before speaking starts to make sure it's on???
                 // Make sure the audio is at a good volume for Text-To-Speech
@@ -438,20 +573,56 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
             public void onDone(String utteranceId) {
                 // Speaking stopped.
                 Log.d(TAG,"onDone, utteranceId = "+utteranceId);
+                speechAnimator.onDone(utteranceId);
+                watchdog.disarm(WATCH_TTS);
                 runOnUiThread(new Runnable() {
                     public void run() {
                         // Restart the speech listening on the main thread
-                        restartListening();
+                        replyTracker.speechDone();
                     }
                 });
             }
             @Override
             public void onError(String utteranceId) {
                 Log.i(TAG,"Error in TTS");
+                speechAnimator.onDone(utteranceId);
+                // No onDone after an error - restart the listening after a short deadline
+                watchdog.arm(WATCH_TTS, ERROR_RESTART_MS, restartRecovery);
+            }
+            @Override
+            public void onStop(String utteranceId, boolean interrupted) {
+                speechAnimator.onDone(utteranceId);
+            }
+            // Called as each word is about to be spoken (only on API 26 and above, so there is
+            // no @Override when compiling for API 23)
+            public void onRangeStart(String utteranceId, int start, int end, int frame) {
+                speechAnimator.onRange(utteranceId, start);
             }
         });
     } // public void restartTTS() {
 
+    // Queue the phrases the bot knows (the greeting and the database) to render to audio files
+    private void renderSpeech() {
+        if (speechRenderer == null) {
+            return;
+        }
+        List<String> textList = new ArrayList<String>();
+        textList.add(HELLO_MESSAGE);
+        if (db == null) {
+            speechRenderer.render(textList);
+            return;
+        }
+        final List<String> renderList = textList;
+        db.getSpeechTextList(new DatabaseHandler.QueryCallback<List<String>>() {
+            public void onResult(List<String> speechTextList) {
+                renderList.addAll(speechTextList);
+                if (speechRenderer != null) {
+                    speechRenderer.render(renderList);
+                }
+            }
+        });
+    }
+
     //==============================================================================================
     // Method to check the TTS initialization - and start other initializations
     // (wait to do other initializations until the TTS is good)
@@ -504,8 +675,13 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
                 }
             }
 
-            // Run the HELLO logic after a short delay (to give initialization a chance to finish, and make sure it is connected)
-            helloStartHandler.postDelayed(helloStart,HEALTH_CHECK_INTERVAL_MS);
+            // Run the HELLO logic as soon as the robot is connected (or when the connect deadline
+            // passes), instead of after a fixed delay
+            if (btServices != null && btServices.getState() != BluetoothServices.STATE_CONNECTED) {
+                watchdog.arm(WATCH_BLUETOOTH, CONNECT_TIMEOUT_MS, connectRecovery);
+            } else {
+                helloStartHandler.post(helloStart);
+            }
 
             // *** Other initializations ***
             /*
@@ -553,12 +729,8 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
             // Speak hello message and go into user identification mode
             Log.i(TAG,"Saying HELLO");
             // Count on the restart listening at the end of the HELLO utterance
-            speak("Hello, I am the john bot.  What is your name?");
+            speak(HELLO_MESSAGE);
             userIdentification = true;
-
-            // Start the health check handler
-            //healthCheckHandler.postDelayed(healthCheck,HEALTH_CHECK_INTERVAL_MS);
-            healthCheckHandler.postDelayed(healthCheck,3000);
         }
     };
 
@@ -570,7 +742,7 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
     @Override
     public void onBeginningOfSpeech() {
         Log.d(TAG, "onBeginningOfSpeech");
-        isSpeechRecognizerAlive = true;
+        watchdog.arm(WATCH_RECOGNIZER, RECOGNIZER_TURN_TIMEOUT_MS, restartRecovery);
     }
     @Override
     public void onBufferReceived(byte[] buffer) {
@@ -591,6 +763,8 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
     @Override
     public void onReadyForSpeech(Bundle arg0) {
         Log.d(TAG, "onReadyForSpeech");
+        // Listening - restart if the turn never ends with results or an error
+        watchdog.arm(WATCH_RECOGNIZER, RECOGNIZER_TURN_TIMEOUT_MS, restartRecovery);
     }
     @Override
     public void onRmsChanged(float rmsdB) {
@@ -648,26 +822,24 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
         // 2017-02-19 - Found out in some cases the error is valid (No Match if it can't understand
         //              the command), so let's just tell the handler to restart on its cycle
         //              *** I think this might be a key to good stability ***
-        isSpeechRecognizerAlive = false;
+        // Restart after a short deadline (not right away, the NO MATCH errors come too quickly)
+        watchdog.arm(WATCH_RECOGNIZER, ERROR_RESTART_MS, restartRecovery);
     }
 
     public void restartListening() {
         Log.d(TAG,"***** restartListening *****");
-        if (speech != null) {
-            speech.destroy();
+        if (recognizerManager == null) {
+            return;
         }
-        // Instantiate the SpeechRecognizer and set a listener in this same class to
-        // handle all the notification methods
-        speech = SpeechRecognizer.createSpeechRecognizer(this);
-        speech.setRecognitionListener(this);
 
         // Mute the beeps when the speech recognizer starts
         audioManager.adjustStreamVolume(AudioManager.STREAM_MUSIC,AudioManager.ADJUST_MUTE,0);
         //audioManager.setStreamVolume(AudioManager.STREAM_MUSIC,0,0);
 
-        speech.startListening(recognizerIntent);
-        // Reset the flag until you know it's really alive (onBeginningOfSpeech)
-        isSpeechRecognizerAlive = false;
+        // Re-arm the warm recognizer (it is only created again after a failure)
+        recognizerManager.startListening();
+        // Restart again if it doesn't get ready (onReadyForSpeech)
+        watchdog.arm(WATCH_RECOGNIZER, RECOGNIZER_READY_TIMEOUT_MS, restartRecovery);
     }
 
     public void playMedia(Uri file) {
@@ -691,211 +863,275 @@ public class MainActivity extends Activity implements RecognitionListener,TextTo
             command = matches.get(0).toLowerCase();
         }
 
-        // Boolean to track if text-to-speech is being used (to delay restart of speech listener)
-        textToSpeech = false;
+        // The turn is over (the handler speaks, or the listening is restarted below)
+        watchdog.disarm(WATCH_RECOGNIZER);
 
         Log.i(TAG,"Command: "+command);
         tv.append("Command: "+command+"\n");
 
 
-        // get from the command string
-        // to identification of a known command
-        // match parts of the command string with defined commands
-        //
-
-        String response;
+        // Classify the command and execute the handler registered for the intent
+        int modes = 0;
+        if (userIdentification) {
+            modes |= IntentRouter.MODE_USER_IDENTIFICATION;
+        }
+        if (repeatSpeech) {
+            modes |= IntentRouter.MODE_REPEAT;
+        }
+        if (jokeStarted) {
+            modes |= IntentRouter.MODE_JOKE;
+        }
+        // Track if text-to-speech is being used, or a reply is coming from a query.  If NOT
+        // executing any text to speech (or waiting for a reply to speak), the listener is
+        // restarted right after the dispatch, else when the utterance is done (so the mute to
+        // avoid beeps doesn't mute the utterance, and the recognizer doesn't hear it)
+        replyTracker.dispatch(router, command, modes);
+    } // public void onResults(Bundle results) {
 
-        if (command.equals("stop")) {
-            sendCommand("S;");
-            repeatSpeech = false;
-            jokeStarted = false;
-            userIdentification = false;
 
-        } else if (command.contains("music") && command.contains("play")) {
-            Log.d(TAG, "playing music");
-            //playAudio("https://upload.wikimedia.org/wikipedia/commons/6/6c/Grieg_Lyric_Pieces_Kobold.ogg");
-            playMedia(Uri.parse("https://upload.wikimedia.org/wikipedia/commons/6/6c/Grieg_Lyric_Pieces_Kobold.ogg"));
+    //=============================================================================================
+    // Register the handlers to execute for the intents classified by the router
+    //=============================================================================================
+    public void addIntentHandlers() {
+        router = IntentRouter.createDefault();
 
-        } else if (command.equals("disconnect")) {
-            if (btServices != null) {
-                btServices.close();
+        router.register(IntentRouter.BotIntent.STOP, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                stopSpeechAnimation();
+                sendCommand("S;");
+                repeatSpeech = false;
+                jokeStarted = false;
+                userIdentification = false;
             }
-            speak("I am now disconnected.");
-        } else if (command.equals("connect") || command.equals("reconnect")) {
-            if (btServices != null) {
-                Log.d(TAG, "reconnect Bluetooth");
-                // Only if the state is STATE_NONE, do we know that we haven't started already
-                if (btServices.getState() != BluetoothServices.STATE_CONNECTED) {
-                    // Start the Bluetooth chat services
-                    btServices.connect();
-                    tv.append("*** Connecting ***\n");
-                    speak("I am connecting.");
+        });
+        router.register(IntentRouter.BotIntent.PLAY_MUSIC, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                Log.d(TAG, "playing music");
+                //playAudio("https://upload.wikimedia.org/wikipedia/commons/6/6c/Grieg_Lyric_Pieces_Kobold.ogg");
+                playMedia(Uri.parse("https://upload.wikimedia.org/wikipedia/commons/6/6c/Grieg_Lyric_Pieces_Kobold.ogg"));
+            }
+        });
+        router.register(IntentRouter.BotIntent.DISCONNECT, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                if (btServices != null) {
+                    btServices.close();
                 }
-            } else {
-                speak("I cannot connect at this time.");
+                speak("I am now disconnected.");
             }
-
-        } else if (command.contains("be quiet") || command.contains("silent mode on")) {
-            silent = true;
-        } else if (command.contains("speak") || command.contains("silent mode off")) {
-            silent = false;
-            speak("Thank you. I appreciate the ability to communicate.");
-
-        } else if (command.contains("to sleep") ||command.contains("turn off")) {
-            speak("Goodbye.");
-            sleeping = true;
-            silent = true;
-        } else if (command.equals("wake up") || command.contains("wakey") || command.contains("hey john")) {
-            speak("Yes.");
-            sleeping = false;
-            silent = false;
-        } else if (command.contains("that's funny") ||command.contains("that is funny")) {
-            speak("I know.");
-
-        } else if (userIdentification) {
-            userName = command;
-            speak("Hello "+command+". It is nice to meet you.");
-            userIdentification = false;
-
-        } else if (command.contains("repeat")) {
-            speak("okay go");
-            repeatSpeech = true;
-
-        } else if (repeatSpeech) {
-            speak(command);
-
-        } else if (jokeStarted) {
-            if (db != null) {
-                speak(db.getJokeAnswer());
+        });
+        router.register(IntentRouter.BotIntent.CONNECT, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                if (btServices != null) {
+                    Log.d(TAG, "reconnect Bluetooth");
+                    // Only if the state is STATE_NONE, do we know that we haven't started already
+                    if (btServices.getState() != BluetoothServices.STATE_CONNECTED) {
+                        // Start the Bluetooth chat services
+                        btServices.connect();
+                        tv.append("*** Connecting ***\n");
+                        speak("I am connecting.");
+                    }
+                } else {
+                    speak("I cannot connect at this time.");
+                }
             }
-            jokeStarted = false;
-
-        } else if (command.contains("light on") || command.contains("lights on")) {
-            volleyStringRequest(IFTTT_JJKWEMO_ON_URL);
-            speak("Let there be light.");
-        } else if (command.contains("light off") || command.contains("lights off")) {
-            volleyStringRequest(IFTTT_JJKWEMO_OFF_URL);
-            speak("Plunging into darkness.");
-        } else if (command.contains("joke")) {
-            jokeStarted = true;
-            if (db != null) {
-                speak(db.getJokeQuestion());
+        });
+        router.register(IntentRouter.BotIntent.SILENT_ON, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                silent = true;
             }
-        } else if (command.contains("arm")) {
-
-            if (command.contains("down")) {
-                sendCommand("A,40;");
-            } else if (command.contains("up")) {
-                sendCommand("A,120;");
-            } else if (command.contains("center")) {
-                sendCommand("A,75;");
+        });
+        router.register(IntentRouter.BotIntent.SILENT_OFF, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                silent = false;
+                speak("Thank you. I appreciate the ability to communicate.");
             }
-
-        } else if (command.contains("eyes")) {
-
-            if (command.contains("flash")) {
-                sendCommand("E,500,40,500,40,500;");
-            } else if (command.contains("spartacus")) {
-                sendCommand("E,1100,100,1100,100,600,40,400,40,900;");
+        });
+        router.register(IntentRouter.BotIntent.SLEEP, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                speak("Goodbye.");
+                sleeping = true;
+                silent = true;
             }
-
-        } else if (command.contains("head")) {
-
-            if (command.contains("left")) {
-                sendCommand("H,20;");
-            } else if (command.contains("right")) {
-                sendCommand("H,140;");
-            } else if (command.contains("center")) {
-                sendCommand("H,78;");
+        });
+        router.register(IntentRouter.BotIntent.WAKE_UP, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                speak("Yes.");
+                sleeping = false;
+                silent = false;
             }
-
-        } else if (command.contains("move") || command.contains("walk") || command.contains("run") || command.contains("turn")) {
-
+        });
+        router.register(IntentRouter.BotIntent.FUNNY, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                speak("I know.");
+            }
+        });
+        router.register(IntentRouter.BotIntent.USER_NAME, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                userName = command;
+                speak("Hello "+command+". It is nice to meet you.");
+                userIdentification = false;
+            }
+        });
+        router.register(IntentRouter.BotIntent.REPEAT_START, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                speak("okay go");
+                repeatSpeech = true;
+            }
+        });
+        router.register(IntentRouter.BotIntent.REPEAT, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                speak(command);
+            }
+        });
+        router.register(IntentRouter.BotIntent.JOKE_ANSWER, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                if (db != null) {
+                    expectReply(db.getJokeAnswer(new DatabaseHandler.QueryCallback<String>() {
+                        public void onResult(String answer) {
+                            speakReply(answer);
+                        }
+                    }));
+                }
+                jokeStarted = false;
+            }
+        });
+        router.register(IntentRouter.BotIntent.LIGHTS_ON, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                volleyStringRequest(IFTTT_JJKWEMO_ON_URL);
+                speak("Let there be light.");
+            }
+        });
+        router.register(IntentRouter.BotIntent.LIGHTS_OFF, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                volleyStringRequest(IFTTT_JJKWEMO_OFF_URL);
+                speak("Plunging into darkness.");
+            }
+        });
+        router.register(IntentRouter.BotIntent.JOKE, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                jokeStarted = true;
+                if (db != null) {
+                    // Like "tell me a joke about cats"
+                    expectReply(db.getJokeQuestion(SearchRanker.getTopic(command), new DatabaseHandler.QueryCallback<String>() {
+                        public void onResult(String question) {
+                            speakReply(question);
+                        }
+                    }));
+                    db.getJokeAnswer(new DatabaseHandler.QueryCallback<String>() {
+                        public void onResult(String answer) {
+                            prefetchSpeech(answer);
+                        }
+                    });
+                }
+            }
+        });
+        router.register(IntentRouter.BotIntent.ARM, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                if ((modifiers & IntentRouter.MOD_DOWN) != 0) {
+                    sendCommand("A,40;");
+                } else if ((modifiers & IntentRouter.MOD_UP) != 0) {
+                    sendCommand("A,120;");
+                } else if ((modifiers & IntentRouter.MOD_CENTER) != 0) {
+                    sendCommand("A,75;");
+                }
+            }
+        });
+        router.register(IntentRouter.BotIntent.EYES, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                if ((modifiers & IntentRouter.MOD_FLASH) != 0) {
+                    sendCommand("E,500,40,500,40,500;");
+                } else if ((modifiers & IntentRouter.MOD_SPARTACUS) != 0) {
+                    sendCommand("E,1100,100,1100,100,600,40,400,40,900;");
+                }
+            }
+        });
+        router.register(IntentRouter.BotIntent.HEAD, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                if ((modifiers & IntentRouter.MOD_LEFT) != 0) {
+                    sendCommand("H,20;");
+                } else if ((modifiers & IntentRouter.MOD_RIGHT) != 0) {
+                    sendCommand("H,140;");
+                } else if ((modifiers & IntentRouter.MOD_CENTER) != 0) {
+                    sendCommand("H,78;");
+                }
+            }
+        });
+        router.register(IntentRouter.BotIntent.MOVE, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
 // 4 parmeters for feet command
 // 1 - foot (0 - Left, 1 - Right, 2 - Both)
 // 2 - direction (0 - Backward, 1 - Forward, 2 - Left turn, 3 - Right turn)
 // 3 - speed (0 - stopped to 255 - full speed)
 // 4 - duration milliseconds (optional at end)
 
-            foot = BOTH_FEET;
-            feetDirection = FORWARD;
-            feetSpeed = FEET_SPEED_NORMAL;
-            feetDuration = 3000;
+                foot = BOTH_FEET;
+                feetDirection = FORWARD;
+                feetSpeed = FEET_SPEED_NORMAL;
+                feetDuration = 3000;
 
-            if (command.contains("walk") && command.contains("around")) {
-                String tempCommand = "F";
-                for (int i = 0; i < 5; i++) {
-                    tempCommand += WALK_FORWARD+TURN_AROUND;
-                }
-                tempCommand += ";";
-                sendCommand(tempCommand);
-            } else {
-                if (command.contains("fast") || command.contains("run")) {
-                    feetSpeed = FEET_SPEED_FAST;
-                }
-                if (command.contains("backward")) {
-                    feetDirection = BACKWARD;
-                }
-                if (command.contains("turn")) {
-                    feetDirection = RIGHT_TURN;
-                    if (command.contains("left")) {
-                        feetDirection = LEFT_TURN;
+                if ((modifiers & IntentRouter.MOD_WALK) != 0 && (modifiers & IntentRouter.MOD_AROUND) != 0) {
+                    String tempCommand = "F";
+                    for (int i = 0; i < 5; i++) {
+                        tempCommand += WALK_FORWARD+TURN_AROUND;
                     }
-                    feetSpeed = FEET_SPEED_SLOW;
-                    feetDuration = 1000;
-                    if (command.contains("around")) {
-                        feetDuration = 2000;
+                    tempCommand += ";";
+                    sendCommand(tempCommand);
+                } else {
+                    if ((modifiers & IntentRouter.MOD_FAST) != 0) {
+                        feetSpeed = FEET_SPEED_FAST;
+                    }
+                    if ((modifiers & IntentRouter.MOD_BACKWARD) != 0) {
+                        feetDirection = BACKWARD;
+                    }
+                    if ((modifiers & IntentRouter.MOD_TURN) != 0) {
+                        feetDirection = RIGHT_TURN;
+                        if ((modifiers & IntentRouter.MOD_LEFT) != 0) {
+                            feetDirection = LEFT_TURN;
+                        }
+                        feetSpeed = FEET_SPEED_SLOW;
+                        feetDuration = 1000;
+                        if ((modifiers & IntentRouter.MOD_AROUND) != 0) {
+                            feetDuration = 2000;
+                        }
                     }
-                }
 
-                sendCommand("F,"+foot+","+feetDirection+","+feetSpeed+","+feetDuration+";");
+                    sendCommand("F,"+foot+","+feetDirection+","+feetSpeed+","+feetDuration+";");
+                }
+                // Rotation turns - 1 second at 50 speed is a perfect 90 degrees
             }
-
-                            /*
-                                sendCommand("F"+
-                            ",2,1,50,2000"+
-                            ",2,0,0,2000"+
-                            ",1,1,50,2000,1,0,0,1000"+
-                            ",0,1,50,2000,0,0,0,1000"+
-                            ",1,0,50,2000,1,0,0,1000"+
-                            ",0,0,50,2000,0,0,0,1000;");
-                 */
-            // Rotation turns - 1 second at 50 speed is a perfect 90 degrees
-
-        } else {
-            if (db != null) {
-                response = db.getResponse(command);
-                // null
-            /*
-07-08 20:58:34.587 27526-27526/com.jkauflin.johnbot I/johnbot: Command: i
-07-08 20:58:34.588 27526-27526/com.jkauflin.johnbot D/AndroidRuntime: Shutting down VM
-07-08 20:58:34.596 27526-27526/com.jkauflin.johnbot E/AndroidRuntime: FATAL EXCEPTION: main
-                                                                      Process: com.jkauflin.johnbot, PID: 27526
-java.lang.NullPointerException: Attempt to invoke virtual method 'java.lang.String
-com.jkauflin.johnbot.DatabaseHandler.getResponse(java.lang.String)' on a null object reference
-                                               at com.jkauflin.johnbot.MainActivity.onResults(MainActivity.java:798)
-
-
-            07-05 23:12:55.959 22365-22365/? E/AndroidRuntime: FATAL EXCEPTION: main
-                                                   Process: com.jkauflin.johnbot, PID: 22365
-                                                   java.lang.NullPointerException: Attempt to invoke virtual method 'java.lang.String com.jkauflin.johnbot.DatabaseHandler.getResponse(java.lang.String)' on a null object reference
-                                                       at com.jkauflin.johnbot.MainActivity.onResults(MainActivity.java:719)
-
-             */
-                if (response.isEmpty()) {
-                    response = "I don't understand that.";
+        });
+        router.register(IntentRouter.BotIntent.RESPONSE, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                if (db != null) {
+                    expectReply(db.getResponse(command, new DatabaseHandler.QueryCallback<String>() {
+                        public void onResult(String response) {
+                            if (response.isEmpty()) {
+                                response = "I don't understand that.";
+                            }
+                            speakReply(response);
+                        }
+                    }));
                 }
-                speak(response);
             }
+        });
+    } // public void addIntentHandlers() {
+
+    // A handler is getting its reply from a query - hold the listening restart until the reply is
+    // spoken (the deadline restarts it if the callback never comes)
+    private void expectReply(Future<?> query) {
+        if (query == null) {
+            // Not queued (the database is closed) - nothing will reply
+            return;
         }
+        replyTracker.expectReply();
+        watchdog.arm(WATCH_TTS, REPLY_TIMEOUT_MS, restartRecovery);
+    }
 
-        // If NOT executing any text to speech, restart the listener immediately
-        // else wait until the utterance is done (so the mute to avoid beeps doesn't mute the utterance)
-        if (!textToSpeech) {
-            restartListening();
-        }
-    } // public void onResults(Bundle results) {
-
+    // Speak the reply from a query (the listening is restarted here if nothing is said)
+    private static void speakReply(String reply) {
+        speak(reply);
+        replyTracker.replyDone();
+    }
 
     public void addListenerOnButton() {
         eyesButton = (Button) findViewById(R.id.eyesButton);
@@ -921,6 +1157,7 @@ com.jkauflin.johnbot.DatabaseHandler.getResponse(java.lang.String)' on a null ob
             @Override
             public void onClick(View arg0) {
                 Log.d(TAG, "...Click STOP...");
+                stopSpeechAnimation();
                 sendCommand("S;");
             }
         });
@@ -930,66 +1167,11 @@ com.jkauflin.johnbot.DatabaseHandler.getResponse(java.lang.String)' on a null ob
     // Method to execute and animated speech (text-to-speech and robotic motions)
     //=============================================================================================
     private static void speak(String messageToSpeak) {
-        String eyesStr = "";
-        String headStr = "";
-        String armStr = "";
-        int cnt = 0;
-        boolean up = true;
         String[] wordList = messageToSpeak.split(" ");
 
-        int maxMoveCnt = wordList.length-1;
-        if (maxMoveCnt < 2) {
-            maxMoveCnt = 2;
-        } else if (maxMoveCnt > 4) {
-            maxMoveCnt = 4;
-        }
-
-        int maxEyesCnt = wordList.length;
-        if (maxEyesCnt < 2) {
-            maxEyesCnt = 2;
-        } else if (maxEyesCnt > 9) {
-            maxEyesCnt = 9;
-        }
-
-        for (String word: wordList) {
-            cnt++;
-            //Log.i(TAG,""+word);
-            if (cnt < maxEyesCnt) {
-                if (cnt == 1) {
-                    eyesStr = "E";
-                    headStr = "H";
-                    armStr = "A";
-                } else {
-                    eyesStr += ",40";
-                }
-                eyesStr += ",260";
-            }
-
-            // Don't do a movement entry for the final word
-            // (because servos are slower than LED's
-            if (cnt < maxMoveCnt) {
-                if (cnt > 1) {
-                    headStr += ",20";
-                    armStr += ",20";
-                }
-                if (up) {
-                    headStr += ",110";
-                    armStr += ",100";
-                } else {
-                    headStr += ",50";
-                    armStr += ",50";
-                }
-                up = !up;
-            }
-        }
-        eyesStr += ";";
-        headStr += HEAD_CENTER;
-        armStr += ARM_CENTER;
-
         Log.i(TAG,messageToSpeak+", word cnt = "+wordList.length);
-        //Log.i(TAG,"Message = "+eyesStr+headStr+armStr);
         if (!silent) {
-            textToSpeech = true;
+            replyTracker.speaking();
             audioManager.adjustStreamVolume(AudioManager.STREAM_MUSIC,AudioManager.ADJUST_UNMUTE,AudioManager.FLAG_VIBRATE);
 
             //audioManager.adjustStreamVolume(AudioManager.STREAM_MUSIC,AudioManager.ADJUST_UNMUTE,0);
@@ -1001,7 +1183,20 @@ com.jkauflin.johnbot.DatabaseHandler.getResponse(java.lang.String)' on a null ob
             //audioManager.setStreamVolume(AudioManager.STREAM_MUSIC,audioManager.getStreamMaxVolume(AudioManager.STREAM_MUSIC)-3,0);
 
             if (tts != null) {
-                tts.speak(messageToSpeak, TextToSpeech.QUEUE_FLUSH, null, "UtteranceId");
+                // The eyes, head, and arm are animated word by word as it is spoken
+                String utteranceId = "UtteranceId"+(++utteranceCnt);
+                speechAnimator.prepare(utteranceId, messageToSpeak, SPEECH_RATE_FAST);
+
+                // Play the audio file if the phrase was rendered ahead of time, else speak it live
+                File audioFile = (speechRenderer != null) ? speechRenderer.getCached(messageToSpeak) : null;
+                if (audioFile != null && speechPlayer.play(audioFile, utteranceId)) {
+                    tts.stop();
+                } else {
+                    speechPlayer.stop();
+                    tts.speak(messageToSpeak, TextToSpeech.QUEUE_FLUSH, null, utteranceId);
+                }
+                // Restart the listening if the end of the utterance is never reported
+                watchdog.arm(WATCH_TTS, wordList.length * TTS_MS_PER_WORD + TTS_TIMEOUT_MARGIN_MS, restartRecovery);
             }
             /*
 07-07 18:30:35.855 28409-28409/com.jkauflin.johnbot E/AndroidRuntime: FATAL EXCEPTION: main
@@ -1009,7 +1204,6 @@ com.jkauflin.johnbot.DatabaseHandler.getResponse(java.lang.String)' on a null ob
         java.lang.NullPointerException: Attempt to invoke virtual method 'int android.speech.tts.TextToSpeech.speak(java.lang.CharSequence, int, android.os.Bundle, java.lang.String)' on a null object reference
         at com.jkauflin.johnbot.MainActivity.speak(MainActivity.java:837)
              */
-            sendCommand(eyesStr+headStr+armStr);
         /*
         sendCommand("E,600,100,600,40,400,40,900,1000,600,40,400,40,600,40,600;");
         audioManager.adjustStreamVolume(AudioManager.STREAM_MUSIC,AudioManager.ADJUST_UNMUTE,0);
@@ -1020,6 +1214,38 @@ com.jkauflin.johnbot.DatabaseHandler.getResponse(java.lang.String)' on a null ob
         }
     } // private void speak(String messageToSpeak) {
 
+    // Get a phrase ready to say next (prepare the player if it is rendered, else render it now)
+    private static void prefetchSpeech(String messageToSpeak) {
+        if (speechRenderer == null || silent) {
+            return;
+        }
+        File audioFile = speechRenderer.getCached(messageToSpeak);
+        if (audioFile != null) {
+            speechPlayer.prepareNext(audioFile);
+        } else {
+            speechRenderer.prefetch(messageToSpeak);
+        }
+    }
+
+    // End the animation of the current utterance (before a STOP, so no frames follow it)
+    private static void stopSpeechAnimation() {
+        speechAnimator.stop();
+        animationHandler.removeCallbacksAndMessages(null);
+    }
+
+    // Animate the next word after the estimated time of the current one (until the animator
+    // returns -1 - the utterance is done, or the TTS is giving word progress events)
+    private static void startAnimationTimer(final String utteranceId, long delayMs) {
+        if (delayMs < 0) {
+            return;
+        }
+        animationHandler.postDelayed(new Runnable() {
+            public void run() {
+                startAnimationTimer(utteranceId, speechAnimator.onTimer(utteranceId));
+            }
+        }, delayMs);
+    }
+
 
     //==============================================================================================
     // Send a command message to the arduino robot controller (through the bluetooth services)
@@ -1073,6 +1299,13 @@ com.jkauflin.johnbot.DatabaseHandler.getResponse(java.lang.String)' on a null ob
     private final Handler mHandler = new Handler() {
         @Override
         public void handleMessage(Message msg) {
+            if (msg.what == BluetoothServices.MESSAGE_STATE_CHANGE) {
+                // Connected before the connect deadline - say HELLO now
+                if (msg.arg1 == BluetoothServices.STATE_CONNECTED && watchdog.disarm(WATCH_BLUETOOTH)) {
+                    helloStart.run();
+                }
+                return;
+            }
             String msgStr = (String)msg.obj;
             //Log.d(TAG,"InMessage = "+msgStr);
             //tv.append(msgStr+"\n");
@@ -1081,6 +1314,7 @@ com.jkauflin.johnbot.DatabaseHandler.getResponse(java.lang.String)' on a null ob
                 tv.append(msgStr+"\n");
 
                 speak("Hey, I'm walking here!");
+                stopSpeechAnimation();
                 sendCommand("S;");
             }
 
@@ -0,0 +1,466 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Bounded queue of command frames to send to the Arduino robot.
+ *              Callers add frames without blocking, and the Bluetooth writer
+ *              thread takes all the frames pending at the same time as one
+ *              batch of bytes (in a buffer it re-uses) for a single socket
+ *              write.
+ *              Also keeps the queue depth and write latency statistics.
+ *              STOP frames go in a priority lane that is sent ahead of
+ *              everything else, and discard the pending motion frames.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version (to move the socket write off the UI thread)
+ *                  Added the priority lane for STOP
+ *                  Encode the frames with the BinaryProtocol once the robot
+ *                  has answered the version handshake
+ *                  Binary frames are sent only while they fit in the window
+ *                  advertised by the robot, and sent again if not acked
+ *                  (DeliveryWindow)
+ *                  Frames for an actuator are all sent in order (only a STOP
+ *                  discards pending frames)
+ *                  In binary mode a STOP is sent as a control frame, which the
+ *                  robot executes even if an earlier frame was lost
+ *                  Each writer thread has its own batch buffer (Batch)
+ *                  The latency statistics of a batch are kept in its Batch
+ *                  (writeDone(batch)), not in the queue
+ *                  In binary mode a frame that can't be encoded is dropped
+ *                  (not sent as ASCII outside the window), and a STOP that
+ *                  can't be is sent as a plain S control frame
+ *                  Batches of at most 64 bytes (was 512), counted as encoded,
+ *                  to bound the time a STOP waits for the write in progress
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.util.ArrayDeque;
+
+
+public class OutboundQueue {
+    //---------------------------------------------------------------------------------------------
+    // Maximum bytes to put in one write (a single frame bigger than this is still sent whole).
+    // A STOP waits for at most the one write in progress, so this bounds its latency: the robot
+    // reads the link at 38400 baud (Serial3, about 3840 bytes a second), so 64 bytes take about
+    // 17 ms (67 ms at 9600 baud).  At 512 bytes it was 133 ms (533 ms at 9600 baud)
+    //---------------------------------------------------------------------------------------------
+    static final int MAX_BATCH_BYTES = 64;
+
+    // Command letters for the robot actuators (anything else is treated as STOP by the robot)
+    private static final String ACTUATORS = "EHAF";
+    // Control commands go ahead of motion frames, but don't discard them like STOP
+    private static final String CONTROLS = "V";
+    // Bytes of the robot's window kept free for a STOP (motion frames can't use them)
+    private static final int STOP_RESERVE_BYTES = 8;
+    // Sent for a STOP frame that can't be encoded (the robot stops on any unknown command)
+    private static final String STOP_FRAME = "S;";
+
+    // How a frame was put in the batch (appendFrame)
+    private static final int FRAME_ASCII = 0;
+    private static final int FRAME_BINARY = 1;
+    private static final int FRAME_REJECTED = 2;
+
+    private static class Pending {
+        final String frame;
+        final long enqueueNs;
+        final boolean stop;
+
+        Pending(String frame, long enqueueNs, boolean stop) {
+            this.frame = frame;
+            this.enqueueNs = enqueueNs;
+            this.stop = stop;
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Bytes of the last batch taken by a writer thread, and what is in it for the statistics.
+    // Each writer has its own (re-used for every write, and grown if a frame is bigger), so the
+    // writer of a new connection never fills a buffer, or resets the statistics of a batch, the
+    // writer of the old one is still writing
+    //---------------------------------------------------------------------------------------------
+    public static class Batch {
+        private byte[] buffer = new byte[MAX_BATCH_BYTES];
+        private int length = 0;
+        // New frames in the batch (0 if it is frames sent again), when the oldest was queued,
+        // and when the first STOP was queued (if there is one)
+        private int frameCnt = 0;
+        private long oldestNs = 0;
+        private boolean hasStop = false;
+        private long stopNs = 0;
+
+        public byte[] getBuffer() {
+            return buffer;
+        }
+
+        public int getLength() {
+            return length;
+        }
+    }
+
+    private final int capacity;
+    private final ArrayDeque<Pending> pendingList;
+    private final ArrayDeque<Pending> priorityList = new ArrayDeque<Pending>();
+
+    // Batch being filled (the writer's, only while takeBatch has the lock)
+    private Batch filling = null;
+    // Send the frames with the binary framing (else the ASCII command strings)
+    private boolean binaryMode = false;
+    // Binary frames waiting for an ack from the robot
+    private final DeliveryWindow deliveryWindow = new DeliveryWindow();
+
+    // Statistics
+    private int droppedCnt = 0;
+    private long writeCnt = 0;
+    private long frameCnt = 0;
+    private long lastLatencyNs = 0;
+    private long maxLatencyNs = 0;
+    private long totalLatencyNs = 0;
+    private long stopCnt = 0;
+    private long lastStopLatencyNs = 0;
+    private long maxStopLatencyNs = 0;
+    private int supersededCnt = 0;
+
+    public OutboundQueue(int capacity) {
+        this.capacity = capacity;
+        pendingList = new ArrayDeque<Pending>(capacity);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Add the frames of a command message to send (never blocks - returns false if the queue
+    // is full and a frame was dropped).  A message can have more than one frame (E...;H...;A...;)
+    //---------------------------------------------------------------------------------------------
+    public synchronized boolean offer(String message) {
+        boolean added = true;
+        long nowNs = System.nanoTime();
+        int start = 0;
+        while (start < message.length()) {
+            int end = message.indexOf(FrameParser.FRAME_END, start);
+            end = (end < 0) ? message.length() : end + 1;
+            if (!offerFrame(message.substring(start, end), nowNs)) {
+                added = false;
+            }
+            start = end;
+        }
+        notifyAll();
+        return added;
+    }
+
+    private boolean offerFrame(String frame, long nowNs) {
+        char actuator = frame.charAt(0);
+        if (paramCnt(frame) > BinaryProtocol.MAX_PARAMS) {
+            // More parameters than the robot can hold
+            droppedCnt++;
+            return false;
+        }
+        if (CONTROLS.indexOf(actuator) >= 0) {
+            priorityList.addLast(new Pending(frame, nowNs, false));
+            return true;
+        }
+        if (ACTUATORS.indexOf(actuator) < 0) {
+            // STOP - all the pending motion frames are obsolete, so discard them and send the
+            // STOP ahead of everything else
+            supersededCnt += pendingList.size();
+            pendingList.clear();
+            priorityList.addLast(new Pending(frame, nowNs, true));
+            return true;
+        }
+
+        if (pendingList.size() >= capacity) {
+            droppedCnt++;
+            return false;
+        }
+        pendingList.addLast(new Pending(frame, nowNs, false));
+        return true;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Wait for frames, then put all the pending frames into the batch buffer (up to the max size)
+    // STOP frames are always first.  In binary mode the frames must also fit in the robot's
+    // window (except a STOP control frame, which has the reserve), and unacked frames are sent
+    // again when they are due.  Returns the number of bytes in the batch (call by the one writer
+    // thread only, with its own batch)
+    //---------------------------------------------------------------------------------------------
+    public synchronized int takeBatch(Batch batch) throws InterruptedException {
+        try {
+            while (true) {
+                // The writer's batch (taken again after a wait, which gives up the lock)
+                filling = batch;
+                int len = fillBatch();
+                if (len > 0) {
+                    return len;
+                }
+
+                // Wait for a frame, or an ack to open the window (or until the ack timeout)
+                wait(binaryMode ? deliveryWindow.getMsToTimeout(System.nanoTime()) : 0);
+            }
+        } finally {
+            filling = null;
+        }
+    }
+
+    // Put the pending frames (or the frames due to be sent again) in the batch buffer, and
+    // return the number of bytes (0 if there is nothing to send yet)
+    private int fillBatch() {
+        long nowNs = System.nanoTime();
+        filling.length = 0;
+        filling.frameCnt = 0;
+        filling.oldestNs = Long.MAX_VALUE;
+        filling.hasStop = false;
+
+        // Send the unacked frames again (in order, ahead of any new frames) - unless a STOP is
+        // waiting, which makes them obsolete
+        if (binaryMode && !isStopPending() && deliveryWindow.isRetransmitDue(nowNs)) {
+            ensureCapacity(deliveryWindow.getRetransmitBytes());
+            filling.length = deliveryWindow.copyForRetransmit(filling.buffer, 0, nowNs);
+            filling.oldestNs = nowNs;
+            return filling.length;
+        }
+
+        while (!priorityList.isEmpty()) {
+            Pending pending = priorityList.peekFirst();
+            if (!addToBatch(pending, 0)) {
+                break;
+            }
+            priorityList.removeFirst();
+            if (!filling.hasStop) {
+                filling.hasStop = true;
+                filling.stopNs = pending.enqueueNs;
+            }
+        }
+        while (!pendingList.isEmpty() && priorityList.isEmpty()) {
+            if (!addToBatch(pendingList.peekFirst(), STOP_RESERVE_BYTES)) {
+                break;
+            }
+            pendingList.removeFirst();
+        }
+        return filling.length;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Put the frame in the batch, unless it makes the batch more than the max size (as encoded),
+    // or does not fit in the robot's window (returns false).  A frame that can't be encoded in
+    // binary mode is dropped (returns true, nothing added)
+    //---------------------------------------------------------------------------------------------
+    private boolean addToBatch(Pending pending, int reserveBytes) {
+        int start = filling.length;
+        int how = appendFrame(pending.frame, pending.stop);
+        if (how == FRAME_REJECTED) {
+            droppedCnt++;
+            return true;
+        }
+        if (!pending.stop && filling.frameCnt > 0 && filling.length > MAX_BATCH_BYTES) {
+            filling.length = start;
+            return false;
+        }
+        boolean binary = (how == FRAME_BINARY);
+        if (binary && pending.stop) {
+            deliveryWindow.controlSent(filling.buffer, start, filling.length - start, System.nanoTime());
+        } else if (binary) {
+            if (!deliveryWindow.canSend(filling.length - start, reserveBytes)) {
+                filling.length = start;
+                return false;
+            }
+            deliveryWindow.sent(filling.buffer, start, filling.length - start, System.nanoTime());
+        }
+        if (pending.enqueueNs < filling.oldestNs) {
+            filling.oldestNs = pending.enqueueNs;
+        }
+        filling.frameCnt++;
+        return true;
+    }
+
+    private boolean isStopPending() {
+        for (Pending pending : priorityList) {
+            if (pending.stop) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Record the latency of the write of a batch (from when its oldest frame was queued)
+    //---------------------------------------------------------------------------------------------
+    public synchronized void writeDone(Batch batch) {
+        if (batch.frameCnt == 0) {
+            // Frames sent again (already counted when they were first sent)
+            return;
+        }
+        lastLatencyNs = System.nanoTime() - batch.oldestNs;
+        if (lastLatencyNs > maxLatencyNs) {
+            maxLatencyNs = lastLatencyNs;
+        }
+        totalLatencyNs += lastLatencyNs;
+        writeCnt++;
+        frameCnt += batch.frameCnt;
+
+        // STOP latency (from when it was queued to when it was written)
+        if (batch.hasStop) {
+            lastStopLatencyNs = System.nanoTime() - batch.stopNs;
+            if (lastStopLatencyNs > maxStopLatencyNs) {
+                maxStopLatencyNs = lastStopLatencyNs;
+            }
+            stopCnt++;
+        }
+    }
+
+    // Set whether to encode the frames with the binary protocol (starting over at sequence 0
+    // with the window advertised by the robot)
+    public synchronized void setBinaryMode(boolean binaryMode, int windowBytes) {
+        this.binaryMode = binaryMode;
+        deliveryWindow.reset(windowBytes);
+        notifyAll();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // The robot acknowledged the frames up to seq (and advertised its window)
+    //---------------------------------------------------------------------------------------------
+    public synchronized void ack(int seq, int windowBytes) {
+        if (deliveryWindow.ack(seq, windowBytes, System.nanoTime()) > 0) {
+            notifyAll();
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // The robot executed the control frame (STOP) with seq
+    //---------------------------------------------------------------------------------------------
+    public synchronized void ackControl(int seq) {
+        deliveryWindow.ackControl(seq);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // The robot is waiting for frame seq - send the frames from it on again
+    //---------------------------------------------------------------------------------------------
+    public synchronized void nak(int seq) {
+        deliveryWindow.nak(seq, System.nanoTime());
+        notifyAll();
+    }
+
+    public synchronized boolean isBinaryMode() {
+        return binaryMode;
+    }
+
+    // Remove any frames waiting to be sent
+    public synchronized void clear() {
+        pendingList.clear();
+        priorityList.clear();
+    }
+
+    public synchronized int getUnackedCnt() {
+        return deliveryWindow.getUnackedCnt();
+    }
+
+    public synchronized boolean isControlUnacked() {
+        return deliveryWindow.isControlUnacked();
+    }
+
+    public synchronized long getRetransmitCnt() {
+        return deliveryWindow.getRetransmitCnt();
+    }
+
+    public synchronized long getNakCnt() {
+        return deliveryWindow.getNakCnt();
+    }
+
+    public synchronized long getAckTimeoutCnt() {
+        return deliveryWindow.getTimeoutCnt();
+    }
+
+    public synchronized int getQueueDepth() {
+        return pendingList.size() + priorityList.size();
+    }
+
+    public synchronized int getSupersededCnt() {
+        return supersededCnt;
+    }
+
+    public synchronized long getStopCnt() {
+        return stopCnt;
+    }
+
+    public synchronized long getLastStopLatencyMs() {
+        return lastStopLatencyNs / 1000000;
+    }
+
+    public synchronized long getMaxStopLatencyMs() {
+        return maxStopLatencyNs / 1000000;
+    }
+
+    public synchronized int getDroppedCnt() {
+        return droppedCnt;
+    }
+
+    public synchronized long getWriteCnt() {
+        return writeCnt;
+    }
+
+    public synchronized long getFrameCnt() {
+        return frameCnt;
+    }
+
+    public synchronized long getLastWriteLatencyMs() {
+        return lastLatencyNs / 1000000;
+    }
+
+    public synchronized long getMaxWriteLatencyMs() {
+        return maxLatencyNs / 1000000;
+    }
+
+    public synchronized long getAvgWriteLatencyMs() {
+        return (writeCnt > 0) ? (totalLatencyNs / writeCnt / 1000000) : 0;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Put the frame into the batch buffer (as binary, or the ASCII characters of the command).
+    // Returns FRAME_BINARY for a binary frame (a control frame for a STOP, else with a sequence
+    // number), FRAME_ASCII, or FRAME_REJECTED if it can't be encoded in binary mode (ASCII in the
+    // middle of the binary frames would take robot buffer the window doesn't count)
+    //---------------------------------------------------------------------------------------------
+    private int appendFrame(String frame, boolean stop) {
+        int len = frame.length();
+        if (binaryMode) {
+            int encodedLen = encodeFrame(frame, stop);
+            if (encodedLen <= 0 && stop) {
+                // The robot must still stop
+                encodedLen = encodeFrame(STOP_FRAME, true);
+            }
+            if (encodedLen <= 0) {
+                return FRAME_REJECTED;
+            }
+            filling.length += encodedLen;
+            return FRAME_BINARY;
+        }
+
+        ensureCapacity(filling.length + len);
+        for (int i = 0; i < len; i++) {
+            filling.buffer[filling.length++] = (byte) frame.charAt(i);
+        }
+        return FRAME_ASCII;
+    }
+
+    // Encode the frame at the end of the batch buffer, and return its length (or -1)
+    private int encodeFrame(String frame, boolean stop) {
+        ensureCapacity(filling.length + BinaryProtocol.maxEncodedLength(frame));
+        return stop
+                ? BinaryProtocol.encodeControl(frame, deliveryWindow.getNextSeq(), filling.buffer, filling.length)
+                : BinaryProtocol.encode(frame, deliveryWindow.getNextSeq(), filling.buffer, filling.length);
+    }
+
+    private static int paramCnt(String frame) {
+        int cnt = 0;
+        for (int i = 0; i < frame.length(); i++) {
+            if (frame.charAt(i) == ',') {
+                cnt++;
+            }
+        }
+        return cnt;
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > filling.buffer.length) {
+            byte[] newBuffer = new byte[size];
+            System.arraycopy(filling.buffer, 0, newBuffer, 0, filling.length);
+            filling.buffer = newBuffer;
+        }
+    }
+
+} // public class OutboundQueue {
@@ -0,0 +1,191 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Class to manage the life of the SpeechRecognizer.  One
+ *              recognizer is kept warm (bound to the recognition service)
+ *              and re-armed with startListening for every turn, instead of
+ *              being destroyed and created again.  It is only re-created
+ *              after a real failure (client, audio, or server errors, or
+ *              the service staying busy).
+ *              Also records how long each turn takes to be ready to listen
+ *              (from the restart to onReadyForSpeech).
+ *              Call from the main thread only (like the SpeechRecognizer).
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version (to replace the destroy and create in
+ *                  MainActivity.restartListening)
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.speech.RecognitionListener;
+import android.speech.SpeechRecognizer;
+import android.util.Log;
+
+
+public class RecognizerManager implements RecognitionListener {
+    private static final String TAG = "recognizerManager";
+    // Re-create the recognizer after this many busy errors in a row
+    private static final int BUSY_ERROR_MAX = 3;
+
+    private final Context context;
+    private final RecognitionListener listener;
+    private final Intent recognizerIntent;
+    private SpeechRecognizer recognizer = null;
+    private boolean recreate = false;
+    private int busyErrorCnt = 0;
+
+    // Time of the restart (0 once the recognizer is ready for the turn)
+    private long restartMs = 0;
+
+    // Statistics
+    private int createCnt = 0;
+    private int rearmCnt = 0;
+    private long lastReadyMs = 0;
+    private long maxReadyMs = 0;
+    private long totalReadyMs = 0;
+    private int readyCnt = 0;
+
+    //---------------------------------------------------------------------------------------------
+    // Create the manager (the events of the recognizer are passed on to the listener)
+    //---------------------------------------------------------------------------------------------
+    public RecognizerManager(Context context, RecognitionListener listener, Intent recognizerIntent) {
+        this.context = context;
+        this.listener = listener;
+        this.recognizerIntent = recognizerIntent;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Start listening for the next turn (re-arm the warm recognizer, or create it if there isn't
+    // one or the last one failed)
+    //---------------------------------------------------------------------------------------------
+    public void startListening() {
+        restartMs = SystemClock.elapsedRealtime();
+        if (recognizer == null || recreate) {
+            destroy();
+            recognizer = SpeechRecognizer.createSpeechRecognizer(context);
+            recognizer.setRecognitionListener(this);
+            recreate = false;
+            busyErrorCnt = 0;
+            createCnt++;
+            Log.d(TAG,"Created SpeechRecognizer, count = "+createCnt);
+        } else {
+            // Stop the turn in progress (if any), so the re-arm doesn't get a busy error
+            recognizer.cancel();
+            rearmCnt++;
+        }
+        recognizer.startListening(recognizerIntent);
+    }
+
+    // Release the recognizer (when the activity is paused or destroyed)
+    public void destroy() {
+        if (recognizer != null) {
+            recognizer.destroy();
+            recognizer = null;
+        }
+    }
+
+    public long getLastReadyMs() {
+        return lastReadyMs;
+    }
+
+    public long getMaxReadyMs() {
+        return maxReadyMs;
+    }
+
+    public long getAvgReadyMs() {
+        return (readyCnt > 0) ? (totalReadyMs / readyCnt) : 0;
+    }
+
+    public int getCreateCnt() {
+        return createCnt;
+    }
+
+    public int getRearmCnt() {
+        return rearmCnt;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // RecognitionListener methods - record the timing and failures, and pass them on
+    //---------------------------------------------------------------------------------------------
+    @Override
+    public void onReadyForSpeech(Bundle params) {
+        if (restartMs > 0) {
+            lastReadyMs = SystemClock.elapsedRealtime() - restartMs;
+            if (lastReadyMs > maxReadyMs) {
+                maxReadyMs = lastReadyMs;
+            }
+            totalReadyMs += lastReadyMs;
+            readyCnt++;
+            restartMs = 0;
+            Log.d(TAG,"Ready to listen ms = "+lastReadyMs+", avg = "+getAvgReadyMs()+
+                    ", max = "+maxReadyMs+", created = "+createCnt+", re-armed = "+rearmCnt);
+        }
+        busyErrorCnt = 0;
+        listener.onReadyForSpeech(params);
+    }
+
+    @Override
+    public void onError(int errorCode) {
+        switch (errorCode) {
+            case SpeechRecognizer.ERROR_CLIENT:
+            case SpeechRecognizer.ERROR_AUDIO:
+            case SpeechRecognizer.ERROR_SERVER:
+                // The recognizer (or its connection to the service) is broken
+                recreate = true;
+                break;
+            case SpeechRecognizer.ERROR_RECOGNIZER_BUSY:
+                if (++busyErrorCnt >= BUSY_ERROR_MAX) {
+                    recreate = true;
+                }
+                break;
+            default:
+                // No match, or no speech - normal at the end of a turn
+                break;
+        }
+        if (recreate) {
+            Log.d(TAG,"SpeechRecognizer failed, error = "+errorCode+" (re-create on the next turn)");
+        }
+        listener.onError(errorCode);
+    }
+
+    @Override
+    public void onBeginningOfSpeech() {
+        listener.onBeginningOfSpeech();
+    }
+
+    @Override
+    public void onBufferReceived(byte[] buffer) {
+        listener.onBufferReceived(buffer);
+    }
+
+    @Override
+    public void onEndOfSpeech() {
+        listener.onEndOfSpeech();
+    }
+
+    @Override
+    public void onEvent(int eventType, Bundle params) {
+        listener.onEvent(eventType, params);
+    }
+
+    @Override
+    public void onPartialResults(Bundle partialResults) {
+        listener.onPartialResults(partialResults);
+    }
+
+    @Override
+    public void onRmsChanged(float rmsdB) {
+        listener.onRmsChanged(rmsdB);
+    }
+
+    @Override
+    public void onResults(Bundle results) {
+        busyErrorCnt = 0;
+        listener.onResults(results);
+    }
+
+} // public class RecognizerManager implements RecognitionListener {
@@ -0,0 +1,96 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Tracks the reply to a command, to know when to restart the
+ *              speech listening.  If the handler speaks, the listening is
+ *              restarted when the speech is done (so the recognizer doesn't
+ *              hear the bot).  If the handler gets its reply from a query,
+ *              the reply is pending until its callback, and the listening is
+ *              only restarted there if nothing was said.  Otherwise it is
+ *              restarted at the end of the dispatch.  Used on the main thread.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version (replaces the textToSpeech flag in
+ *                  MainActivity)
+ *                  Added dispatch (the steps of MainActivity.onResults) and
+ *                  speechDone (the restart at the end of the speech)
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+
+public class ReplyTracker {
+    private final Runnable restartListening;
+    // Reply of the command that will come in a callback
+    private boolean replyPending = false;
+    // Speech started for the command (the end of it restarts the listening)
+    private boolean speaking = false;
+
+    public ReplyTracker(Runnable restartListening) {
+        this.restartListening = restartListening;
+    }
+
+    // Start of a command (a result from the recognizer)
+    public void begin() {
+        replyPending = false;
+        speaking = false;
+    }
+
+    // A handler started a query that replies in its callback
+    public void expectReply() {
+        replyPending = true;
+    }
+
+    // Speech started (the listening is restarted when it is done)
+    public void speaking() {
+        speaking = true;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Execute the handler for a command with the router, and restart the listening at the end of
+    // the dispatch if there is nothing to wait for.  Returns true if it was restarted
+    //---------------------------------------------------------------------------------------------
+    public boolean dispatch(IntentRouter router, String command, int modes) {
+        begin();
+        router.dispatch(command, modes);
+        return endDispatch();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // End of the dispatch of the command - restart the listening now if there is nothing to wait
+    // for.  Returns true if it was restarted
+    //---------------------------------------------------------------------------------------------
+    public boolean endDispatch() {
+        if (replyPending || speaking) {
+            return false;
+        }
+        restartListening.run();
+        return true;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // The pending reply is done (after its speech was started, if there was any) - restart the
+    // listening if nothing is being said.  Returns true if it was restarted
+    //---------------------------------------------------------------------------------------------
+    public boolean replyDone() {
+        if (!replyPending) {
+            return false;
+        }
+        replyPending = false;
+        if (speaking) {
+            return false;
+        }
+        restartListening.run();
+        return true;
+    }
+
+    // The speech is done (the TTS or player onDone) - restart the listening
+    public void speechDone() {
+        speaking = false;
+        restartListening.run();
+    }
+
+    public boolean isReplyPending() {
+        return replyPending;
+    }
+
+} // public class ReplyTracker {
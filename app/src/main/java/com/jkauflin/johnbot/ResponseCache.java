@@ -0,0 +1,140 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Cache of the responses to the commands said recently (people
+ *              repeat the same things), by the normalized command, so a
+ *              repeat doesn't go through the keyword, fuzzy, and full-text
+ *              searches again.  Commands with no response are cached too
+ *              (misses cost as much as hits).  The least recently used are
+ *              dropped to keep it under the maximum entries, and all of it is
+ *              dropped when the content version changes.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+
+public class ResponseCache {
+    private final int maxEntries;
+    // Responses by normalized command, in least recently used order (empty if no response)
+    private final LinkedHashMap<String, String> entryMap;
+    // Content version the responses are from
+    private long version = -1;
+
+    // Statistics
+    private long hitCnt = 0;
+    private long negativeHitCnt = 0;
+    private long missCnt = 0;
+    private int evictedCnt = 0;
+    private int invalidatedCnt = 0;
+
+    public ResponseCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        entryMap = new LinkedHashMap<String, String>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                if (size() > ResponseCache.this.maxEntries) {
+                    evictedCnt++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the cached response for a command from a content version (empty if it has no
+    // response), or null if it isn't cached
+    //---------------------------------------------------------------------------------------------
+    public synchronized String get(long contentVersion, String command) {
+        checkVersion(contentVersion);
+        String response = entryMap.get(normalize(command));
+        if (response == null) {
+            missCnt++;
+        } else if (response.isEmpty()) {
+            negativeHitCnt++;
+        } else {
+            hitCnt++;
+        }
+        return response;
+    }
+
+    // Cache the response for a command from a content version (empty if it has no response)
+    public synchronized void put(long contentVersion, String command, String response) {
+        checkVersion(contentVersion);
+        entryMap.put(normalize(command), (response != null) ? response : "");
+    }
+
+    public synchronized void clear() {
+        entryMap.clear();
+    }
+
+    public synchronized int size() {
+        return entryMap.size();
+    }
+
+    // Hits with a response
+    public synchronized long getHitCnt() {
+        return hitCnt;
+    }
+
+    // Hits with no response (cached misses)
+    public synchronized long getNegativeHitCnt() {
+        return negativeHitCnt;
+    }
+
+    public synchronized long getMissCnt() {
+        return missCnt;
+    }
+
+    public synchronized int getEvictedCnt() {
+        return evictedCnt;
+    }
+
+    public synchronized int getInvalidatedCnt() {
+        return invalidatedCnt;
+    }
+
+    // Drop everything when the content version changes
+    private void checkVersion(long contentVersion) {
+        if (contentVersion != version) {
+            if (!entryMap.isEmpty()) {
+                invalidatedCnt++;
+            }
+            entryMap.clear();
+            version = contentVersion;
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Normalize a command for the key - lower case, letters, digits, and apostrophes, with single
+    // spaces between the words (so "Who are you?" and "who are  you" are the same)
+    //---------------------------------------------------------------------------------------------
+    public static String normalize(String command) {
+        if (command == null) {
+            return "";
+        }
+        String lower = command.toLowerCase(Locale.US);
+        StringBuilder sb = new StringBuilder(lower.length());
+        boolean space = false;
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '\'') {
+                if (space && sb.length() > 0) {
+                    sb.append(' ');
+                }
+                space = false;
+                sb.append(c);
+            } else {
+                space = true;
+            }
+        }
+        return sb.toString();
+    }
+
+} // public class ResponseCache {
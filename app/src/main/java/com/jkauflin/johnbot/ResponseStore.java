@@ -0,0 +1,255 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Read-only store of the responses and jokes in a file that is
+ *              memory-mapped, so the content is not held on the Java heap
+ *              (or loaded at startup) whatever its size.  The file has the
+ *              flattened keyword automaton (KeywordMatcher), which is walked
+ *              right in the mapped buffer to find a keyword in a command
+ *              with no allocation, the joke ids (in id order), and the text
+ *              of the responses and jokes (UTF-8, by offset).  It is written
+ *              once for each content generation, and never changed.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *                  Format version 2 (the keywords are normalized)
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+
+public class ResponseStore {
+    public static final int NO_MATCH = -1;
+    private static final int MAGIC = 0x4A425253;        // "JBRS"
+    private static final int FORMAT_VERSION = 2;
+    //    magic, format version, stateCnt, edgeCnt, responseCnt, jokeCnt, textLength
+    private static final int HEADER_BYTES = 7 * 4;
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final MappedByteBuffer buffer;
+    private final int responseCnt;
+    private final int jokeCnt;
+    // Keyword automaton (see KeywordMatcher)
+    private final IntBuffer edgeStart;
+    private final IntBuffer edgeTarget;
+    private final IntBuffer fail;
+    private final IntBuffer best;
+    private final CharBuffer edgeChar;
+    // Joke ids in id order
+    private final IntBuffer jokeIdList;
+    // Offsets of the strings in the text - responses, then joke questions, then joke answers
+    private final IntBuffer textStart;
+    private final int textBase;
+
+    //---------------------------------------------------------------------------------------------
+    // Write a store file.  The keywords and responses are by verbalresponse row (the first
+    // keyword row found in a command wins), and the jokes are in id order
+    //---------------------------------------------------------------------------------------------
+    public static void write(File file, String[] keywords, String[] responses,
+                             int[] jokeIds, String[] questions, String[] answers) throws IOException {
+        if (keywords.length != responses.length || questions.length != jokeIds.length || answers.length != jokeIds.length) {
+            throw new IllegalArgumentException("Content arrays are not the same length");
+        }
+        KeywordMatcher matcher = new KeywordMatcher(keywords);
+        byte[][] textList = new byte[responses.length + 2 * jokeIds.length][];
+        int t = 0;
+        for (String text : responses) {
+            textList[t++] = toBytes(text);
+        }
+        for (String text : questions) {
+            textList[t++] = toBytes(text);
+        }
+        for (String text : answers) {
+            textList[t++] = toBytes(text);
+        }
+        int textLength = 0;
+        for (byte[] text : textList) {
+            textLength += text.length;
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(matcher.getStateCnt());
+            out.writeInt(matcher.getEdgeCnt());
+            out.writeInt(responses.length);
+            out.writeInt(jokeIds.length);
+            out.writeInt(textLength);
+            matcher.writeTo(out);
+            for (int id : jokeIds) {
+                out.writeInt(id);
+            }
+            int offset = 0;
+            out.writeInt(offset);
+            for (byte[] text : textList) {
+                offset += text.length;
+                out.writeInt(offset);
+            }
+            for (byte[] text : textList) {
+                out.write(text);
+            }
+        } finally {
+            out.close();
+        }
+    } // public static void write(File file...
+
+    //---------------------------------------------------------------------------------------------
+    // Map a store file.  Throws an IOException if it isn't a complete store of this format
+    //---------------------------------------------------------------------------------------------
+    public static ResponseStore open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            // The mapping stays valid after the channel is closed
+            return new ResponseStore(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        } finally {
+            raf.close();
+        }
+    }
+
+    private ResponseStore(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        long size = buffer.capacity();
+        if (size < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Not a response store");
+        }
+        int stateCnt = buffer.getInt(8);
+        int edgeCnt = buffer.getInt(12);
+        responseCnt = buffer.getInt(16);
+        jokeCnt = buffer.getInt(20);
+        int textLength = buffer.getInt(24);
+        int textCnt = responseCnt + 2 * jokeCnt;
+        long expected = HEADER_BYTES + 4L * (stateCnt + 1 + edgeCnt + 2L * stateCnt) + 4L * ((edgeCnt + 1) / 2)
+                + 4L * (jokeCnt + textCnt + 1) + textLength;
+        if (stateCnt < 1 || edgeCnt < 0 || responseCnt < 0 || jokeCnt < 0 || textLength < 0 || expected != size) {
+            throw new IOException("Response store size = "+size+", expected = "+expected);
+        }
+
+        int pos = HEADER_BYTES;
+        edgeStart = intView(pos, stateCnt + 1);
+        pos += 4 * (stateCnt + 1);
+        edgeTarget = intView(pos, edgeCnt);
+        pos += 4 * edgeCnt;
+        fail = intView(pos, stateCnt);
+        pos += 4 * stateCnt;
+        best = intView(pos, stateCnt);
+        pos += 4 * stateCnt;
+        edgeChar = slice(pos, 2 * edgeCnt).asCharBuffer();
+        pos += 4 * ((edgeCnt + 1) / 2);
+        jokeIdList = intView(pos, jokeCnt);
+        pos += 4 * jokeCnt;
+        textStart = intView(pos, textCnt + 1);
+        pos += 4 * (textCnt + 1);
+        textBase = pos;
+    }
+
+    public int getResponseCnt() {
+        return responseCnt;
+    }
+
+    public int getJokeCnt() {
+        return jokeCnt;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the index of the response for the highest priority keyword contained in the text
+    // (or NO_MATCH) - the same walk as KeywordMatcher.find, on the mapped arrays
+    //---------------------------------------------------------------------------------------------
+    public int findKeyword(String text) {
+        int state = 0;
+        int found = best.get(0);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = transition(state, c)) < 0 && state != 0) {
+                state = fail.get(state);
+            }
+            state = (next < 0) ? 0 : next;
+            if (best.get(state) < found) {
+                found = best.get(state);
+            }
+        }
+        return (found == Integer.MAX_VALUE) ? NO_MATCH : found;
+    }
+
+    public String getResponse(int index) {
+        return getText(index);
+    }
+
+    public int getJokeId(int index) {
+        return jokeIdList.get(index);
+    }
+
+    // Return a copy of the joke ids (in id order)
+    public int[] getJokeIdList() {
+        int[] idList = new int[jokeCnt];
+        for (int i = 0; i < jokeCnt; i++) {
+            idList[i] = jokeIdList.get(i);
+        }
+        return idList;
+    }
+
+    public String getJokeQuestion(int index) {
+        return getText(responseCnt + index);
+    }
+
+    public String getJokeAnswer(int index) {
+        return getText(responseCnt + jokeCnt + index);
+    }
+
+    // Decode a string from the text (absolute reads, so it is safe from any thread)
+    private String getText(int textIndex) {
+        int start = textStart.get(textIndex);
+        byte[] bytes = new byte[textStart.get(textIndex + 1) - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(textBase + start + i);
+        }
+        return new String(bytes, UTF8);
+    }
+
+    // Binary search for the edge out of a state for a character (-1 if there isn't one)
+    private int transition(int state, char c) {
+        int lo = edgeStart.get(state);
+        int hi = edgeStart.get(state + 1) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char midChar = edgeChar.get(mid);
+            if (midChar < c) {
+                lo = mid + 1;
+            } else if (midChar > c) {
+                hi = mid - 1;
+            } else {
+                return edgeTarget.get(mid);
+            }
+        }
+        return -1;
+    }
+
+    private IntBuffer intView(int pos, int cnt) {
+        return slice(pos, 4 * cnt).asIntBuffer();
+    }
+
+    private ByteBuffer slice(int pos, int length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position(pos);
+        view.limit(pos + length);
+        return view.slice();
+    }
+
+    private static byte[] toBytes(String text) {
+        return (text != null) ? text.getBytes(UTF8) : new byte[0];
+    }
+
+} // public class ResponseStore {
@@ -0,0 +1,162 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Helpers for the full-text search of the responses and jokes
+ *              (the FTS4 tables in DatabaseHandler).  Builds the MATCH query
+ *              from what was said, and ranks the rows from the SQLite
+ *              matchinfo (FTS4 does not rank the results itself).
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *                  Score a response only if most of the search terms are in
+ *                  the row (and one is in the keywords), per search term
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+
+
+public class SearchRanker {
+    // Format of the matchinfo to request in the query
+    public static final String MATCHINFO_FORMAT = "pcnx";
+    private static final int MAX_TERMS = 10;
+
+    // Words that say nothing about what to search for
+    private static final HashSet<String> STOP_WORD_SET = new HashSet<String>(Arrays.asList(
+            "a", "an", "the", "and", "or", "of", "to", "in", "on", "at", "for", "with", "about",
+            "i", "me", "my", "you", "your", "it", "is", "are", "am", "be", "do", "does", "did",
+            "what", "how", "that", "this", "tell", "say", "know", "any", "some", "please",
+            "joke", "jokes", "john", "bot"));
+
+    private SearchRanker() {
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Build the FTS MATCH query for some text (any of the words, each quoted so nothing is taken
+    // as query syntax).  Returns an empty string if there are no words to search for
+    //---------------------------------------------------------------------------------------------
+    public static String buildMatchQuery(String text) {
+        StringBuilder sb = new StringBuilder();
+        if (text == null) {
+            return "";
+        }
+        HashSet<String> termSet = new HashSet<String>();
+        String[] wordList = text.toLowerCase(Locale.US).split("[^a-z0-9]+");
+        for (String word : wordList) {
+            if (word.isEmpty() || STOP_WORD_SET.contains(word) || !termSet.add(word)) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(" OR ");
+            }
+            sb.append('"').append(word).append('"');
+            if (termSet.size() >= MAX_TERMS) {
+                break;
+            }
+        }
+        return sb.toString();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the topic of a request like "tell me a joke about cats" (the words after "about"),
+    // or an empty string if there isn't one
+    //---------------------------------------------------------------------------------------------
+    public static String getTopic(String command) {
+        if (command == null) {
+            return "";
+        }
+        String lowerCommand = command.toLowerCase(Locale.US);
+        int pos = lowerCommand.indexOf(" about ");
+        if (pos < 0) {
+            return "";
+        }
+        return lowerCommand.substring(pos + 7).trim();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Score a row from its matchinfo (pcnx format) - for each search term found in a column, the
+    // column weight times how rare the term is (inverse document frequency).  Columns without a
+    // weight count for nothing
+    //---------------------------------------------------------------------------------------------
+    public static double score(int[] matchinfo, double[] columnWeights) {
+        int phraseCnt = matchinfo[0];
+        int columnCnt = matchinfo[1];
+        long rowCnt = matchinfo[2] & 0xFFFFFFFFL;
+        double score = 0.0;
+        for (int phrase = 0; phrase < phraseCnt; phrase++) {
+            for (int column = 0; column < columnCnt && column < columnWeights.length; column++) {
+                int base = 3 + 3 * (phrase * columnCnt + column);
+                int hitCnt = matchinfo[base];
+                int docCnt = matchinfo[base + 2];
+                if (hitCnt > 0 && docCnt > 0) {
+                    score += columnWeights[column] * Math.log((rowCnt + 1.0) / docCnt);
+                }
+            }
+        }
+        return score;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Score a row for a response - the score per search term (so a single rare word in a longer
+    // command doesn't carry it), or 0 if less than minCoverage of the terms are in the row, or
+    // none of them are in the first (keywords) column
+    //---------------------------------------------------------------------------------------------
+    public static double scoreRelevant(int[] matchinfo, double[] columnWeights, double minCoverage) {
+        int phraseCnt = matchinfo[0];
+        if (phraseCnt == 0 || !hasHit(matchinfo, 0) || coverage(matchinfo, columnWeights) < minCoverage) {
+            return 0.0;
+        }
+        return score(matchinfo, columnWeights) / phraseCnt;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the fraction of the search terms found in a row (in any column with a weight)
+    //---------------------------------------------------------------------------------------------
+    public static double coverage(int[] matchinfo, double[] columnWeights) {
+        int phraseCnt = matchinfo[0];
+        int columnCnt = matchinfo[1];
+        if (phraseCnt == 0) {
+            return 0.0;
+        }
+        int foundCnt = 0;
+        for (int phrase = 0; phrase < phraseCnt; phrase++) {
+            for (int column = 0; column < columnCnt && column < columnWeights.length; column++) {
+                if (matchinfo[3 + 3 * (phrase * columnCnt + column)] > 0) {
+                    foundCnt++;
+                    break;
+                }
+            }
+        }
+        return (double) foundCnt / phraseCnt;
+    }
+
+    // Return true if any search term was found in a column of the row
+    public static boolean hasHit(int[] matchinfo, int column) {
+        int phraseCnt = matchinfo[0];
+        int columnCnt = matchinfo[1];
+        if (column >= columnCnt) {
+            return false;
+        }
+        for (int phrase = 0; phrase < phraseCnt; phrase++) {
+            if (matchinfo[3 + 3 * (phrase * columnCnt + column)] > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Convert the matchinfo blob (unsigned 32 bit ints in the native byte order) to ints
+    public static int[] toInts(byte[] blob) {
+        ByteBuffer buffer = ByteBuffer.wrap(blob).order(ByteOrder.nativeOrder());
+        int[] values = new int[blob.length / 4];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buffer.getInt();
+        }
+        return values;
+    }
+
+} // public class SearchRanker {
@@ -0,0 +1,203 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Timeline to animate the robot (eyes, head, and arm) while the
+ *              text-to-speech is talking.  Instead of sending the motions for
+ *              the whole sentence when speak is called, a small frame is sent
+ *              as each word is spoken:
+ *                - from the TTS word (range) progress events, when the
+ *                  TTS engine gives them
+ *                - else from a timer started when the audio starts, using
+ *                  an estimate of the time for each word
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version (to replace the command strings built
+ *                  from the word count in MainActivity.speak)
+ *                  Added stop (a STOP ends the animation of the utterance)
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+public class SpeechAnimator {
+    // Estimated speaking time (at speech rate 1.0)
+    public static final int MS_PER_CHAR = 65;
+    public static final int MIN_WORD_MS = 200;
+    public static final int PAUSE_MS = 250;
+    // Time the eyes are off between words
+    private static final int EYES_OFF_MS = 40;
+
+    private static final int HEAD_UP = 110;
+    private static final int HEAD_DOWN = 50;
+    private static final int HEAD_CENTER = 85;
+    private static final int ARM_UP = 100;
+    private static final int ARM_DOWN = 50;
+    private static final int ARM_CENTER = 75;
+
+    // Interface to send the frames to the robot
+    public interface FrameSender {
+        void send(String frames);
+    }
+
+    private final FrameSender sender;
+    private String utteranceId = null;
+    private int[] wordStarts = new int[0];
+    private int[] wordMs = new int[0];
+    // Index of the last word animated (-1 before the first)
+    private int currWord = -1;
+    // Set when the TTS engine gives word progress events (the timer is not needed)
+    private boolean rangeEvents = false;
+    private boolean done = true;
+
+    public SpeechAnimator(FrameSender sender) {
+        this.sender = sender;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Set up the timeline for the text of an utterance (call before passing it to the TTS)
+    //---------------------------------------------------------------------------------------------
+    public synchronized void prepare(String utteranceId, String text, float speechRate) {
+        this.utteranceId = utteranceId;
+        List<Integer> startList = new ArrayList<Integer>();
+        List<Integer> msList = new ArrayList<Integer>();
+        int i = 0;
+        int len = text.length();
+        while (i < len) {
+            while (i < len && Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            if (i >= len) {
+                break;
+            }
+            int start = i;
+            while (i < len && !Character.isWhitespace(text.charAt(i))) {
+                i++;
+            }
+            int ms = Math.max((i - start) * MS_PER_CHAR, MIN_WORD_MS);
+            char last = text.charAt(i - 1);
+            if (last == ',' || last == '.' || last == '?' || last == '!') {
+                ms += PAUSE_MS;
+            }
+            startList.add(start);
+            msList.add((int) (ms / (speechRate > 0 ? speechRate : 1.0f)));
+        }
+
+        wordStarts = new int[startList.size()];
+        wordMs = new int[msList.size()];
+        for (int j = 0; j < wordStarts.length; j++) {
+            wordStarts[j] = startList.get(j);
+            wordMs[j] = msList.get(j);
+        }
+        currWord = -1;
+        rangeEvents = false;
+        done = false;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // The audio started - animate the first word.  Returns the milliseconds until the timer
+    // should call onTimer, or -1 if it's not needed
+    //---------------------------------------------------------------------------------------------
+    public synchronized long onStart(String utteranceId) {
+        if (!isCurrent(utteranceId) || currWord >= 0) {
+            return -1;
+        }
+        animateWord(0);
+        return timerMs();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // TTS progress event - the engine is about to speak the text starting at this character
+    //---------------------------------------------------------------------------------------------
+    public synchronized void onRange(String utteranceId, int start) {
+        if (!isCurrent(utteranceId)) {
+            return;
+        }
+        rangeEvents = true;
+        int word = Arrays.binarySearch(wordStarts, start);
+        if (word < 0) {
+            // In the middle of a word (use the word it is in)
+            word = -word - 2;
+        }
+        if (word > currWord) {
+            animateWord(word);
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Timer event (when there are no progress events) - animate the next word.  Returns the
+    // milliseconds until the next timer event, or -1 when the timer should stop
+    //---------------------------------------------------------------------------------------------
+    public synchronized long onTimer(String utteranceId) {
+        if (!isCurrent(utteranceId) || rangeEvents) {
+            return -1;
+        }
+        animateWord(currWord + 1);
+        return timerMs();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // The utterance is done (or was stopped) - put the head and arm back to the center
+    //---------------------------------------------------------------------------------------------
+    public synchronized void onDone(String utteranceId) {
+        if (!isCurrent(utteranceId)) {
+            return;
+        }
+        if (currWord < wordStarts.length - 1) {
+            animateWord(wordStarts.length - 1);
+        }
+        done = true;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // STOP - drop the timeline of the current utterance, with no more frames (not even back to
+    // the center), so the robot stays stopped.  The timer stops at its next event
+    //---------------------------------------------------------------------------------------------
+    public synchronized void stop() {
+        done = true;
+        utteranceId = null;
+    }
+
+    // Return the index of the last word animated
+    public synchronized int getCurrWord() {
+        return currWord;
+    }
+
+    public synchronized int getWordCnt() {
+        return wordStarts.length;
+    }
+
+    private boolean isCurrent(String utteranceId) {
+        return !done && utteranceId != null && utteranceId.equals(this.utteranceId);
+    }
+
+    private long timerMs() {
+        if (rangeEvents || done || currWord < 0 || currWord >= wordStarts.length - 1) {
+            return -1;
+        }
+        return wordMs[currWord];
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Send the frames for a word: the eyes on while it is spoken, and the head and arm moving
+    // up or down (back to the center on the last word)
+    //---------------------------------------------------------------------------------------------
+    private void animateWord(int word) {
+        if (word >= wordStarts.length) {
+            return;
+        }
+        currWord = word;
+        int headPos = HEAD_CENTER;
+        int armPos = ARM_CENTER;
+        if (word < wordStarts.length - 1) {
+            boolean up = (word % 2 == 0);
+            headPos = up ? HEAD_UP : HEAD_DOWN;
+            armPos = up ? ARM_UP : ARM_DOWN;
+        }
+        int eyesMs = Math.max(wordMs[word] - EYES_OFF_MS, EYES_OFF_MS);
+        sender.send("E,"+eyesMs+";H,"+headPos+";A,"+armPos+";");
+    }
+
+} // public class SpeechAnimator {
@@ -0,0 +1,179 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Disk cache of audio files for phrases already synthesized by
+ *              the text-to-speech (jokes, responses, and the greeting), so
+ *              they can be played without waiting for the TTS engine.
+ *              Files are named by a hash of the text, voice, and speech rate,
+ *              and the least recently used files are deleted to keep the
+ *              total size under the maximum.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+public class SpeechCache {
+    private static final String AUDIO_EXT = ".wav";
+    private static final String TEMP_EXT = ".tmp";
+
+    private final File cacheDir;
+    private final long maxBytes;
+    // File sizes by key, in least recently used order
+    private final LinkedHashMap<String, Long> entryMap = new LinkedHashMap<String, Long>(64, 0.75f, true);
+    private long totalBytes = 0;
+
+    // Statistics
+    private long hitCnt = 0;
+    private long missCnt = 0;
+    private int evictedCnt = 0;
+
+    //---------------------------------------------------------------------------------------------
+    // Create the cache in a directory, and index the files already there (oldest use first)
+    //---------------------------------------------------------------------------------------------
+    public SpeechCache(File cacheDir, long maxBytes) {
+        this.cacheDir = cacheDir;
+        this.maxBytes = maxBytes;
+        cacheDir.mkdirs();
+
+        File[] fileList = cacheDir.listFiles();
+        if (fileList == null) {
+            return;
+        }
+        Arrays.sort(fileList, new Comparator<File>() {
+            public int compare(File f1, File f2) {
+                long diff = f1.lastModified() - f2.lastModified();
+                return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+            }
+        });
+        for (File file : fileList) {
+            String name = file.getName();
+            if (name.endsWith(AUDIO_EXT)) {
+                entryMap.put(name.substring(0, name.length() - AUDIO_EXT.length()), file.length());
+                totalBytes += file.length();
+            } else if (name.endsWith(TEMP_EXT)) {
+                // Left from a synthesis that did not finish
+                file.delete();
+            }
+        }
+        evict();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the cache key for a phrase spoken with a voice and speech rate
+    //---------------------------------------------------------------------------------------------
+    public static String key(String text, String voice, float rate) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest((text+"\n"+voice+"\n"+rate).getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+                sb.append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the audio file for a key (and mark it as just used), or null if it is not cached
+    //---------------------------------------------------------------------------------------------
+    public synchronized File get(String key) {
+        Long size = entryMap.get(key);
+        if (size != null) {
+            File file = audioFile(key);
+            if (file.exists()) {
+                hitCnt++;
+                file.setLastModified(System.currentTimeMillis());
+                return file;
+            }
+            // Deleted outside of the cache
+            entryMap.remove(key);
+            totalBytes -= size;
+        }
+        missCnt++;
+        return null;
+    }
+
+    // Check if a key is cached (without counting a hit or changing the use order)
+    public synchronized boolean contains(String key) {
+        return entryMap.containsKey(key);
+    }
+
+    // Return the file to synthesize the audio into (before it is added with put)
+    public File getTempFile(String key) {
+        return new File(cacheDir, key+TEMP_EXT);
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Add the audio synthesized into the temp file for a key (delete the least recently used
+    // files if the cache is over the maximum size).  Returns false if the file is not there
+    //---------------------------------------------------------------------------------------------
+    public synchronized boolean put(String key) {
+        File tempFile = getTempFile(key);
+        File file = audioFile(key);
+        if (!tempFile.exists() || tempFile.length() == 0 || !tempFile.renameTo(file)) {
+            tempFile.delete();
+            return false;
+        }
+        Long oldSize = entryMap.put(key, file.length());
+        if (oldSize != null) {
+            totalBytes -= oldSize;
+        }
+        totalBytes += file.length();
+        evict();
+        return true;
+    }
+
+    public synchronized int getEntryCnt() {
+        return entryMap.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public synchronized long getHitCnt() {
+        return hitCnt;
+    }
+
+    public synchronized long getMissCnt() {
+        return missCnt;
+    }
+
+    public synchronized int getEvictedCnt() {
+        return evictedCnt;
+    }
+
+    private File audioFile(String key) {
+        return new File(cacheDir, key+AUDIO_EXT);
+    }
+
+    // Delete the least recently used files until the total is under the maximum
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> iter = entryMap.entrySet().iterator();
+        while (totalBytes > maxBytes && iter.hasNext()) {
+            Map.Entry<String, Long> entry = iter.next();
+            audioFile(entry.getKey()).delete();
+            totalBytes -= entry.getValue();
+            iter.remove();
+            evictedCnt++;
+        }
+    }
+
+} // public class SpeechCache {
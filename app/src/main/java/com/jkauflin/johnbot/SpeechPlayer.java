@@ -0,0 +1,119 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Class to play the audio files from the SpeechCache in place
+ *              of the live text-to-speech.  The next phrase expected (like
+ *              the answer to a joke) can be prepared in advance, so it
+ *              starts playing right away.
+ *              Create and use from the main thread (the MediaPlayer callbacks
+ *              come back on the main thread).
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import android.media.MediaPlayer;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+
+public class SpeechPlayer {
+    private static final String TAG = "speechPlayer";
+
+    // Interface for the start and end of playing an utterance (like the TTS progress listener)
+    public interface Listener {
+        void onStart(String utteranceId);
+        void onDone(String utteranceId);
+    }
+
+    private final Listener listener;
+    private MediaPlayer player = null;
+    // Player prepared in advance for the next phrase
+    private MediaPlayer nextPlayer = null;
+    private String nextPath = null;
+
+    public SpeechPlayer(Listener listener) {
+        this.listener = listener;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Prepare a player for a file that is expected to be played next
+    //---------------------------------------------------------------------------------------------
+    public void prepareNext(File file) {
+        releaseNext();
+        try {
+            nextPlayer = new MediaPlayer();
+            nextPlayer.setDataSource(file.getPath());
+            nextPlayer.prepare();
+            nextPath = file.getPath();
+        } catch (IOException e) {
+            Log.e(TAG,"Error preparing file = "+file.getPath()+", e = "+e.getMessage());
+            releaseNext();
+        }
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Play a file (stopping anything playing).  Returns false if it can't be played
+    //---------------------------------------------------------------------------------------------
+    public boolean play(File file, final String utteranceId) {
+        stop();
+        long startMs = SystemClock.elapsedRealtime();
+        boolean prepared = file.getPath().equals(nextPath);
+        if (prepared) {
+            player = nextPlayer;
+            nextPlayer = null;
+            nextPath = null;
+        } else {
+            try {
+                player = new MediaPlayer();
+                player.setDataSource(file.getPath());
+                player.prepare();
+            } catch (IOException e) {
+                Log.e(TAG,"Error playing file = "+file.getPath()+", e = "+e.getMessage());
+                stop();
+                return false;
+            }
+        }
+
+        final MediaPlayer thisPlayer = player;
+        player.setOnCompletionListener(new MediaPlayer.OnCompletionListener() {
+            public void onCompletion(MediaPlayer mp) {
+                if (player == thisPlayer) {
+                    stop();
+                }
+                listener.onDone(utteranceId);
+            }
+        });
+        player.start();
+        Log.d(TAG,"Playing cached speech, prepared = "+prepared+
+                ", start ms = "+(SystemClock.elapsedRealtime()-startMs));
+        listener.onStart(utteranceId);
+        return true;
+    }
+
+    // Stop the file playing (if any)
+    public void stop() {
+        if (player != null) {
+            player.release();
+            player = null;
+        }
+    }
+
+    public void release() {
+        stop();
+        releaseNext();
+    }
+
+    private void releaseNext() {
+        if (nextPlayer != null) {
+            nextPlayer.release();
+            nextPlayer = null;
+        }
+        nextPath = null;
+    }
+
+} // public class SpeechPlayer {
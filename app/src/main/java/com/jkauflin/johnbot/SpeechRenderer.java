@@ -0,0 +1,167 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Class to synthesize known phrases (jokes, responses, and the
+ *              greeting) to audio files in the background, and keep them in
+ *              the SpeechCache.  Uses its own TextToSpeech instance, so the
+ *              QUEUE_FLUSH of the live speech does not cancel the rendering,
+ *              and renders one phrase at a time.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import android.content.Context;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.UtteranceProgressListener;
+import android.speech.tts.Voice;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+
+
+public class SpeechRenderer implements TextToSpeech.OnInitListener {
+    private static final String TAG = "speechRenderer";
+    private static final String UTTERANCE_PREFIX = "Render:";
+
+    private final SpeechCache speechCache;
+    private final float speechRate;
+    private TextToSpeech synthTts;
+    // Name of the voice in the cache key (set when the TTS is initialized)
+    private String voiceName = null;
+
+    // Phrases waiting to be rendered (prefetched phrases go at the front)
+    private final ArrayDeque<String> renderList = new ArrayDeque<String>();
+    private final HashSet<String> queuedSet = new HashSet<String>();
+    private String renderingKey = null;
+    private long renderStartMs = 0;
+    private int renderedCnt = 0;
+
+    public SpeechRenderer(Context context, SpeechCache speechCache, float speechRate) {
+        this.speechCache = speechCache;
+        this.speechRate = speechRate;
+        synthTts = new TextToSpeech(context, this);
+    }
+
+    @Override
+    public synchronized void onInit(int status) {
+        if (status != TextToSpeech.SUCCESS || synthTts == null) {
+            Log.e(TAG,"TextToSpeech for rendering failed to initialize, status = "+status);
+            return;
+        }
+        synthTts.setLanguage(Locale.US);
+        synthTts.setSpeechRate(speechRate);
+        Voice voice = synthTts.getVoice();
+        voiceName = (voice != null) ? voice.getName() : "default";
+        synthTts.setOnUtteranceProgressListener(new UtteranceProgressListener() {
+            @Override
+            public void onStart(String utteranceId) {
+            }
+            @Override
+            public void onDone(String utteranceId) {
+                rendered(utteranceId, true);
+            }
+            @Override
+            public void onError(String utteranceId) {
+                rendered(utteranceId, false);
+            }
+        });
+        renderNext();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Add phrases to render (the ones already cached or queued are skipped)
+    //---------------------------------------------------------------------------------------------
+    public synchronized void render(List<String> textList) {
+        for (String text : textList) {
+            if (text != null && !text.isEmpty() && queuedSet.add(text)) {
+                renderList.addLast(text);
+            }
+        }
+        Log.d(TAG,"Phrases to render = "+renderList.size());
+        renderNext();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Render a phrase next (ahead of the others), like the answer to a joke while the question
+    // is being spoken
+    //---------------------------------------------------------------------------------------------
+    public synchronized void prefetch(String text) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        if (!queuedSet.add(text)) {
+            renderList.remove(text);
+        }
+        renderList.addFirst(text);
+        renderNext();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the audio file for a phrase, or null if it hasn't been rendered
+    //---------------------------------------------------------------------------------------------
+    public File getCached(String text) {
+        String voice;
+        synchronized (this) {
+            voice = voiceName;
+        }
+        if (voice == null) {
+            return null;
+        }
+        return speechCache.get(SpeechCache.key(text, voice, speechRate));
+    }
+
+    public synchronized void shutdown() {
+        if (synthTts != null) {
+            synthTts.stop();
+            synthTts.shutdown();
+            synthTts = null;
+        }
+        renderingKey = null;
+    }
+
+    // Start the synthesis of the next phrase not already in the cache
+    private synchronized void renderNext() {
+        if (synthTts == null || voiceName == null || renderingKey != null) {
+            return;
+        }
+        while (!renderList.isEmpty()) {
+            String text = renderList.removeFirst();
+            queuedSet.remove(text);
+            String key = SpeechCache.key(text, voiceName, speechRate);
+            if (speechCache.contains(key)) {
+                continue;
+            }
+            renderingKey = key;
+            renderStartMs = System.currentTimeMillis();
+            int result = synthTts.synthesizeToFile(text, null, speechCache.getTempFile(key), UTTERANCE_PREFIX+key);
+            if (result == TextToSpeech.SUCCESS) {
+                return;
+            }
+            Log.e(TAG,"synthesizeToFile failed, text = "+text);
+            renderingKey = null;
+        }
+    }
+
+    // Add the rendered file to the cache, and start the next one
+    private synchronized void rendered(String utteranceId, boolean success) {
+        if (renderingKey == null || !utteranceId.equals(UTTERANCE_PREFIX+renderingKey)) {
+            return;
+        }
+        if (success && speechCache.put(renderingKey)) {
+            renderedCnt++;
+            Log.d(TAG,"Rendered = "+renderedCnt+", ms = "+(System.currentTimeMillis()-renderStartMs)+
+                    ", cache files = "+speechCache.getEntryCnt()+", bytes = "+speechCache.getTotalBytes());
+        } else {
+            speechCache.getTempFile(renderingKey).delete();
+        }
+        renderingKey = null;
+        renderNext();
+    }
+
+} // public class SpeechRenderer implements TextToSpeech.OnInitListener {
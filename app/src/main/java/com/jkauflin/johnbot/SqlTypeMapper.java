@@ -0,0 +1,100 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Map the MySQL column types in the tableList column metadata
+ *              (like int(7) or varchar(1000)) to the SQLite storage classes,
+ *              so the columns are created (and the values bound) with the
+ *              right type, instead of copying the MySQL types into the DDL.
+ *              Also picks the key column the rows are found by.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version
+ *                  Match the integer type names exactly (point is not an
+ *                  int), and added getKeyColumn (no composite keys)
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+
+public class SqlTypeMapper {
+    // SQLite storage classes
+    public static final int TYPE_INTEGER = 1;
+    public static final int TYPE_REAL = 2;
+    public static final int TYPE_NUMERIC = 3;
+    public static final int TYPE_TEXT = 4;
+    public static final int TYPE_BLOB = 5;
+
+    private static final Set<String> INTEGER_TYPE_SET = new HashSet<String>(Arrays.asList(
+            "tinyint", "smallint", "mediumint", "int", "integer", "bigint",
+            "bit", "bool", "boolean", "year"));
+
+    private SqlTypeMapper() {
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the storage class for a MySQL (or SQLite) column type - anything not known is TEXT
+    //---------------------------------------------------------------------------------------------
+    public static int getType(String columnType) {
+        if (columnType == null) {
+            return TYPE_TEXT;
+        }
+        // Just the type name (without the size, or unsigned)
+        String typeName = columnType.trim().toLowerCase(Locale.US);
+        int end = 0;
+        while (end < typeName.length() && Character.isLetter(typeName.charAt(end))) {
+            end++;
+        }
+        typeName = typeName.substring(0, end);
+
+        if (INTEGER_TYPE_SET.contains(typeName)) {
+            return TYPE_INTEGER;
+        } else if (typeName.equals("float") || typeName.equals("double") || typeName.equals("real")) {
+            return TYPE_REAL;
+        } else if (typeName.equals("decimal") || typeName.equals("numeric") || typeName.equals("dec")) {
+            return TYPE_NUMERIC;
+        } else if (typeName.endsWith("blob") || typeName.endsWith("binary")) {
+            // tinyblob, blob, mediumblob, longblob, binary, varbinary
+            return TYPE_BLOB;
+        }
+        // char, varchar, text, enum, set, json, date, time, and spatial types
+        return TYPE_TEXT;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Return the key column of a table from its primary key columns (the default if it has none).
+    // The deletes and search updates find a row by one key column, so a composite key is an error
+    //---------------------------------------------------------------------------------------------
+    public static String getKeyColumn(String tableName, List<String> primaryKeyList, String defaultColumn)
+            throws IOException {
+        if (primaryKeyList.isEmpty()) {
+            return defaultColumn;
+        }
+        if (primaryKeyList.size() > 1) {
+            throw new IOException("Composite primary key "+primaryKeyList+" is not supported for "+tableName);
+        }
+        return primaryKeyList.get(0);
+    }
+
+    // Return the SQLite type to use in the DDL for a storage class
+    public static String getSqlType(int type) {
+        switch (type) {
+            case TYPE_INTEGER:
+                return "INTEGER";
+            case TYPE_REAL:
+                return "REAL";
+            case TYPE_NUMERIC:
+                return "NUMERIC";
+            case TYPE_BLOB:
+                return "BLOB";
+            default:
+                return "TEXT";
+        }
+    }
+
+} // public class SqlTypeMapper {
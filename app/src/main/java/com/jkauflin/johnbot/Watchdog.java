@@ -0,0 +1,171 @@
+/*==============================================================================
+ * (C) Copyright 2016,2017 John J Kauflin, All rights reserved.
+ *----------------------------------------------------------------------------
+ * DESCRIPTION: Watchdog with a deadline for each thing to watch (like the
+ *              speech recognizer, the text-to-speech, or the Bluetooth
+ *              connection).  A deadline is armed when the thing enters a
+ *              state, re-armed or disarmed by its events, and the recovery
+ *              only runs if the deadline passes.
+ *              All the deadlines are timed on one thread, which sleeps until
+ *              the earliest one (deadlines close together run in the same
+ *              wake up).  Recovery runs on that thread, so it must post any
+ *              UI work to the main thread.
+ *----------------------------------------------------------------------------
+ * Modification History
+ * 2026-10-16 AGENT Initial version (to replace the healthCheck polling in
+ *                  MainActivity)
+ *============================================================================*/
+package com.jkauflin.johnbot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class Watchdog {
+    // Deadlines this close to the one that is due run in the same wake up
+    private static final long COALESCE_NS = 50 * 1000000L;
+
+    // Deadline for each watch (0 if not armed), and what to run when it passes
+    private final long[] deadlineNs;
+    private final Runnable[] recoveryList;
+    private final Thread thread;
+    private boolean running = true;
+
+    // Statistics
+    private long firedCnt = 0;
+    private long wakeCnt = 0;
+    private long errorCnt = 0;
+
+    //---------------------------------------------------------------------------------------------
+    // Create the watchdog for a number of watches (numbered from 0) and start its thread
+    //---------------------------------------------------------------------------------------------
+    public Watchdog(String name, int watchCnt) {
+        deadlineNs = new long[watchCnt];
+        recoveryList = new Runnable[watchCnt];
+        thread = new Thread(new Runnable() {
+            public void run() {
+                runDeadlines();
+            }
+        }, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Arm (or re-arm) the deadline for a watch - the recovery runs if it is not re-armed or
+    // disarmed within the timeout
+    //---------------------------------------------------------------------------------------------
+    public synchronized void arm(int watch, long timeoutMs, Runnable recovery) {
+        long deadline = System.nanoTime() + timeoutMs * 1000000L;
+        deadlineNs[watch] = (deadline == 0) ? 1 : deadline;
+        recoveryList[watch] = recovery;
+        notifyAll();
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Disarm the deadline for a watch.  Returns true if it was armed (so only one of the event
+    // and the recovery acts on it)
+    //---------------------------------------------------------------------------------------------
+    public synchronized boolean disarm(int watch) {
+        boolean armed = (deadlineNs[watch] != 0);
+        deadlineNs[watch] = 0;
+        recoveryList[watch] = null;
+        return armed;
+    }
+
+    public synchronized void disarmAll() {
+        for (int watch = 0; watch < deadlineNs.length; watch++) {
+            disarm(watch);
+        }
+    }
+
+    public synchronized boolean isArmed(int watch) {
+        return deadlineNs[watch] != 0;
+    }
+
+    // Stop the thread (the watchdog can't be used after this)
+    public synchronized void shutdown() {
+        running = false;
+        disarmAll();
+        notifyAll();
+    }
+
+    public synchronized long getFiredCnt() {
+        return firedCnt;
+    }
+
+    public synchronized long getWakeCnt() {
+        return wakeCnt;
+    }
+
+    public synchronized long getErrorCnt() {
+        return errorCnt;
+    }
+
+    //---------------------------------------------------------------------------------------------
+    // Thread loop - sleep until the earliest deadline, then run the recovery for every deadline
+    // that is due (outside of the lock, so the recovery can arm deadlines)
+    //---------------------------------------------------------------------------------------------
+    private void runDeadlines() {
+        List<Runnable> dueList = new ArrayList<Runnable>();
+        while (true) {
+            synchronized (this) {
+                while (running && dueList.isEmpty()) {
+                    long nowNs = System.nanoTime();
+                    long nextNs = Long.MAX_VALUE;
+                    for (int watch = 0; watch < deadlineNs.length; watch++) {
+                        if (deadlineNs[watch] == 0) {
+                            continue;
+                        }
+                        long remainingNs = deadlineNs[watch] - nowNs;
+                        if (remainingNs <= 0) {
+                            dueList.add(recoveryList[watch]);
+                            deadlineNs[watch] = 0;
+                            recoveryList[watch] = null;
+                        } else if (remainingNs < nextNs) {
+                            nextNs = remainingNs;
+                        }
+                    }
+                    if (!dueList.isEmpty()) {
+                        // Take the ones that are almost due too
+                        for (int watch = 0; watch < deadlineNs.length; watch++) {
+                            if (deadlineNs[watch] != 0 && deadlineNs[watch] - nowNs <= COALESCE_NS) {
+                                dueList.add(recoveryList[watch]);
+                                deadlineNs[watch] = 0;
+                                recoveryList[watch] = null;
+                            }
+                        }
+                        firedCnt += dueList.size();
+                        wakeCnt++;
+                        break;
+                    }
+                    try {
+                        if (nextNs == Long.MAX_VALUE) {
+                            wait();
+                        } else {
+                            wait(nextNs / 1000000 + 1);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (!running) {
+                    return;
+                }
+            }
+
+            for (Runnable recovery : dueList) {
+                try {
+                    recovery.run();
+                } catch (RuntimeException e) {
+                    // Keep the watchdog running for the other deadlines
+                    synchronized (this) {
+                        errorCnt++;
+                    }
+                }
+            }
+            dueList.clear();
+        }
+    }
+
+} // public class Watchdog {
@@ -0,0 +1,86 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the binary command framing
+ */
+public class BinaryProtocolTest {
+
+    @Test
+    public void encode_varintParameters() throws Exception {
+        byte[] buffer = new byte[64];
+        int len = BinaryProtocol.encode("H,110,20,300;", 7, buffer, 0);
+        // sync, opcode, sequence, length, 110, 20, 300 (2 bytes), crc
+        assertEquals(9, len);
+        assertEquals((byte) 0xA5, buffer[0]);
+        assertEquals((byte) 'H', buffer[1]);
+        assertEquals(7, buffer[2]);
+        assertEquals(4, buffer[3]);
+        assertEquals(110, buffer[4]);
+        assertEquals(20, buffer[5]);
+        assertEquals((byte) (0x80 | (300 & 0x7F)), buffer[6]);
+        assertEquals(300 >> 7, buffer[7]);
+        assertEquals(BinaryProtocol.crc8(buffer, 1, 7), buffer[8]);
+    }
+
+    @Test
+    public void encode_isSmallerThanAscii() throws Exception {
+        String command = "E,260,40,260,40,260,40,260,40,260;";
+        byte[] buffer = new byte[BinaryProtocol.maxEncodedLength(command)];
+        int len = BinaryProtocol.encode(command, 0, buffer, 0);
+        assertTrue(len < command.length());
+        assertEquals(5, BinaryProtocol.encode("S;", 0, buffer, 0));
+    }
+
+    @Test
+    public void encode_rejectsBadCommand() throws Exception {
+        byte[] buffer = new byte[64];
+        assertEquals(-1, BinaryProtocol.encode("H,abc;", 0, buffer, 0));
+        assertEquals(-1, BinaryProtocol.encode(";", 0, buffer, 0));
+    }
+
+    @Test
+    public void encode_rejectsMoreParamsThanTheRobotHolds() throws Exception {
+        StringBuilder command = new StringBuilder("E");
+        for (int i = 0; i <= BinaryProtocol.MAX_PARAMS; i++) {
+            command.append(",1");
+        }
+        byte[] buffer = new byte[BinaryProtocol.maxEncodedLength(command.toString())];
+        assertEquals(-1, BinaryProtocol.encode(command.toString(), 0, buffer, 0));
+    }
+
+    @Test
+    public void parseVersionReply() throws Exception {
+        assertEquals(2, BinaryProtocol.parseVersionReply("V,2"));
+        assertEquals(3, BinaryProtocol.parseVersionReply("V,3,56"));
+        assertEquals(0, BinaryProtocol.parseVersionReply("proximity"));
+        assertEquals(0, BinaryProtocol.parseVersionReply("Execute cmd = V, paramsCnt = 1"));
+    }
+
+    @Test
+    public void parseReply_ack() throws Exception {
+        int[] params = BinaryProtocol.parseReply("K,12,56", BinaryProtocol.ACK_COMMAND);
+        assertArrayEquals(new int[]{12, 56}, params);
+        assertNull(BinaryProtocol.parseReply("K,12,56", BinaryProtocol.NAK_COMMAND));
+    }
+
+    @Test
+    public void encodeControl_stopOutsideSequence() throws Exception {
+        byte[] buffer = new byte[16];
+        assertEquals(5, BinaryProtocol.encodeControl("S;", 12, buffer, 0));
+        assertEquals((byte) 0xA6, buffer[0]);
+        assertEquals((byte) 'S', buffer[1]);
+        assertEquals(12, buffer[2]);
+        assertEquals(0, buffer[3]);
+        assertEquals(BinaryProtocol.crc8(buffer, 1, 3), buffer[4]);
+    }
+
+    @Test
+    public void parseReply_controlAck() throws Exception {
+        assertArrayEquals(new int[]{12}, BinaryProtocol.parseReply("C,12", BinaryProtocol.CONTROL_ACK_COMMAND));
+        assertNull(BinaryProtocol.parseReply("Command too long", BinaryProtocol.CONTROL_ACK_COMMAND));
+    }
+}
@@ -0,0 +1,137 @@
+package com.jkauflin.johnbot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the conditional, compressed fetch of the content data (against a local
+ * HTTP server standing in for the data url)
+ */
+public class ContentFetcherTest {
+
+    private static final String ETAG = "\"v42\"";
+    private static final String LAST_MODIFIED = "Fri, 16 Oct 2026 12:00:00 GMT";
+    private static final String BODY = "{\"version\":\"42\",\"tableList\":[]}";
+
+    private HttpServer server;
+    private String url;
+    private int requestCnt = 0;
+    private String lastAcceptEncoding = null;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/data", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requestCnt++;
+                lastAcceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                if (ETAG.equals(ifNoneMatch)) {
+                    exchange.getResponseHeaders().set("ETag", ETAG);
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+                gzip.write(BODY.getBytes("UTF-8"));
+                gzip.close();
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                exchange.getResponseHeaders().set("Last-Modified", LAST_MODIFIED);
+                exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, bytes.size());
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes.toByteArray());
+                out.close();
+            }
+        });
+        server.createContext("/missing", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:"+server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop(0);
+    }
+
+    @Test
+    public void fetch_withoutValidatorsGetsGzipBody() throws Exception {
+        ContentFetcher.Result result = new ContentFetcher(2000, 2000).fetch(url+"/data", null, null);
+        try {
+            assertFalse(result.isNotModified());
+            assertEquals("gzip", lastAcceptEncoding);
+            assertEquals(BODY, readAll(result.getBody()));
+            assertEquals(ETAG, result.etag);
+            assertEquals(LAST_MODIFIED, result.lastModified);
+        } finally {
+            result.close();
+        }
+    }
+
+    @Test
+    public void fetch_withMatchingEtagIsNotModified() throws Exception {
+        ContentFetcher.Result result = new ContentFetcher(2000, 2000).fetch(url+"/data", ETAG, LAST_MODIFIED);
+        try {
+            assertTrue(result.isNotModified());
+            assertNull(result.getBody());
+            assertEquals(ETAG, result.etag);
+            // Kept from the request when the 304 doesn't send it
+            assertEquals(LAST_MODIFIED, result.lastModified);
+        } finally {
+            result.close();
+        }
+        assertEquals(1, requestCnt);
+    }
+
+    @Test
+    public void fetch_withOldEtagGetsBody() throws Exception {
+        ContentFetcher.Result result = new ContentFetcher(2000, 2000).fetch(url+"/data", "\"v41\"", null);
+        try {
+            assertFalse(result.isNotModified());
+            assertEquals(BODY, readAll(result.getBody()));
+        } finally {
+            result.close();
+        }
+    }
+
+    @Test
+    public void fetch_errorStatusThrows() throws Exception {
+        try {
+            new ContentFetcher(2000, 2000).fetch(url+"/missing", null, null);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("404"));
+        }
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int len;
+        while ((len = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, len);
+        }
+        return bytes.toString("UTF-8");
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for swapping the content while leases on it are in use
+ */
+public class ContentStoreTest {
+
+    private List<String> retiredList;
+    private ContentStore<String> store;
+
+    @Before
+    public void setUp() {
+        retiredList = new ArrayList<String>();
+        store = new ContentStore<String>(new ContentStore.Retirer<String>() {
+            public void retire(String content) {
+                retiredList.add(content);
+            }
+        });
+    }
+
+    @Test
+    public void acquire_emptyStoreReturnsNull() {
+        assertNull(store.acquire());
+        assertFalse(store.hasContent());
+    }
+
+    @Test
+    public void swap_unusedContentIsRetiredNow() {
+        store.swap("gen1");
+        store.swap("gen2");
+        assertEquals(1, retiredList.size());
+        assertEquals("gen1", retiredList.get(0));
+
+        ContentStore.Lease<String> lease = store.acquire();
+        assertEquals("gen2", lease.get());
+        lease.release();
+        assertEquals(1, retiredList.size());
+    }
+
+    @Test
+    public void swap_leasedContentIsRetiredOnRelease() {
+        store.swap("gen1");
+        ContentStore.Lease<String> lease = store.acquire();
+        store.swap("gen2");
+
+        // The reader keeps the content it started with
+        assertTrue(retiredList.isEmpty());
+        assertEquals("gen1", lease.get());
+        assertEquals("gen2", store.acquire().get());
+
+        lease.release();
+        assertEquals(1, retiredList.size());
+        assertEquals("gen1", retiredList.get(0));
+    }
+
+    @Test
+    public void release_twiceIsIgnored() {
+        store.swap("gen1");
+        ContentStore.Lease<String> lease1 = store.acquire();
+        ContentStore.Lease<String> lease2 = store.acquire();
+        store.swap("gen2");
+
+        lease1.release();
+        lease1.release();
+        assertTrue(retiredList.isEmpty());
+        lease2.release();
+        assertEquals(1, retiredList.size());
+        assertEquals(1, store.getRetiredCnt());
+        assertEquals(2, store.getSwapCnt());
+    }
+
+    @Test
+    public void close_retiresCurrentContent() {
+        store.swap("gen1");
+        store.close();
+        assertFalse(store.hasContent());
+        assertNull(store.acquire());
+        assertEquals(1, retiredList.size());
+    }
+
+}
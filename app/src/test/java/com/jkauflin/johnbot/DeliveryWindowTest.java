@@ -0,0 +1,132 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the window of binary frames waiting for an ack from the robot
+ */
+public class DeliveryWindowTest {
+
+    private static final long MS = 1000000;
+
+    @Test
+    public void canSend_limitedByWindow() throws Exception {
+        DeliveryWindow window = new DeliveryWindow();
+        window.reset(20);
+        byte[] frame = new byte[8];
+        assertTrue(window.canSend(8, 0));
+        window.sent(frame, 0, 8, 0);
+        window.sent(frame, 0, 8, 0);
+        assertFalse(window.canSend(8, 0));
+        assertTrue(window.canSend(4, 0));
+        assertFalse(window.canSend(4, 8));
+        assertEquals(16, window.getInFlightBytes());
+    }
+
+    @Test
+    public void canSend_bigFrameWhenNothingInFlight() throws Exception {
+        DeliveryWindow window = new DeliveryWindow();
+        window.reset(20);
+        assertTrue(window.canSend(100, 8));
+    }
+
+    @Test
+    public void ack_isCumulativeAndAcrossWrap() throws Exception {
+        DeliveryWindow window = new DeliveryWindow();
+        window.reset(1000);
+        byte[] frame = new byte[4];
+        for (int i = 0; i < 254; i++) {
+            window.sent(frame, 0, 4, 0);
+            window.ack(window.getNextSeq() - 1, 0, 0);
+        }
+        // Sequence numbers 254, 255, 0, 1
+        for (int i = 0; i < 4; i++) {
+            window.sent(frame, 0, 4, 0);
+        }
+        assertEquals(3, window.ack(0, 40, 0));
+        assertEquals(1, window.getUnackedCnt());
+        assertEquals(40, window.getWindowBytes());
+        // An old ack does nothing
+        assertEquals(0, window.ack(200, 0, 0));
+        assertEquals(1, window.ack(1, 0, 0));
+    }
+
+    @Test
+    public void nak_retransmitsFromLostFrame() throws Exception {
+        DeliveryWindow window = new DeliveryWindow();
+        window.reset(100);
+        for (int seq = 0; seq < 3; seq++) {
+            window.sent(new byte[]{(byte) seq, (byte) seq}, 0, 2, 0);
+        }
+        // Frame 0 arrived, frame 1 was lost
+        window.nak(1, MS);
+        assertTrue(window.isRetransmitDue(MS));
+        byte[] buffer = new byte[window.getInFlightBytes()];
+        assertEquals(4, window.copyForRetransmit(buffer, 0, MS));
+        assertArrayEquals(new byte[]{1, 1, 2, 2}, buffer);
+        assertFalse(window.isRetransmitDue(MS));
+        assertEquals(2, window.getRetransmitCnt());
+    }
+
+    @Test
+    public void timeout_retransmitsUnacked() throws Exception {
+        DeliveryWindow window = new DeliveryWindow();
+        window.reset(100);
+        window.sent(new byte[3], 0, 3, 0);
+        long timeoutNs = DeliveryWindow.RETRANSMIT_TIMEOUT_MS * MS;
+        assertFalse(window.isRetransmitDue(timeoutNs - MS));
+        assertEquals(1, window.getMsToTimeout(timeoutNs - MS));
+        assertTrue(window.isRetransmitDue(timeoutNs));
+        assertEquals(1, window.getTimeoutCnt());
+    }
+
+    @Test
+    public void controlSent_dropsUnackedFrames() throws Exception {
+        DeliveryWindow window = new DeliveryWindow();
+        window.reset(100);
+        window.sent(new byte[]{1, 1}, 0, 2, 0);
+        window.sent(new byte[]{2, 2}, 0, 2, 0);
+        window.controlSent(new byte[]{9, 9, 9}, 0, 3, MS);
+        assertEquals(0, window.getUnackedCnt());
+        assertEquals(0, window.getInFlightBytes());
+        assertEquals(2, window.getDroppedCnt());
+        assertTrue(window.isControlUnacked());
+        // Not in the sequence - the next frame still gets 2
+        assertEquals(2, window.getNextSeq());
+
+        // Sent again (first) if the ack times out
+        window.sent(new byte[]{3, 3}, 0, 2, MS);
+        long timeoutNs = MS + DeliveryWindow.RETRANSMIT_TIMEOUT_MS * MS;
+        assertTrue(window.isRetransmitDue(timeoutNs));
+        byte[] buffer = new byte[window.getRetransmitBytes()];
+        assertEquals(5, window.copyForRetransmit(buffer, 0, timeoutNs));
+        assertArrayEquals(new byte[]{9, 9, 9, 3, 3}, buffer);
+    }
+
+    @Test
+    public void ackControl_onlyForItsSequence() throws Exception {
+        DeliveryWindow window = new DeliveryWindow();
+        window.reset(100);
+        window.sent(new byte[2], 0, 2, 0);
+        window.controlSent(new byte[3], 0, 3, 0);
+        assertFalse(window.ackControl(0));
+        assertTrue(window.ackControl(1));
+        assertFalse(window.isControlUnacked());
+        assertFalse(window.isRetransmitDue(DeliveryWindow.RETRANSMIT_TIMEOUT_MS * MS));
+    }
+
+    @Test
+    public void ack_afterControlAcksIt() throws Exception {
+        DeliveryWindow window = new DeliveryWindow();
+        window.reset(100);
+        window.controlSent(new byte[3], 0, 3, 0);
+        window.sent(new byte[2], 0, 2, 0);
+        // An old ack (from before the control frame) doesn't
+        window.ack(255, 0, 0);
+        assertTrue(window.isControlUnacked());
+        window.ack(0, 0, 0);
+        assertFalse(window.isControlUnacked());
+    }
+}
@@ -0,0 +1,64 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the ring buffer frame parser used by BluetoothServices
+ */
+public class FrameParserTest {
+
+    private static ByteArrayInputStream stream(String str) {
+        return new ByteArrayInputStream(str.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void nextFrame_splitsOnSemiColon() throws Exception {
+        FrameParser parser = new FrameParser(64);
+        parser.readFrom(stream("proximity;Status currMs = 5000, sonarCm = 20;Exec"));
+        assertEquals("proximity", parser.nextFrame());
+        assertEquals("Status currMs = 5000, sonarCm = 20", parser.nextFrame());
+        assertNull(parser.nextFrame());
+
+        // The rest of the partial frame arrives in the next block
+        parser.readFrom(stream("ute cmd = E;"));
+        assertEquals("Execute cmd = E", parser.nextFrame());
+        assertNull(parser.nextFrame());
+    }
+
+    @Test
+    public void nextFrame_wrapsAroundTheRing() throws Exception {
+        FrameParser parser = new FrameParser(16);
+        // The second frame is split across the end and the start of the buffer
+        ByteArrayInputStream in = stream("0123456789;abcdefghij;");
+        StringBuilder frames = new StringBuilder();
+        while (parser.readFrom(in) > 0) {
+            String frame;
+            while ((frame = parser.nextFrame()) != null) {
+                frames.append(frame).append('|');
+            }
+        }
+        assertEquals("0123456789|abcdefghij|", frames.toString());
+        assertEquals(0, parser.getDroppedCnt());
+    }
+
+    @Test
+    public void readFrom_dropsFrameLongerThanBuffer() throws Exception {
+        FrameParser parser = new FrameParser(16);
+        ByteArrayInputStream in = stream("0123456789abcdefXYZ;ok;");
+        StringBuilder frames = new StringBuilder();
+        while (parser.readFrom(in) > 0) {
+            String frame;
+            while ((frame = parser.nextFrame()) != null) {
+                frames.append(frame).append('|');
+            }
+        }
+        assertEquals(1, parser.getDroppedCnt());
+        // The tail of the dropped frame is skipped
+        assertEquals("ok|", frames.toString());
+    }
+}
@@ -0,0 +1,69 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the approximate keyword match cost as the keyword table grows (timing depends on
+ * the machine, so it is not part of the regular tests - remove the @Ignore to run it by hand)
+ */
+public class FuzzyMatcherBenchmark {
+
+    private static final long BUDGET_NS = 5000000L;
+
+    @Ignore("Benchmark - run by hand")
+    @Test
+    public void costBoundedAsKeywordsGrow() {
+        Random random = new Random(42);
+        int[] sizeList = {1000, 10000, 50000};
+        for (int size : sizeList) {
+            String[] keywords = randomKeywords(random, size);
+            FuzzyMatcher matcher = new FuzzyMatcher(keywords);
+            String[] commandList = misrecognizedCommands(random, keywords, 200);
+            // Warm up
+            for (String command : commandList) {
+                matcher.find(command, BUDGET_NS);
+            }
+
+            int maxCandidates = 0;
+            long startNs = System.nanoTime();
+            for (String command : commandList) {
+                matcher.find(command, BUDGET_NS);
+                maxCandidates = Math.max(maxCandidates, matcher.getLastCandidateCnt());
+            }
+            long avgNs = (System.nanoTime() - startNs) / commandList.length;
+            assertTrue("keywords = "+size+", max candidates = "+maxCandidates, maxCandidates <= 32);
+            assertTrue("keywords = "+size+", avg ns = "+avgNs, avgNs < BUDGET_NS);
+        }
+    }
+
+    // Random keywords of 5 to 12 letters
+    static String[] randomKeywords(Random random, int size) {
+        String[] keywords = new String[size];
+        for (int k = 0; k < size; k++) {
+            int length = 5 + random.nextInt(8);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                sb.append((char) ('a' + random.nextInt(26)));
+            }
+            keywords[k] = sb.toString();
+        }
+        return keywords;
+    }
+
+    // Commands with a keyword the recognizer got one letter wrong
+    static String[] misrecognizedCommands(Random random, String[] keywords, int cnt) {
+        String[] commandList = new String[cnt];
+        for (int i = 0; i < cnt; i++) {
+            char[] keyword = keywords[random.nextInt(keywords.length)].toCharArray();
+            keyword[random.nextInt(keyword.length)] = (char) ('a' + random.nextInt(26));
+            commandList[i] = "please "+new String(keyword)+" now";
+        }
+        return commandList;
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the approximate keyword match (the benchmark of its cost is in
+ * FuzzyMatcherBenchmark)
+ */
+public class FuzzyMatcherTest {
+
+    private static final long BUDGET_NS = 5000000L;
+    private static final long NO_BUDGET_NS = 60000000000L;
+
+    // Keywords like the ones in the content
+    private static final String[] KEYWORDS = {"hello", "what time", "who are you", "tell me a joke",
+            "weather", "thank you", "how are you", "good morning"};
+
+    @Test
+    public void find_misrecognizedKeyword() {
+        FuzzyMatcher matcher = new FuzzyMatcher(KEYWORDS);
+        assertEquals(0, matcher.find("helo there", BUDGET_NS));
+        assertEquals(1, matcher.find("wat time is it", BUDGET_NS));
+        assertEquals(4, matcher.find("how is the wether today", BUDGET_NS));
+        assertEquals(7, matcher.find("good mourning john", BUDGET_NS));
+        FuzzyMatcher longer = new FuzzyMatcher(new String[]{"tell me about robots"});
+        assertEquals(0, longer.find("tell me abot robot", BUDGET_NS));
+    }
+
+    @Test
+    public void find_noMatchForUnrelatedText() {
+        FuzzyMatcher matcher = new FuzzyMatcher(KEYWORDS);
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("turn on the lights", BUDGET_NS));
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("the other one", BUDGET_NS));
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("shut the door", BUDGET_NS));
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("help me", BUDGET_NS));
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("what is it", BUDGET_NS));
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("open the door", BUDGET_NS));
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("", BUDGET_NS));
+    }
+
+    @Test
+    public void find_onlyWholeWords() {
+        FuzzyMatcher matcher = new FuzzyMatcher(new String[]{"weather", "hello"});
+        // Close enough, but inside other words
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("featherweight", BUDGET_NS));
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("read othello", BUDGET_NS));
+        assertEquals(0, matcher.find("the weathers", BUDGET_NS));
+    }
+
+    @Test
+    public void find_oneErrorForShortKeywords() {
+        FuzzyMatcher matcher = new FuzzyMatcher(new String[]{"hello"});
+        assertEquals(0, matcher.find("hallo", BUDGET_NS));
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("hallow", BUDGET_NS));
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("help", BUDGET_NS));
+    }
+
+    @Test
+    public void find_shortKeywordsOnlyExact() {
+        FuzzyMatcher matcher = new FuzzyMatcher(new String[]{"cat"});
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("cut", BUDGET_NS));
+    }
+
+    @Test
+    public void find_fewestErrorsWins() {
+        FuzzyMatcher matcher = new FuzzyMatcher(new String[]{"weathers", "weather"});
+        assertEquals(1, matcher.find("the weather", BUDGET_NS));
+        // Same errors - lowest index
+        FuzzyMatcher tie = new FuzzyMatcher(new String[]{"weather", "weather"});
+        assertEquals(0, tie.find("the wether", BUDGET_NS));
+    }
+
+    @Test
+    public void find_zeroBudgetChecksNothing() {
+        FuzzyMatcher matcher = new FuzzyMatcher(new String[]{"weather"});
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("wether", -1));
+        assertEquals(0, matcher.getLastCandidateCnt());
+        assertFalse(matcher.isLastSearchComplete());
+    }
+
+    @Test
+    public void find_completeWhenNoCandidates() {
+        FuzzyMatcher matcher = new FuzzyMatcher(new String[]{"weather"});
+        // Nothing left to check when the budget runs out, so the miss is sure
+        assertEquals(FuzzyMatcher.NO_MATCH, matcher.find("stop now", -1));
+        assertTrue(matcher.isLastSearchComplete());
+        assertEquals(0, matcher.find("wether", NO_BUDGET_NS));
+        assertTrue(matcher.isLastSearchComplete());
+    }
+
+    @Test
+    public void find_candidatesCappedAsKeywordsGrow() {
+        Random random = new Random(42);
+        String[] keywords = FuzzyMatcherBenchmark.randomKeywords(random, 10000);
+        FuzzyMatcher matcher = new FuzzyMatcher(keywords);
+        int foundCnt = 0;
+        for (String command : FuzzyMatcherBenchmark.misrecognizedCommands(random, keywords, 100)) {
+            // No budget to run out (the count checked is only capped by MAX_CANDIDATES)
+            if (matcher.find(command, NO_BUDGET_NS) != FuzzyMatcher.NO_MATCH) {
+                foundCnt++;
+            }
+            assertTrue(matcher.getLastCandidateCnt() <= 32);
+        }
+        assertTrue(foundCnt > 90);
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import com.jkauflin.johnbot.IntentRouter.BotIntent;
+
+/**
+ * Local unit tests for the command routing (no Android needed)
+ */
+public class IntentRouterTest {
+    private final IntentRouter router = IntentRouter.createDefault();
+
+    private BotIntent route(String command) {
+        return router.route(command, 0).intent;
+    }
+
+    @Test
+    public void route_builtInCommands() throws Exception {
+        assertEquals(BotIntent.STOP, route("stop"));
+        assertEquals(BotIntent.PLAY_MUSIC, route("play some music"));
+        assertEquals(BotIntent.CONNECT, route("reconnect"));
+        assertEquals(BotIntent.WAKE_UP, route("wake up"));
+        assertEquals(BotIntent.WAKE_UP, route("hey john are you there"));
+        assertEquals(BotIntent.LIGHTS_OFF, route("turn the lights off"));
+        assertEquals(BotIntent.JOKE, route("tell me a joke"));
+        assertEquals(BotIntent.RESPONSE, route("who are you"));
+    }
+
+    @Test
+    public void route_priorityFollowsOrder() throws Exception {
+        // "stop" only matches exactly
+        assertEquals(BotIntent.RESPONSE, route("don't stop"));
+        // "turn off" is sleep, even though it contains "turn"
+        assertEquals(BotIntent.SLEEP, route("turn off"));
+        // "light on" is checked before "joke"
+        assertEquals(BotIntent.LIGHTS_ON, route("light on joke"));
+        // "arm" is checked before "move"
+        assertEquals(BotIntent.ARM, route("move your arm up"));
+    }
+
+    @Test
+    public void route_modes() throws Exception {
+        assertEquals(BotIntent.USER_NAME, router.route("john", IntentRouter.MODE_USER_IDENTIFICATION).intent);
+        // Commands before the mode rules still win
+        assertEquals(BotIntent.STOP, router.route("stop", IntentRouter.MODE_USER_IDENTIFICATION).intent);
+        assertEquals(BotIntent.REPEAT, router.route("walk the dog", IntentRouter.MODE_REPEAT).intent);
+        assertEquals(BotIntent.JOKE_ANSWER, router.route("i don't know", IntentRouter.MODE_JOKE).intent);
+        assertEquals(BotIntent.REPEAT_START, router.route("repeat after me", IntentRouter.MODE_JOKE).intent);
+    }
+
+    @Test
+    public void route_modifiers() throws Exception {
+        IntentRouter.Result result = router.route("turn left", 0);
+        assertEquals(BotIntent.MOVE, result.intent);
+        assertTrue(result.has(IntentRouter.MOD_TURN));
+        assertTrue(result.has(IntentRouter.MOD_LEFT));
+        assertFalse(result.has(IntentRouter.MOD_RIGHT));
+
+        result = router.route("run backward", 0);
+        assertEquals(BotIntent.MOVE, result.intent);
+        assertTrue(result.has(IntentRouter.MOD_FAST));
+        assertTrue(result.has(IntentRouter.MOD_BACKWARD));
+
+        result = router.route("walk around", 0);
+        assertTrue(result.has(IntentRouter.MOD_WALK));
+        assertTrue(result.has(IntentRouter.MOD_AROUND));
+    }
+
+    @Test
+    public void dispatch_callsRegisteredHandler() throws Exception {
+        final StringBuilder handled = new StringBuilder();
+        router.register(BotIntent.HEAD, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                handled.append(command);
+            }
+        });
+        assertTrue(router.dispatch("turn your head right", 0));
+        assertEquals("turn your head right", handled.toString());
+        assertFalse(router.dispatch("stop", 0));
+    }
+}
@@ -0,0 +1,72 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for dealing the joke deck and picking it up after a restart
+ */
+public class JokeDeckTest {
+
+    private static final int[] IDS = {3, 7, 12, 20, 41};
+
+    private static JokeDeck newDeck(long seed) {
+        return new JokeDeck(IDS, seed);
+    }
+
+    @Test
+    public void next_dealsEveryJokeOnceBeforeRepeating() {
+        JokeDeck deck = newDeck(99);
+        Set<Integer> dealt = new HashSet<Integer>();
+        for (int i = 0; i < IDS.length; i++) {
+            assertTrue(dealt.add(deck.next()));
+        }
+        assertEquals(IDS.length, dealt.size());
+
+        // Shuffled again for the next round
+        int index = deck.next();
+        assertTrue(index >= 0 && index < IDS.length);
+        assertEquals(1, deck.getPosition());
+    }
+
+    @Test
+    public void next_emptyDeckHasNoJoke() {
+        JokeDeck deck = new JokeDeck(new int[0], 1);
+        assertEquals(JokeDeck.NO_JOKE, deck.next());
+    }
+
+    @Test
+    public void restore_continuesTheSameDeal() {
+        JokeDeck deck = newDeck(1234);
+        deck.next();
+        deck.next();
+
+        JokeDeck restarted = newDeck(5678);
+        assertTrue(restarted.restore(deck.getSignature(), deck.getSeed(), deck.getPosition()));
+        for (int i = 2; i < IDS.length; i++) {
+            assertEquals(deck.next(), restarted.next());
+        }
+    }
+
+    @Test
+    public void restore_differentJokesIsIgnored() {
+        JokeDeck deck = newDeck(1234);
+        JokeDeck other = new JokeDeck(new int[]{3, 7}, 1);
+        assertFalse(other.restore(deck.getSignature(), 1234, 2));
+        assertEquals(0, other.getPosition());
+    }
+
+    @Test
+    public void indexOf_findsJokeById() {
+        JokeDeck deck = newDeck(1);
+        int index = deck.indexOf(20);
+        assertEquals(3, index);
+        assertEquals(20, deck.getId(index));
+        assertEquals(JokeDeck.NO_JOKE, deck.indexOf(8));
+    }
+
+}
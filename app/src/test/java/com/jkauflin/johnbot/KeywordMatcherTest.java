@@ -0,0 +1,46 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the keyword automaton used by DatabaseHandler.getResponse
+ */
+public class KeywordMatcherTest {
+    private static final String[] KEYWORDS = {"who are you", "shut up", "you up", "you do", "love me", "rum gone"};
+
+    @Test
+    public void find_returnsKeywordContainedInCommand() throws Exception {
+        KeywordMatcher matcher = new KeywordMatcher(KEYWORDS);
+        assertEquals(0, matcher.find("hey who are you"));
+        assertEquals(5, matcher.find("why is the rum gone"));
+        assertEquals(KeywordMatcher.NO_MATCH, matcher.find("tell me about the weather"));
+    }
+
+    @Test
+    public void find_lowestIndexWinsLikeTableScan() throws Exception {
+        KeywordMatcher matcher = new KeywordMatcher(KEYWORDS);
+        // "shut up" and "you up" are both in the command, the first row wins
+        assertEquals(1, matcher.find("you up shut up"));
+        // Overlapping keywords found through the failure links
+        assertEquals(1, new KeywordMatcher(new String[]{"xyou up", "you up", "u up"}).find("are you up"));
+        assertEquals(1, new KeywordMatcher(new String[]{"you up", "u up"}).find("are u up"));
+    }
+
+    @Test
+    public void find_matchesSameAsContains() throws Exception {
+        String[] keywords = {"aab", "ab", "bab", "b", "abba", "ba"};
+        KeywordMatcher matcher = new KeywordMatcher(keywords);
+        String[] commands = {"", "a", "aa", "aabba", "babab", "abab", "cabbac", "ccc"};
+        for (String command : commands) {
+            int expected = KeywordMatcher.NO_MATCH;
+            for (int k = 0; k < keywords.length && expected == KeywordMatcher.NO_MATCH; k++) {
+                if (command.contains(keywords[k])) {
+                    expected = k;
+                }
+            }
+            assertEquals(command, expected, matcher.find(command));
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the outbound command queue used by the Bluetooth writer thread
+ */
+public class OutboundQueueTest {
+
+    // Batch buffer of the test "writer thread"
+    private final OutboundQueue.Batch writerBatch = new OutboundQueue.Batch();
+
+    private String batch(OutboundQueue queue) throws Exception {
+        int len = queue.takeBatch(writerBatch);
+        return new String(writerBatch.getBuffer(), 0, len, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void takeBatch_coalescesPendingFrames() throws Exception {
+        OutboundQueue queue = new OutboundQueue(8);
+        assertTrue(queue.offer("E,260,40,260;"));
+        assertTrue(queue.offer("H,110,20,50,20,85;"));
+        assertTrue(queue.offer("A,100,20,75;"));
+        assertEquals(3, queue.getQueueDepth());
+
+        assertEquals("E,260,40,260;H,110,20,50,20,85;A,100,20,75;", batch(queue));
+        queue.writeDone(writerBatch);
+        assertEquals(0, queue.getQueueDepth());
+        assertEquals(1, queue.getWriteCnt());
+        assertEquals(3, queue.getFrameCnt());
+    }
+
+    @Test
+    public void offer_dropsWhenFull() throws Exception {
+        OutboundQueue queue = new OutboundQueue(2);
+        assertTrue(queue.offer("E,500;"));
+        assertTrue(queue.offer("H,20;"));
+        assertFalse(queue.offer("A,40;"));
+        assertEquals(1, queue.getDroppedCnt());
+    }
+
+    @Test
+    public void offer_keepsEveryFrameForActuatorInOrder() throws Exception {
+        OutboundQueue queue = new OutboundQueue(8);
+        queue.offer("H,20;");
+        queue.offer("A,40;");
+        queue.offer("H,140;");
+        assertEquals(3, queue.getQueueDepth());
+        assertEquals(0, queue.getSupersededCnt());
+        assertEquals("H,20;A,40;H,140;", batch(queue));
+    }
+
+    @Test
+    public void offer_stopJumpsQueueAndDiscardsMotion() throws Exception {
+        OutboundQueue queue = new OutboundQueue(8);
+        queue.offer("E,260,40,260;H,110,20,50,20,85;A,100,20,75;");
+        queue.offer("F,2,1,50,2000,2,3,50,2000;");
+        queue.offer("S;");
+        queue.offer("E,500,40,500;");
+        assertEquals(4, queue.getSupersededCnt());
+        assertEquals("S;E,500,40,500;", batch(queue));
+    }
+
+    @Test
+    public void binaryMode_sendsOnlyWhatFitsInWindow() throws Exception {
+        OutboundQueue queue = new OutboundQueue(8);
+        // 5 byte frames (sync, opcode, sequence, length 0, crc)
+        queue.setBinaryMode(true, 17);
+        queue.offer("E;H;A;");
+        assertEquals(5, queue.takeBatch(writerBatch));
+        queue.writeDone(writerBatch);
+        // The reserve for a STOP leaves no room for another motion frame, but a STOP still fits
+        queue.offer("S;");
+        assertEquals(5, queue.takeBatch(writerBatch));
+        assertEquals((byte) BinaryProtocol.CONTROL_SYNC, writerBatch.getBuffer()[0]);
+        assertEquals((byte) 'S', writerBatch.getBuffer()[1]);
+        queue.writeDone(writerBatch);
+        // The STOP control frame made the unacked motion frame obsolete
+        assertEquals(0, queue.getUnackedCnt());
+        assertTrue(queue.isControlUnacked());
+
+        // The next motion frame goes on with sequence number 1
+        queue.offer("H;");
+        assertEquals(5, queue.takeBatch(writerBatch));
+        assertEquals((byte) BinaryProtocol.SYNC, writerBatch.getBuffer()[0]);
+        assertEquals(1, writerBatch.getBuffer()[2]);
+
+        // The robot acks it, so it got the STOP too
+        queue.ack(1, 17);
+        assertEquals(0, queue.getUnackedCnt());
+        assertFalse(queue.isControlUnacked());
+
+        // Lost - sent again after a nak
+        queue.offer("A;");
+        assertEquals(5, queue.takeBatch(writerBatch));
+        queue.nak(2);
+        assertEquals(5, queue.takeBatch(writerBatch));
+        assertEquals(2, writerBatch.getBuffer()[2]);
+        assertEquals(1, queue.getRetransmitCnt());
+    }
+
+    @Test
+    public void binaryMode_dropsFrameThatCannotBeEncoded() throws Exception {
+        OutboundQueue queue = new OutboundQueue(8);
+        queue.setBinaryMode(true, 100);
+        // The head position is more than 32 bits - not sent as ASCII between the binary frames
+        queue.offer("H,4294967296;E;");
+        assertEquals(5, queue.takeBatch(writerBatch));
+        assertEquals((byte) BinaryProtocol.SYNC, writerBatch.getBuffer()[0]);
+        assertEquals((byte) 'E', writerBatch.getBuffer()[1]);
+        assertEquals(0, writerBatch.getBuffer()[2]);
+        queue.writeDone(writerBatch);
+        assertEquals(1, queue.getDroppedCnt());
+        assertEquals(1, queue.getUnackedCnt());
+        assertEquals(1, queue.getFrameCnt());
+
+        // A STOP that can't be encoded is still sent (as a plain S control frame)
+        queue.offer("X,abc;");
+        assertEquals(5, queue.takeBatch(writerBatch));
+        assertEquals((byte) BinaryProtocol.CONTROL_SYNC, writerBatch.getBuffer()[0]);
+        assertEquals((byte) 'S', writerBatch.getBuffer()[1]);
+    }
+
+    @Test
+    public void binaryMode_stopNotHeldBehindLostFrame() throws Exception {
+        OutboundQueue queue = new OutboundQueue(8);
+        queue.setBinaryMode(true, 100);
+        queue.offer("E;H;");
+        assertEquals(10, queue.takeBatch(writerBatch));
+        queue.writeDone(writerBatch);
+        // The robot lost E, and a STOP is offered before the frames are sent again
+        queue.nak(0);
+        queue.offer("S;");
+        assertEquals(5, queue.takeBatch(writerBatch));
+        assertEquals((byte) BinaryProtocol.CONTROL_SYNC, writerBatch.getBuffer()[0]);
+        assertEquals(2, writerBatch.getBuffer()[2]);
+        queue.writeDone(writerBatch);
+        assertEquals(0, queue.getUnackedCnt());
+
+        // The STOP was lost too - it is sent again on the next nak (and not E and H)
+        queue.nak(0);
+        assertEquals(5, queue.takeBatch(writerBatch));
+        assertEquals((byte) BinaryProtocol.CONTROL_SYNC, writerBatch.getBuffer()[0]);
+        queue.ackControl(2);
+        assertFalse(queue.isControlUnacked());
+    }
+
+    @Test
+    public void stop_waitsForAtMostOneBatchInProgress() throws Exception {
+        OutboundQueue queue = new OutboundQueue(64);
+        String motion = "E,260,40,260,40,260;H,110,20,50,20,110,20,85;A,100,20,50,20,75;";
+
+        // Fake writer - each batch is "written" while more motion is offered (more than one
+        // batch can take) and a STOP now and then.  The STOP is first in the very next batch, so
+        // it waits for at most the write in progress - never more than MAX_BATCH_BYTES (the
+        // STOP latency bound, in bytes on the link)
+        queue.offer(motion);
+        for (int i = 0; i < 40; i++) {
+            String inProgress = batch(queue);
+            assertTrue(inProgress.length() <= OutboundQueue.MAX_BATCH_BYTES);
+            assertFalse(inProgress.contains("S;"));
+            queue.offer(motion);
+            queue.offer(motion);
+            boolean stopOffered = (i % 4 == 2);
+            if (stopOffered) {
+                queue.offer("S;");
+            }
+            queue.offer("F,2,1,80,3000;");
+            queue.writeDone(writerBatch);
+            if (stopOffered) {
+                // Only the frames offered after it (the motion offered before it is discarded)
+                assertEquals("S;F,2,1,80,3000;", batch(queue));
+                queue.writeDone(writerBatch);
+                queue.offer(motion);
+            }
+        }
+        assertEquals(10, queue.getStopCnt());
+    }
+
+    @Test
+    public void binaryMode_batchesAtMostMaxBytesEncoded() throws Exception {
+        OutboundQueue queue = new OutboundQueue(64);
+        queue.setBinaryMode(true, 255);
+        for (int i = 0; i < 8; i++) {
+            queue.offer("E,260,40,260,40,260;H,110,20,50,20,110,20,85;");
+        }
+        int len = queue.takeBatch(writerBatch);
+        assertTrue(len > 0);
+        assertTrue(len <= OutboundQueue.MAX_BATCH_BYTES);
+        assertTrue(queue.getQueueDepth() > 0);
+    }
+
+    @Test
+    public void takeBatch_writersHaveTheirOwnBuffer() throws Exception {
+        OutboundQueue queue = new OutboundQueue(8);
+        OutboundQueue.Batch oldBatch = new OutboundQueue.Batch();
+        OutboundQueue.Batch newBatch = new OutboundQueue.Batch();
+        assertTrue(queue.offer("E,500;"));
+        assertEquals(6, queue.takeBatch(oldBatch));
+        queue.writeDone(oldBatch);
+
+        // The writer of a new connection doesn't fill the old writer's buffer
+        assertTrue(queue.offer("H,20;"));
+        assertEquals(5, queue.takeBatch(newBatch));
+        assertEquals("E,500;", new String(oldBatch.getBuffer(), 0, 6, StandardCharsets.US_ASCII));
+        assertEquals("H,20;", new String(newBatch.getBuffer(), 0, newBatch.getLength(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void writeDone_creditsTheWritersOwnBatch() throws Exception {
+        OutboundQueue queue = new OutboundQueue(8);
+        OutboundQueue.Batch oldBatch = new OutboundQueue.Batch();
+        OutboundQueue.Batch newBatch = new OutboundQueue.Batch();
+        assertTrue(queue.offer("S;E,500;"));
+        assertEquals(8, queue.takeBatch(oldBatch));
+
+        // After a reconnect, the new writer takes a batch before the old write is done
+        assertTrue(queue.offer("H,20;"));
+        assertEquals(5, queue.takeBatch(newBatch));
+        queue.writeDone(oldBatch);
+        assertEquals(1, queue.getStopCnt());
+        assertEquals(2, queue.getFrameCnt());
+        queue.writeDone(newBatch);
+        assertEquals(1, queue.getStopCnt());
+        assertEquals(3, queue.getFrameCnt());
+        assertEquals(2, queue.getWriteCnt());
+    }
+
+}
@@ -0,0 +1,146 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for when the listening is restarted after a command (the order of the handler,
+ * its reply, and the restart, through the same ReplyTracker calls MainActivity makes).  Only the
+ * tracker's restart Runnable records a restart
+ */
+public class ReplyTrackerTest {
+    private List<String> events;
+    private ReplyTracker tracker;
+    private IntentRouter router;
+    // Reply of the fake query, delivered later like a callback posted to the main thread
+    private Runnable pendingCallback;
+
+    @Before
+    public void setUp() {
+        events = new ArrayList<String>();
+        tracker = new ReplyTracker(new Runnable() {
+            public void run() {
+                events.add("restart");
+            }
+        });
+        pendingCallback = null;
+        router = IntentRouter.createDefault();
+        // Reply from an asynchronous query
+        router.register(IntentRouter.BotIntent.RESPONSE, new IntentRouter.IntentHandler() {
+            public void handle(final String command, int modifiers) {
+                tracker.expectReply();
+                pendingCallback = new Runnable() {
+                    public void run() {
+                        speak("reply to " + command, false);
+                        tracker.replyDone();
+                    }
+                };
+            }
+        });
+        // Spoken right in the handler
+        router.register(IntentRouter.BotIntent.FUNNY, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                speak("I know", false);
+            }
+        });
+        // Nothing said
+        router.register(IntentRouter.BotIntent.STOP, new IntentRouter.IntentHandler() {
+            public void handle(String command, int modifiers) {
+                events.add("stop");
+            }
+        });
+    }
+
+    // The recognizer result (MainActivity.onResults)
+    private void onResults(String command) {
+        tracker.dispatch(router, command, 0);
+        events.add("dispatched");
+    }
+
+    // The speech started by MainActivity.speak (the audio itself isn't part of the test)
+    private void speak(String text, boolean silent) {
+        events.add("speak");
+        if (!silent) {
+            tracker.speaking();
+        }
+    }
+
+    // The utterance is done (TTS onDone) - the tracker must not have restarted before this
+    private void onSpeechDone() {
+        assertFalse(events.contains("restart"));
+        events.add("done");
+        tracker.speechDone();
+    }
+
+    @Test
+    public void asyncReply_restartsOnlyAfterSpeechIsDone() {
+        onResults("what is the meaning of life");
+        assertTrue(tracker.isReplyPending());
+        assertEquals(Arrays.asList("dispatched"), events);
+
+        pendingCallback.run();
+        assertFalse(tracker.isReplyPending());
+        assertEquals(Arrays.asList("dispatched", "speak"), events);
+
+        onSpeechDone();
+        assertEquals(Arrays.asList("dispatched", "speak", "done", "restart"), events);
+    }
+
+    @Test
+    public void asyncReply_silentRestartsFromCallback() {
+        tracker.begin();
+        tracker.expectReply();
+        assertFalse(tracker.endDispatch());
+        speak("reply", true);
+        assertTrue(tracker.replyDone());
+        assertEquals(Arrays.asList("speak", "restart"), events);
+    }
+
+    @Test
+    public void syncSpeech_waitsForSpeechDone() {
+        onResults("that's funny");
+        assertEquals(Arrays.asList("speak", "dispatched"), events);
+        onSpeechDone();
+        assertEquals(Arrays.asList("speak", "dispatched", "done", "restart"), events);
+    }
+
+    @Test
+    public void noSpeech_restartsAtEndOfDispatch() {
+        onResults("stop");
+        assertEquals(Arrays.asList("stop", "restart", "dispatched"), events);
+    }
+
+    @Test
+    public void dispatch_returnsTrueOnlyWhenRestarted() {
+        assertTrue(tracker.dispatch(router, "stop", 0));
+        assertFalse(tracker.dispatch(router, "that's funny", 0));
+        assertFalse(tracker.dispatch(router, "what is the meaning of life", 0));
+        assertEquals(Arrays.asList("stop", "restart", "speak"), events);
+    }
+
+    @Test
+    public void dispatch_beginsEachCommandFresh() {
+        // A reply that never came doesn't hold the restart of the next command
+        onResults("what is the meaning of life");
+        assertTrue(tracker.isReplyPending());
+        onResults("stop");
+        assertFalse(tracker.isReplyPending());
+        assertEquals(Arrays.asList("dispatched", "stop", "restart", "dispatched"), events);
+    }
+
+    @Test
+    public void replyDone_ignoredWhenNoReplyPending() {
+        tracker.begin();
+        assertTrue(tracker.endDispatch());
+        // A late callback from an earlier command doesn't restart it again
+        assertFalse(tracker.replyDone());
+        assertEquals(Arrays.asList("restart"), events);
+    }
+
+}
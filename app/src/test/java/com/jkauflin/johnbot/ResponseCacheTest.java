@@ -0,0 +1,60 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the cache of responses to recent commands
+ */
+public class ResponseCacheTest {
+
+    @Test
+    public void get_hitAfterPut() {
+        ResponseCache cache = new ResponseCache(10);
+        assertNull(cache.get(1, "who are you"));
+        cache.put(1, "who are you", "I am John Bot");
+        assertEquals("I am John Bot", cache.get(1, "Who are  you?"));
+        assertEquals(1, cache.getHitCnt());
+        assertEquals(1, cache.getMissCnt());
+    }
+
+    @Test
+    public void get_cachesNoResponse() {
+        ResponseCache cache = new ResponseCache(10);
+        cache.put(1, "that's funny", "");
+        assertEquals("", cache.get(1, "That's funny!"));
+        assertEquals(1, cache.getNegativeHitCnt());
+        assertEquals(0, cache.getHitCnt());
+    }
+
+    @Test
+    public void put_dropsLeastRecentlyUsed() {
+        ResponseCache cache = new ResponseCache(2);
+        cache.put(1, "one", "1");
+        cache.put(1, "two", "2");
+        cache.get(1, "one");
+        cache.put(1, "three", "3");
+        assertEquals(2, cache.size());
+        assertNull(cache.get(1, "two"));
+        assertEquals("1", cache.get(1, "one"));
+        assertEquals(1, cache.getEvictedCnt());
+    }
+
+    @Test
+    public void get_newVersionDropsEverything() {
+        ResponseCache cache = new ResponseCache(10);
+        cache.put(1, "tell me a joke", "ok");
+        assertNull(cache.get(2, "tell me a joke"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getInvalidatedCnt());
+    }
+
+    @Test
+    public void normalize_collapsesCaseSpacesAndPunctuation() {
+        assertEquals("who are you", ResponseCache.normalize("  Who, are   YOU? "));
+        assertEquals("that's funny", ResponseCache.normalize("That's funny!"));
+        assertEquals("", ResponseCache.normalize(null));
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.jkauflin.johnbot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for writing the response store and searching it in the mapped file
+ */
+public class ResponseStoreTest {
+
+    private static final String[] KEYWORDS = {"how are you", "weather", "are you"};
+    private static final String[] RESPONSES = {"I am fine", "It is sunny", "Yes I am"};
+    private static final int[] JOKE_IDS = {4, 9};
+    private static final String[] QUESTIONS = {"Why did the chicken cross the road?", "Caf\u00e9 question?"};
+    private static final String[] ANSWERS = {"To get to the other side", "R\u00e9sum\u00e9"};
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("responses", ".store");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void findKeyword_matchesKeywordMatcher() throws Exception {
+        ResponseStore.write(file, KEYWORDS, RESPONSES, JOKE_IDS, QUESTIONS, ANSWERS);
+        ResponseStore store = ResponseStore.open(file);
+        KeywordMatcher matcher = new KeywordMatcher(KEYWORDS);
+        String[] commands = {"hey how are you today", "are you there", "what is the weather", "hello", ""};
+        for (String command : commands) {
+            assertEquals(command, matcher.find(command), store.findKeyword(command));
+        }
+        assertEquals("I am fine", store.getResponse(store.findKeyword("how are you")));
+        assertEquals(ResponseStore.NO_MATCH, store.findKeyword("hello"));
+    }
+
+    @Test
+    public void jokes_readByIndex() throws Exception {
+        ResponseStore.write(file, KEYWORDS, RESPONSES, JOKE_IDS, QUESTIONS, ANSWERS);
+        ResponseStore store = ResponseStore.open(file);
+        assertEquals(3, store.getResponseCnt());
+        assertEquals(2, store.getJokeCnt());
+        assertArrayEquals(JOKE_IDS, store.getJokeIdList());
+        assertEquals(9, store.getJokeId(1));
+        assertEquals(QUESTIONS[1], store.getJokeQuestion(1));
+        assertEquals(ANSWERS[0], store.getJokeAnswer(0));
+        assertEquals(ANSWERS[1], store.getJokeAnswer(1));
+    }
+
+    @Test
+    public void write_emptyContent() throws Exception {
+        ResponseStore.write(file, new String[0], new String[0], new int[0], new String[0], new String[0]);
+        ResponseStore store = ResponseStore.open(file);
+        assertEquals(0, store.getJokeCnt());
+        assertEquals(ResponseStore.NO_MATCH, store.findKeyword("anything"));
+    }
+
+    @Test
+    public void open_truncatedFileThrows() throws Exception {
+        ResponseStore.write(file, KEYWORDS, RESPONSES, JOKE_IDS, QUESTIONS, ANSWERS);
+        long length = file.length();
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.getChannel().truncate(length - 3);
+        out.close();
+        try {
+            ResponseStore.open(file);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("size"));
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the full-text search query and ranking
+ */
+public class SearchRankerTest {
+
+    @Test
+    public void buildMatchQuery_dropsStopWordsAndQuotes() throws Exception {
+        assertEquals("\"cats\"", SearchRanker.buildMatchQuery("Tell me a joke about cats"));
+        assertEquals("\"rum\" OR \"gone\"", SearchRanker.buildMatchQuery("Is the rum gone? rum!"));
+        assertEquals("", SearchRanker.buildMatchQuery("what is that"));
+        assertEquals("", SearchRanker.buildMatchQuery(null));
+    }
+
+    @Test
+    public void buildMatchQuery_noQuerySyntax() throws Exception {
+        assertEquals("\"cats\" OR \"near\" OR \"dogs\"", SearchRanker.buildMatchQuery("cats NEAR \"dogs*\""));
+    }
+
+    @Test
+    public void getTopic_wordsAfterAbout() throws Exception {
+        assertEquals("cats", SearchRanker.getTopic("tell me a joke about cats"));
+        assertEquals("space aliens", SearchRanker.getTopic("Joke About Space Aliens "));
+        assertEquals("", SearchRanker.getTopic("tell me a joke"));
+    }
+
+    @Test
+    public void score_rareTermsAndWeightedColumns() throws Exception {
+        // 1 phrase, 2 columns, 10 rows - found in column 0 (in 1 row overall)
+        int[] rare = {1, 2, 10, 1, 1, 1, 0, 3, 3};
+        // Found in column 1 only (in 3 rows)
+        int[] common = {1, 2, 10, 0, 0, 1, 1, 3, 3};
+        double[] weights = {1.0, 0.25};
+        double rareScore = SearchRanker.score(rare, weights);
+        assertEquals(Math.log(11.0), rareScore, 0.0001);
+        assertTrue(rareScore > SearchRanker.score(common, weights));
+        assertEquals(0.0, SearchRanker.score(common, new double[]{1.0}), 0.0);
+    }
+
+    @Test
+    public void scoreRelevant_unrelatedCommandGetsNothing() throws Exception {
+        // "shut the door" searches for 2 terms
+        assertEquals("\"shut\" OR \"door\"", SearchRanker.buildMatchQuery("shut the door"));
+        // The "shut up" row (of 200) has the rare word "shut" in its keywords, but not "door"
+        int[] shutUp = {2, 2, 200, 1, 1, 1, 0, 0, 1, 0, 2, 2, 0, 0, 2};
+        double[] weights = {1.0, 0.25};
+        assertTrue(SearchRanker.score(shutUp, weights) > 1.0);
+        assertEquals(0.5, SearchRanker.coverage(shutUp, weights), 0.0001);
+        assertEquals(0.0, SearchRanker.scoreRelevant(shutUp, weights, 0.6), 0.0);
+    }
+
+    @Test
+    public void scoreRelevant_needsKeywordHit() throws Exception {
+        // Both terms only in the response text
+        int[] responseOnly = {2, 2, 200, 0, 0, 1, 1, 1, 1, 0, 0, 1, 1, 1, 1};
+        double[] weights = {1.0, 0.25};
+        assertEquals(1.0, SearchRanker.coverage(responseOnly, weights), 0.0001);
+        assertEquals(0.0, SearchRanker.scoreRelevant(responseOnly, weights, 0.6), 0.0);
+    }
+
+    @Test
+    public void scoreRelevant_perSearchTerm() throws Exception {
+        // Both terms in the keywords of the row
+        int[] both = {2, 2, 200, 1, 1, 1, 0, 0, 1, 1, 1, 1, 0, 0, 1};
+        double[] weights = {1.0, 0.25};
+        assertEquals(Math.log(201.0), SearchRanker.scoreRelevant(both, weights, 0.6), 0.0001);
+    }
+
+    @Test
+    public void toInts_nativeOrder() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.nativeOrder());
+        buffer.putInt(3).putInt(70000);
+        assertArrayEquals(new int[]{3, 70000}, SearchRanker.toInts(buffer.array()));
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the speech animation timeline
+ */
+public class SpeechAnimatorTest {
+
+    private final List<String> sentList = new ArrayList<String>();
+    private final SpeechAnimator animator = new SpeechAnimator(new SpeechAnimator.FrameSender() {
+        public void send(String frames) {
+            sentList.add(frames);
+        }
+    });
+
+    @Test
+    public void rangeEvents_animateEachWordAsItIsSpoken() throws Exception {
+        animator.prepare("u1", "Hello, I am the john bot.", 1.0f);
+        assertEquals(6, animator.getWordCnt());
+        // No timer needed after the first progress event
+        animator.onStart("u1");
+        animator.onRange("u1", 0);
+        assertEquals(-1, animator.onTimer("u1"));
+        animator.onRange("u1", 7);
+        animator.onRange("u1", 9);
+        assertEquals(2, animator.getCurrWord());
+        assertEquals(3, sentList.size());
+        assertEquals("E,"+(6 * SpeechAnimator.MS_PER_CHAR + SpeechAnimator.PAUSE_MS - 40)+";H,110;A,100;", sentList.get(0));
+        assertEquals("E,160;H,50;A,50;", sentList.get(1));
+
+        // Done before the last word - back to the center
+        animator.onDone("u1");
+        assertEquals("E,"+(4 * SpeechAnimator.MS_PER_CHAR + SpeechAnimator.PAUSE_MS - 40)+";H,85;A,75;",
+                sentList.get(sentList.size() - 1));
+    }
+
+    @Test
+    public void timer_usesWordEstimatesWhenNoRangeEvents() throws Exception {
+        animator.prepare("u2", "tell me a joke", 1.0f);
+        assertEquals(SpeechAnimator.MS_PER_CHAR * 4, animator.onStart("u2"));
+        assertEquals(SpeechAnimator.MIN_WORD_MS, animator.onTimer("u2"));
+        assertEquals(SpeechAnimator.MIN_WORD_MS, animator.onTimer("u2"));
+        // Last word - the timer stops
+        assertEquals(-1, animator.onTimer("u2"));
+        assertEquals(4, sentList.size());
+        assertTrue(sentList.get(3).endsWith("H,85;A,75;"));
+    }
+
+    @Test
+    public void staleUtterance_isIgnored() throws Exception {
+        animator.prepare("u3", "first sentence", 1.0f);
+        animator.prepare("u4", "second one", 1.0f);
+        assertEquals(-1, animator.onStart("u3"));
+        animator.onRange("u3", 6);
+        animator.onDone("u3");
+        assertEquals(0, sentList.size());
+    }
+
+    @Test
+    public void stop_sendsNoMoreFrames() throws Exception {
+        animator.prepare("u5", "look at me move my head", 1.0f);
+        assertTrue(animator.onStart("u5") > 0);
+        animator.onRange("u5", 5);
+        assertEquals(2, sentList.size());
+
+        // Nothing after the STOP - no next word, no timer, and no return to the center
+        animator.stop();
+        animator.onRange("u5", 8);
+        assertEquals(-1, animator.onTimer("u5"));
+        animator.onDone("u5");
+        assertEquals(2, sentList.size());
+    }}
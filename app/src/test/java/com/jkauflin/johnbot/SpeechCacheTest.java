@@ -0,0 +1,88 @@
+package com.jkauflin.johnbot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the disk cache of synthesized speech
+ */
+public class SpeechCacheTest {
+
+    private File cacheDir;
+
+    @Before
+    public void setUp() throws Exception {
+        cacheDir = new File(System.getProperty("java.io.tmpdir"), "speechCacheTest"+System.nanoTime());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        File[] fileList = cacheDir.listFiles();
+        if (fileList != null) {
+            for (File file : fileList) {
+                file.delete();
+            }
+        }
+        cacheDir.delete();
+    }
+
+    private static void render(SpeechCache cache, String key, int size) throws Exception {
+        FileOutputStream out = new FileOutputStream(cache.getTempFile(key));
+        out.write(new byte[size]);
+        out.close();
+        assertTrue(cache.put(key));
+    }
+
+    @Test
+    public void key_dependsOnTextVoiceAndRate() throws Exception {
+        String key = SpeechCache.key("Hello", "en-us-x-sfg", 1.1f);
+        assertEquals(key, SpeechCache.key("Hello", "en-us-x-sfg", 1.1f));
+        assertFalse(key.equals(SpeechCache.key("Hello", "en-us-x-sfg", 1.0f)));
+        assertFalse(key.equals(SpeechCache.key("Hello", "other", 1.1f)));
+        assertFalse(key.equals(SpeechCache.key("Hello.", "en-us-x-sfg", 1.1f)));
+    }
+
+    @Test
+    public void put_evictsLeastRecentlyUsed() throws Exception {
+        SpeechCache cache = new SpeechCache(cacheDir, 250);
+        render(cache, "a", 100);
+        render(cache, "b", 100);
+        assertNotNull(cache.get("a"));
+        render(cache, "c", 100);
+
+        // "b" was used least recently
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(200, cache.getTotalBytes());
+        assertEquals(1, cache.getEvictedCnt());
+        assertEquals(3, cache.getHitCnt());
+        assertEquals(1, cache.getMissCnt());
+    }
+
+    @Test
+    public void put_failsWithoutRenderedFile() throws Exception {
+        SpeechCache cache = new SpeechCache(cacheDir, 1000);
+        assertFalse(cache.put("missing"));
+        assertEquals(0, cache.getEntryCnt());
+    }
+
+    @Test
+    public void constructor_indexesExistingFiles() throws Exception {
+        SpeechCache cache = new SpeechCache(cacheDir, 1000);
+        render(cache, "a", 100);
+        new FileOutputStream(cache.getTempFile("partial")).close();
+
+        SpeechCache reopened = new SpeechCache(cacheDir, 1000);
+        assertEquals(1, reopened.getEntryCnt());
+        assertEquals(100, reopened.getTotalBytes());
+        assertNotNull(reopened.get("a"));
+        assertFalse(reopened.getTempFile("partial").exists());
+    }
+}
@@ -0,0 +1,73 @@
+package com.jkauflin.johnbot;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the mapping of MySQL column types to SQLite storage classes
+ */
+public class SqlTypeMapperTest {
+
+    @Test
+    public void getType_integerTypes() throws Exception {
+        assertEquals(SqlTypeMapper.TYPE_INTEGER, SqlTypeMapper.getType("int(7)"));
+        assertEquals(SqlTypeMapper.TYPE_INTEGER, SqlTypeMapper.getType("tinyint(1)"));
+        assertEquals(SqlTypeMapper.TYPE_INTEGER, SqlTypeMapper.getType("bigint(20) unsigned"));
+        assertEquals(SqlTypeMapper.TYPE_INTEGER, SqlTypeMapper.getType("INTEGER"));
+    }
+
+    @Test
+    public void getType_otherTypes() throws Exception {
+        assertEquals(SqlTypeMapper.TYPE_TEXT, SqlTypeMapper.getType("varchar(1000)"));
+        assertEquals(SqlTypeMapper.TYPE_TEXT, SqlTypeMapper.getType("datetime"));
+        assertEquals(SqlTypeMapper.TYPE_TEXT, SqlTypeMapper.getType("enum('a','b')"));
+        assertEquals(SqlTypeMapper.TYPE_REAL, SqlTypeMapper.getType("double"));
+        assertEquals(SqlTypeMapper.TYPE_NUMERIC, SqlTypeMapper.getType("decimal(10,2)"));
+        assertEquals(SqlTypeMapper.TYPE_BLOB, SqlTypeMapper.getType("mediumblob"));
+        assertEquals(SqlTypeMapper.TYPE_BLOB, SqlTypeMapper.getType("varbinary(16)"));
+    }
+
+    @Test
+    public void getType_unknownIsText() throws Exception {
+        assertEquals(SqlTypeMapper.TYPE_TEXT, SqlTypeMapper.getType(null));
+        assertEquals(SqlTypeMapper.TYPE_TEXT, SqlTypeMapper.getType(""));
+        assertEquals(SqlTypeMapper.TYPE_TEXT, SqlTypeMapper.getType("geometry"));
+    }
+
+    @Test
+    public void getType_spatialTypesAreNotIntegers() throws Exception {
+        assertEquals(SqlTypeMapper.TYPE_TEXT, SqlTypeMapper.getType("point"));
+        assertEquals(SqlTypeMapper.TYPE_TEXT, SqlTypeMapper.getType("multipoint"));
+        assertEquals(SqlTypeMapper.TYPE_INTEGER, SqlTypeMapper.getType("mediumint(8) unsigned"));
+        assertEquals(SqlTypeMapper.TYPE_INTEGER, SqlTypeMapper.getType("smallint"));
+    }
+
+    @Test
+    public void getKeyColumn_singleOrDefault() throws Exception {
+        assertEquals("jokeId", SqlTypeMapper.getKeyColumn("joke", Arrays.asList("jokeId"), "id"));
+        assertEquals("id", SqlTypeMapper.getKeyColumn("joke", Collections.<String>emptyList(), "id"));
+    }
+
+    @Test
+    public void getKeyColumn_compositeKeyRejected() throws Exception {
+        try {
+            SqlTypeMapper.getKeyColumn("jokeTopic", Arrays.asList("jokeId", "topic"), "id");
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("jokeTopic"));
+        }
+    }
+
+    @Test
+    public void getSqlType_forEachType() throws Exception {
+        assertEquals("INTEGER", SqlTypeMapper.getSqlType(SqlTypeMapper.TYPE_INTEGER));
+        assertEquals("REAL", SqlTypeMapper.getSqlType(SqlTypeMapper.TYPE_REAL));
+        assertEquals("TEXT", SqlTypeMapper.getSqlType(SqlTypeMapper.TYPE_TEXT));
+    }
+
+}
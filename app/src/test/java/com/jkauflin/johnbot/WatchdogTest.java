@@ -0,0 +1,108 @@
+package com.jkauflin.johnbot;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the watchdog deadlines
+ */
+public class WatchdogTest {
+
+    private Watchdog watchdog;
+
+    @Before
+    public void setUp() throws Exception {
+        watchdog = new Watchdog("testWatchdog", 3);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        watchdog.shutdown();
+    }
+
+    @Test
+    public void arm_firesAfterDeadline() throws Exception {
+        final CountDownLatch fired = new CountDownLatch(1);
+        long startMs = System.currentTimeMillis();
+        watchdog.arm(0, 100, new Runnable() {
+            public void run() {
+                fired.countDown();
+            }
+        });
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertTrue(System.currentTimeMillis() - startMs >= 100);
+        assertFalse(watchdog.isArmed(0));
+        assertEquals(1, watchdog.getFiredCnt());
+    }
+
+    @Test
+    public void disarm_preventsRecovery() throws Exception {
+        final AtomicInteger firedCnt = new AtomicInteger();
+        watchdog.arm(1, 50, new Runnable() {
+            public void run() {
+                firedCnt.incrementAndGet();
+            }
+        });
+        assertTrue(watchdog.disarm(1));
+        assertFalse(watchdog.disarm(1));
+        Thread.sleep(150);
+        assertEquals(0, firedCnt.get());
+        assertEquals(0, watchdog.getFiredCnt());
+    }
+
+    @Test
+    public void rearm_pushesDeadlineOut() throws Exception {
+        final CountDownLatch fired = new CountDownLatch(1);
+        Runnable recovery = new Runnable() {
+            public void run() {
+                fired.countDown();
+            }
+        };
+        watchdog.arm(0, 100, recovery);
+        Thread.sleep(60);
+        watchdog.arm(0, 300, recovery);
+        assertFalse(fired.await(150, TimeUnit.MILLISECONDS));
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void closeDeadlines_fireInOneWakeUp() throws Exception {
+        final CountDownLatch fired = new CountDownLatch(3);
+        Runnable recovery = new Runnable() {
+            public void run() {
+                fired.countDown();
+            }
+        };
+        watchdog.arm(0, 100, recovery);
+        watchdog.arm(1, 110, recovery);
+        watchdog.arm(2, 120, recovery);
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertEquals(3, watchdog.getFiredCnt());
+        assertEquals(1, watchdog.getWakeCnt());
+    }
+
+    @Test
+    public void recoveryError_keepsWatchdogRunning() throws Exception {
+        final CountDownLatch fired = new CountDownLatch(1);
+        watchdog.arm(0, 10, new Runnable() {
+            public void run() {
+                throw new IllegalStateException("test");
+            }
+        });
+        watchdog.arm(1, 200, new Runnable() {
+            public void run() {
+                fired.countDown();
+            }
+        });
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        assertEquals(1, watchdog.getErrorCnt());
+    }
+
+}